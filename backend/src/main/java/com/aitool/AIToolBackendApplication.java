@@ -5,12 +5,17 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import com.aitool.config.JobProperties;
+import com.aitool.config.ParseProperties;
+import com.aitool.config.QueryCacheProperties;
+import com.aitool.config.RemoteProperties;
 import com.aitool.config.StorageProperties;
 
 @SpringBootApplication
 @EnableAsync
 @EnableScheduling
-@EnableConfigurationProperties(StorageProperties.class)
+@EnableConfigurationProperties({StorageProperties.class, ParseProperties.class, JobProperties.class,
+        RemoteProperties.class, QueryCacheProperties.class})
 public class AIToolBackendApplication {
 
     public static void main(String[] args) {
@@ -1,24 +1,111 @@
 package com.aitool.config;
 
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 @Configuration
 @EnableAsync
 public class AsyncConfig {
 
+    /**
+     * Runs parse jobs; one thread per slot of the job scheduler, which keeps the backlog in the database.
+     * <p>
+     * With {@code spring.threads.virtual.enabled} on Java 21 each job gets a virtual thread: the scheduler still
+     * bounds how many run, and the CPU-bound parsing of extracted files stays on {@code parseWorkerExecutor} and
+     * {@code rangeParsePool}.
+     */
     @Bean(name = "parseExecutor")
-    public Executor parseExecutor() {
+    public AsyncTaskExecutor parseExecutor(JobProperties properties, Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return new VirtualThreadTaskExecutor("parse-");
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(4);
-        executor.setMaxPoolSize(16);
-        executor.setQueueCapacity(500);
+        executor.setCorePoolSize(properties.concurrency());
+        executor.setMaxPoolSize(properties.concurrency());
+        executor.setQueueCapacity(properties.concurrency());
         executor.setThreadNamePrefix("parse-");
         executor.initialize();
         return executor;
     }
-} 
\ No newline at end of file
+
+    /**
+     * Blocking I/O taken off request and job threads: remote downloads and unpacking of nested archives.
+     * Virtual threads with {@code spring.threads.virtual.enabled} on Java 21, otherwise a bounded pool whose tasks
+     * queue up.
+     */
+    @Bean(name = "ioExecutor")
+    public AsyncTaskExecutor ioExecutor(Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return new VirtualThreadTaskExecutor("io-");
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(16);
+        executor.setMaxPoolSize(16);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("io-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Threads that write streamed response bodies (exports); bounded so concurrent exports queue up instead of
+     * each holding a database cursor on a new thread.
+     */
+    @Bean(name = "streamingExecutor")
+    public ThreadPoolTaskExecutor streamingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(16);
+        executor.setThreadNamePrefix("stream-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Delivers live-tail events. A drain blocks while its client's socket is full, so threads are handed out
+     * directly (no queue) and the pool grows with the number of subscribers being served.
+     */
+    @Bean(name = "tailExecutor")
+    public ThreadPoolTaskExecutor tailExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(64);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("tail-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Bounded pool that parses the files of one upload concurrently; shared by all running parses.
+     */
+    @Bean(name = "parseWorkerExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService parseWorkerExecutor(ParseProperties properties) {
+        return Executors.newFixedThreadPool(Math.max(1, properties.parallelFiles()),
+                new CustomizableThreadFactory("parse-worker-"));
+    }
+
+    /**
+     * Fork-join pool for byte-range parsing of single large files.
+     */
+    @Bean(name = "rangeParsePool", destroyMethod = "shutdownNow")
+    public ForkJoinPool rangeParsePool(ParseProperties properties) {
+        int parallelism = properties.splitParallelism() > 0
+                ? properties.splitParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(parallelism);
+    }
+}
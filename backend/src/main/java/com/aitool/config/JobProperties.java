@@ -0,0 +1,23 @@
+package com.aitool.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * 解析任务调度配置。
+ *
+ * @param concurrency         同时执行的解析任务数
+ * @param reservedUrgentSlots 为优先级大于 0 的任务预留的并发槽位，批量任务不能占满全部槽位
+ * @param lease               任务租约时长；执行中的任务定期续约，实例崩溃后租约过期的任务重新排队
+ * @param maxAttempts         任务最多被领取的次数，超过后标记为失败，避免反复导致崩溃的文件无限重试
+ * @param instanceId          本实例标识，用作租约持有者；为空时取主机名。重启后立即接管本实例遗留的任务
+ */
+@ConfigurationProperties(prefix = "aitool.jobs")
+public record JobProperties(@DefaultValue("2") int concurrency,
+                            @DefaultValue("1") int reservedUrgentSlots,
+                            @DefaultValue("2m") Duration lease,
+                            @DefaultValue("3") int maxAttempts,
+                            @DefaultValue("") String instanceId) {
+}
@@ -0,0 +1,43 @@
+package com.aitool.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 解析流水线配置。
+ *
+ * @param chunkSize              解析器每次向下游推送的最大条目数，决定解析期间的峰值内存
+ * @param writer                 日志入库方式：JDBC 批量写入、逐行 JPA 保存，或写入每个文件独立的列式日志段
+ * @param insertRowsPerStatement JDBC 模式下每条 INSERT 语句携带的行数
+ * @param commitInterval         JDBC 模式下每个事务提交的行数
+ * @param parallelFiles          同一上传内并行解析的文件数，1 表示顺序解析；入库始终由单线程完成。只对解压落盘的文件生效
+ * @param splitThreshold         单个文件达到该大小后按字节区间切分并行解析
+ * @param splitRangeSize         每个区间的名义大小，实际在下一个换行处截断
+ * @param splitParallelism       区间解析 fork-join 池的并行度，0 表示 CPU 核数
+ * @param sniffBytes             识别文件格式时读取的文件头字节数
+ * @param keepExtracted          是否先把压缩包解压到 extracted/ 目录再解析；默认直接从压缩流解析，不落盘，
+ *                               只有达到 splitThreshold 的条目临时写入 spool/ 以便切分
+ * @param storeRawLine           是否在 log_entry 中保存 rawLine；false 时只记录源文件字节偏移，读取时回填，并强制保留解压文件
+ * @param maxEntrySize           不符合格式的续行（如堆栈）折叠进上一条日志，单条日志累计到该大小后不再折叠；0 表示不折叠
+ */
+@ConfigurationProperties(prefix = "aitool.parse")
+public record ParseProperties(@DefaultValue("5000") int chunkSize,
+                              @DefaultValue("JDBC") Writer writer,
+                              @DefaultValue("100") int insertRowsPerStatement,
+                              @DefaultValue("20000") int commitInterval,
+                              @DefaultValue("4") int parallelFiles,
+                              @DefaultValue("256MB") DataSize splitThreshold,
+                              @DefaultValue("8MB") DataSize splitRangeSize,
+                              @DefaultValue("0") int splitParallelism,
+                              @DefaultValue("64KB") DataSize sniffBytes,
+                              @DefaultValue("false") boolean keepExtracted,
+                              @DefaultValue("true") boolean storeRawLine,
+                              @DefaultValue("64KB") DataSize maxEntrySize) {
+
+    public enum Writer {
+        JDBC,
+        JPA,
+        SEGMENT
+    }
+}
@@ -0,0 +1,69 @@
+package com.aitool.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.sqlite.SQLiteConfig.TransactionMode;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteConnectionConfig;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.sql.SQLException;
+
+@Configuration
+public class PersistenceConfig {
+
+    /**
+     * Read-write transactions take SQLite's write lock when they begin.
+     * <p>
+     * A deferred transaction that reads first and writes later (every {@code save} of an existing entity) fails at
+     * once with {@code SQLITE_BUSY} when another connection holds the write lock, because SQLite does not wait on
+     * a lock upgrade. {@code BEGIN IMMEDIATE} waits up to {@code busy_timeout} instead, e.g. for the commit of a
+     * running parse. Read-only transactions stay deferred and never wait.
+     * <p>
+     * The mode is switched on the driver's connection for the one {@code BEGIN} only: sqlite-jdbc starts the next
+     * transaction in the configured mode right after every commit, so a connection-wide {@code IMMEDIATE} would
+     * hold the write lock between transactions.
+     * <p>
+     * Applied after initialization: the transaction manager takes the dialect of the entity manager factory then.
+     */
+    @Bean
+    public static BeanPostProcessor immediateWriteTransactions() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof JpaTransactionManager transactionManager) {
+                    transactionManager.setJpaDialect(new ImmediateWriteDialect());
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static final class ImmediateWriteDialect extends HibernateJpaDialect {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+                throws PersistenceException, SQLException {
+            if (definition.isReadOnly()) {
+                return super.beginTransaction(entityManager, definition);
+            }
+            // 会话持有连接直到事务结束，驱动在 setAutoCommit(false) 时按连接的事务模式发出 BEGIN
+            SQLiteConnectionConfig config = getSession(entityManager).getJdbcCoordinator().getLogicalConnection()
+                    .getPhysicalConnection().unwrap(SQLiteConnection.class).getConnectionConfig();
+            config.setTransactionMode(TransactionMode.IMMEDIATE);
+            try {
+                return super.beginTransaction(entityManager, definition);
+            } finally {
+                // 驱动在每次 commit 后立即按该模式开始下一个事务，恢复 DEFERRED 以免提交后又去抢写锁
+                config.setTransactionMode(TransactionMode.DEFERRED);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.aitool.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 日志查询结果缓存配置。
+ *
+ * @param maxSize           分页结果缓存按条目估算的堆内存上限，0 表示不缓存
+ * @param maxTotals         缓存的匹配总数个数上限
+ * @param expireAfterAccess 超过该时长未被访问的结果被丢弃；写入和删除时已精确失效，这里只回收冷数据
+ */
+@ConfigurationProperties(prefix = "aitool.query-cache")
+public record QueryCacheProperties(@DefaultValue("64MB") DataSize maxSize,
+                                   @DefaultValue("10000") long maxTotals,
+                                   @DefaultValue("30m") Duration expireAfterAccess) {
+}
@@ -0,0 +1,26 @@
+package com.aitool.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 批量远程下载配置。
+ *
+ * @param concurrency     同时下载的文件数，对所有批次生效
+ * @param segmentsPerFile 支持 Range 的大文件按段并行下载时，单个文件同时使用的连接数
+ * @param segmentSize     分段大小；续传以段为单位记录进度，中断时最多重新下载一段
+ * @param maxAttempts     单个分段（或不支持 Range 时整个文件）失败后的最多尝试次数，支持 Range 时从已写入的位置续传
+ * @param connectTimeout  连接超时
+ * @param readTimeout     读取超时；连接停滞超过该时长视为中断并续传
+ */
+@ConfigurationProperties(prefix = "aitool.remote")
+public record RemoteProperties(@DefaultValue("4") int concurrency,
+                               @DefaultValue("4") int segmentsPerFile,
+                               @DefaultValue("8MB") DataSize segmentSize,
+                               @DefaultValue("5") int maxAttempts,
+                               @DefaultValue("10s") Duration connectTimeout,
+                               @DefaultValue("1m") Duration readTimeout) {
+}
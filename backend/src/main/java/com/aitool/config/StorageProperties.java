@@ -2,7 +2,21 @@ package com.aitool.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
- 
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 文件存储配置。
+ *
+ * @param rootDir        上传文件的存储根目录
+ * @param chunkSize      分块上传的默认块大小
+ * @param maxChunkSize   客户端可指定的最大块大小；单块在请求中流式写盘，不占用堆内存
+ * @param uploadExpiry   分块上传会话无新块到达超过该时长后被清理
+ */
 @ConfigurationProperties(prefix = "aitool.storage")
-public record StorageProperties(@DefaultValue("${user.home}/aitool-storage") String rootDir) {
-} 
\ No newline at end of file
+public record StorageProperties(@DefaultValue("${user.home}/aitool-storage") String rootDir,
+                                @DefaultValue("8MB") DataSize chunkSize,
+                                @DefaultValue("64MB") DataSize maxChunkSize,
+                                @DefaultValue("24h") Duration uploadExpiry) {
+}
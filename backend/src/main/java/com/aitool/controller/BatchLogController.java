@@ -1,20 +1,36 @@
 package com.aitool.controller;
 
+import com.aitool.dto.LogCursor;
+import com.aitool.dto.LogEntryDto;
+import com.aitool.dto.LogQuery;
+import com.aitool.dto.LogSearchResult;
+import com.aitool.dto.TimelineCursor;
+import com.aitool.dto.TimelineEntryDto;
+import com.aitool.dto.TimelinePage;
 import com.aitool.model.FileRecord;
 import com.aitool.repository.FileRecordRepository;
-import com.aitool.repository.LogEntryRepository;
+import com.aitool.service.LogExportService;
+import com.aitool.service.LogQueryService;
+import com.aitool.service.LogSearchService;
+import com.aitool.service.LogStatsService;
+import com.aitool.service.TimelineService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.jpa.domain.Specification;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -26,7 +42,11 @@ import java.util.Map;
 public class BatchLogController {
 
     private final FileRecordRepository fileRepo;
-    private final LogEntryRepository logRepo;
+    private final LogQueryService logQueryService;
+    private final LogSearchService logSearchService;
+    private final LogStatsService logStatsService;
+    private final TimelineService timelineService;
+    private final LogExportService logExportService;
 
     @GetMapping
     public ResponseEntity<?> batchLogs(@RequestParam List<String> uuids,
@@ -35,7 +55,10 @@ public class BatchLogController {
                                         @RequestParam(required = false) String level,
                                         @RequestParam(required = false) String tag,
                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
-                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                        @RequestParam(required = false) String cursor,
+                                        @RequestParam(defaultValue = "false") boolean withTotal,
+                                        @RequestParam(required = false) String q) {
         if (uuids.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("message", "uuids param required"));
         }
@@ -43,35 +66,88 @@ public class BatchLogController {
         if (recs.isEmpty()) {
             return ResponseEntity.ok(Map.of("total", 0, "pages", 0, "data", List.of()));
         }
-        Specification<com.aitool.model.LogEntry> spec = (root, q, cb) -> {
-            var predicates = cb.conjunction();
-            predicates.getExpressions().add(root.get("fileRecord").in(recs));
-            if (level != null && !level.isBlank()) {
-                predicates.getExpressions().add(cb.equal(root.get("level"), level));
-            }
-            if (tag != null && !tag.isBlank()) {
-                predicates.getExpressions().add(cb.equal(root.get("tag"), tag));
-            }
-            if (from != null) {
-                predicates.getExpressions().add(cb.greaterThanOrEqualTo(root.get("timestamp"), from));
-            }
-            if (to != null) {
-                predicates.getExpressions().add(cb.lessThanOrEqualTo(root.get("timestamp"), to));
-            }
-            return predicates;
-        };
+        LogQuery logQuery = new LogQuery(blankToNull(level), blankToNull(tag), from, to);
+        if (q != null && !q.isBlank()) {
+            // 全文检索：结果按入库顺序，始终使用游标分页
+            LogSearchResult result = logSearchService.search(recs, q, logQuery, LogCursor.decode(cursor), size, withTotal);
+            return ResponseEntity.ok(FileController.searchBody(result));
+        }
+        if (cursor != null) {
+            // 游标分页：各文件分别按索引定位后多路归并，cursor 为空表示第一页
+            TimelinePage timeline = timelineService.merge(recs, logQuery, TimelineCursor.decode(cursor), size, withTotal);
+            return ResponseEntity.ok(timelineBody(timeline));
+        }
         Pageable pageable = PageRequest.of(page, size, Sort.by("timestamp").ascending());
-        Page<com.aitool.model.LogEntry> p = logRepo.findAll(spec, pageable);
+        Page<com.aitool.model.LogEntry> p = logQueryService.query(recs, logQuery, pageable);
         return ResponseEntity.ok(Map.of(
                 "total", p.getTotalElements(),
                 "pages", p.getTotalPages(),
-                "data", p.getContent().stream().map(e -> Map.of(
-                        "timestamp", e.getTimestamp(),
-                        "level", e.getLevel(),
-                        "tag", e.getTag(),
-                        "message", e.getMessage(),
-                        "rawLine", e.getRawLine()
-                )).toList()
+                "data", p.getContent().stream().map(LogEntryDto::from).toList()
         ));
     }
-} 
\ No newline at end of file
+
+    /**
+     * Level counts, top tags and a histogram for the given files, served from the ingest-time rollups.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<?> stats(@RequestParam List<String> uuids,
+                                   @RequestParam(required = false) String level,
+                                   @RequestParam(required = false) String tag,
+                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                   @RequestParam(defaultValue = "minute") String interval,
+                                   @RequestParam(defaultValue = "10") int top) {
+        if (uuids.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("message", "uuids param required"));
+        }
+        List<FileRecord> recs = fileRepo.findByUuidIn(uuids);
+        LogQuery logQuery = new LogQuery(blankToNull(level), blankToNull(tag), from, to);
+        return ResponseEntity.ok(logStatsService.stats(recs, logQuery, LogStatsService.Interval.parse(interval), top));
+    }
+
+    /**
+     * Stream every matching entry in timeline order as NDJSON or raw lines, gzip-compressed by default.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam List<String> uuids,
+                                    @RequestParam(required = false) String level,
+                                    @RequestParam(required = false) String tag,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                    @RequestParam(defaultValue = "ndjson") String format,
+                                    @RequestParam(defaultValue = "true") boolean gzip,
+                                    HttpServletRequest request) {
+        if (uuids.isEmpty()) {
+            throw new IllegalArgumentException("uuids param required");
+        }
+        LogExportService.Format fmt = LogExportService.Format.parse(format);
+        List<FileRecord> recs = fileRepo.findByUuidIn(uuids);
+        if (recs.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        LogQuery logQuery = new LogQuery(blankToNull(level), blankToNull(tag), from, to);
+        String filename = (recs.size() == 1 ? recs.get(0).getUuid() : "logs") + fmt.extension() + (gzip ? ".gz" : "");
+        // 边查边写：响应体在异步线程中分块输出，不在内存中组装结果
+        StreamingResponseBody body = out -> logExportService.export(recs, logQuery, fmt, gzip, out);
+        // 导出时长取决于数据量，只对这个请求取消异步超时；客户端断开时写入失败即结束
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(-1L);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : fmt.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(body);
+    }
+
+    private static Map<String, Object> timelineBody(TimelinePage timeline) {
+        var body = new java.util.LinkedHashMap<String, Object>();
+        body.put("data", timeline.entries().stream().map(TimelineEntryDto::from).toList());
+        body.put("nextCursor", timeline.next() != null ? timeline.next().encode() : null);
+        if (timeline.total() != null) {
+            body.put("total", timeline.total());
+        }
+        return body;
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+}
@@ -1,25 +1,32 @@
 package com.aitool.controller;
 
-import com.aitool.model.FileRecord;
 import com.aitool.model.FileStatus;
 import com.aitool.repository.FileRecordRepository;
-import com.aitool.repository.LogEntryRepository;
+import com.aitool.dto.LogCursor;
+import com.aitool.dto.LogEntryDto;
 import com.aitool.dto.LogQuery;
+import com.aitool.dto.LogSearchHitDto;
+import com.aitool.dto.LogSearchResult;
+import com.aitool.dto.LogWindow;
 import com.aitool.service.LogQueryService;
-import com.aitool.service.ParseService;
+import com.aitool.service.LogSearchService;
+import com.aitool.service.LogTailService;
+import com.aitool.service.ParseJobService;
+import com.aitool.service.ParseMetrics;
+import com.aitool.service.StorageService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 
 @RestController
 @RequestMapping("/api/files")
@@ -27,9 +34,12 @@ import java.nio.file.Paths;
 public class FileController {
 
     private final FileRecordRepository recordRepo;
-    private final LogEntryRepository logRepo;
     private final LogQueryService logQueryService;
-    private final ParseService parseService;
+    private final LogSearchService logSearchService;
+    private final LogTailService logTailService;
+    private final ParseJobService jobService;
+    private final StorageService storageService;
+    private final ParseMetrics parseMetrics;
 
     @GetMapping("/{uuid}")
     public ResponseEntity<?> getStatus(@PathVariable String uuid) {
@@ -43,6 +53,37 @@ public class FileController {
                     if (record.getMessage() != null) {
                         map.put("message", record.getMessage());
                     }
+                    if (record.getContentHash() != null) {
+                        map.put("contentHash", record.getContentHash());
+                    }
+                    // 内容与已解析的文件相同，直接复用其解析结果
+                    map.put("deduplicated", record.getDataRecordId() != null);
+                    // 解析中按已处理的输入字节给出百分比
+                    ParseMetrics.Run run = parseMetrics.running(record);
+                    if (run != null) {
+                        map.put("progress", run.percent());
+                        map.put("processedBytes", run.processedBytes());
+                        map.put("totalBytes", run.totalBytes());
+                    } else if (record.getStatus() == FileStatus.PARSED) {
+                        map.put("progress", 100.0);
+                    }
+                    if (record.getEntryCount() != null) {
+                        map.put("entryCount", record.getEntryCount());
+                        map.put("parseMillis", record.getParseMillis());
+                        map.put("rowsPerSecond", record.getRowsPerSecond());
+                        map.put("bytesPerSecond", record.getBytesPerSecond());
+                        map.put("foldedLines", record.getFoldedLines());
+                        map.put("unmatchedLines", record.getUnmatchedLines());
+                    }
+                    jobService.latest(record).ifPresent(job -> {
+                        var jobMap = new java.util.LinkedHashMap<String, Object>();
+                        jobMap.put("id", job.getId());
+                        jobMap.put("state", job.getState());
+                        jobMap.put("priority", job.getPriority());
+                        jobMap.put("tenant", job.getTenant());
+                        jobMap.put("attempts", job.getAttempts());
+                        map.put("job", jobMap);
+                    });
                     return ResponseEntity.ok(map);
                 })
                 .orElse(ResponseEntity.notFound().build());
@@ -55,20 +96,28 @@ public class FileController {
                                      @RequestParam(required = false) String level,
                                      @RequestParam(required = false) String tag,
                                      @RequestParam(required = false) String from,
-                                     @RequestParam(required = false) String to) {
+                                     @RequestParam(required = false) String to,
+                                     @RequestParam(required = false) String cursor,
+                                     @RequestParam(defaultValue = "false") boolean withTotal,
+                                     @RequestParam(required = false) String q) {
         return recordRepo.findByUuid(uuid)
                 .<ResponseEntity<?>>map(record -> {
-                    PageRequest pr = PageRequest.of(page, size, Sort.by("timestamp").ascending());
-                    LogQuery q = new LogQuery(level, tag,
+                    LogQuery logQuery = new LogQuery(blankToNull(level), blankToNull(tag),
                             from != null ? LocalDateTime.parse(from) : null,
                             to != null ? LocalDateTime.parse(to) : null);
-                    Page<?> logPage = logQueryService.query(record, q, pr).map(le -> Map.of(
-                            "timestamp", le.getTimestamp(),
-                            "level", le.getLevel(),
-                            "tag", le.getTag(),
-                            "message", le.getMessage(),
-                            "rawLine", le.getRawLine()
-                    ));
+                    if (q != null && !q.isBlank()) {
+                        // 全文检索：结果按入库顺序，始终使用游标分页
+                        LogSearchResult result = logSearchService.search(List.of(record), q, logQuery,
+                                LogCursor.decode(cursor), size, withTotal);
+                        return ResponseEntity.ok(searchBody(result));
+                    }
+                    if (cursor != null) {
+                        // 游标分页：cursor 为空表示第一页
+                        LogWindow window = logQueryService.seek(List.of(record), logQuery, LogCursor.decode(cursor), size, withTotal);
+                        return ResponseEntity.ok(windowBody(window));
+                    }
+                    PageRequest pr = PageRequest.of(page, size, Sort.by("timestamp").ascending());
+                    Page<?> logPage = logQueryService.query(record, logQuery, pr).map(LogEntryDto::from);
                     return ResponseEntity.ok(Map.of(
                             "total", logPage.getTotalElements(),
                             "pages", logPage.getTotalPages(),
@@ -78,6 +127,45 @@ public class FileController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Server-Sent Events stream of entries as the running parse commits them, filtered on the server side.
+     * Ends with a {@code status} event once the file is parsed or has failed.
+     */
+    @GetMapping(value = "/{uuid}/tail", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> tail(@PathVariable String uuid,
+                                           @RequestParam(required = false) String level,
+                                           @RequestParam(required = false) String tag,
+                                           @RequestParam(required = false) String from,
+                                           @RequestParam(required = false) String to) {
+        return recordRepo.findByUuid(uuid)
+                .map(record -> ResponseEntity.ok(logTailService.subscribe(record, new LogQuery(
+                        blankToNull(level),
+                        blankToNull(tag),
+                        from != null ? LocalDateTime.parse(from) : null,
+                        to != null ? LocalDateTime.parse(to) : null))))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    static Map<String, Object> windowBody(LogWindow window) {
+        var body = new java.util.LinkedHashMap<String, Object>();
+        body.put("data", window.entries().stream().map(LogEntryDto::from).toList());
+        body.put("nextCursor", window.next() != null ? window.next().encode() : null);
+        if (window.total() != null) {
+            body.put("total", window.total());
+        }
+        return body;
+    }
+
+    static Map<String, Object> searchBody(LogSearchResult result) {
+        var body = new java.util.LinkedHashMap<String, Object>();
+        body.put("data", result.hits().stream().map(LogSearchHitDto::from).toList());
+        body.put("nextCursor", result.next() != null ? result.next().encode() : null);
+        if (result.total() != null) {
+            body.put("total", result.total());
+        }
+        return body;
+    }
+
     @GetMapping
     public ResponseEntity<?> listFiles() {
         return ResponseEntity.ok(recordRepo.findAll(Sort.by("createdAt").descending()).stream().map(r -> Map.of(
@@ -92,70 +180,57 @@ public class FileController {
     public ResponseEntity<?> delete(@PathVariable String uuid) {
         return recordRepo.findByUuid(uuid)
                 .map(rec -> {
-                    // 删除日志条目
-                    logRepo.deleteByFileRecord(rec);
-                    // 删除文件记录
-                    recordRepo.delete(rec);
-                    // 删除存储目录
-                    if (rec.getStoragePath() != null) {
-                        Path p = Paths.get(rec.getStoragePath()).getParent();
-                        try {
-                            if (Files.exists(p)) {
-                                Files.walk(p)
-                                        .sorted((a,b)->b.compareTo(a)) // delete children first
-                                        .forEach(path -> {
-                                            try { Files.deleteIfExists(path); } catch (Exception ignored) {}
-                                        });
-                            }
-                        } catch (Exception ignored) {}
-                    }
+                    // 删除日志条目、统计、文件记录及存储目录
+                    storageService.delete(List.of(rec));
                     return ResponseEntity.ok().build();
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
 
     /**
-     * Trigger asynchronous parsing for a stored file.
+     * Queue parsing of a stored file. Jobs with a higher {@code priority} run first; batch jobs should use a
+     * negative one. Jobs of the same priority are shared out between the tenants named by {@code X-Tenant}.
      */
     @PostMapping("/{uuid}/parse")
-    public ResponseEntity<?> triggerParse(@PathVariable String uuid) {
+    public ResponseEntity<?> triggerParse(@PathVariable String uuid,
+                                          @RequestParam(defaultValue = "0") int priority,
+                                          @RequestHeader(value = "X-Tenant", required = false) String tenant) {
         return recordRepo.findByUuid(uuid)
                 .<ResponseEntity<?>>map(rec -> {
-                    parseService.extractAndParseAsync(uuid);
-                    return ResponseEntity.accepted().body(Map.of("message", "Parse started"));
+                    var job = jobService.submit(rec, priority, tenant);
+                    return ResponseEntity.accepted().body(Map.of(
+                            "message", "Parse queued",
+                            "jobId", job.getId(),
+                            "state", job.getState(),
+                            "priority", job.getPriority()));
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Cancel the queued or running parse of a file. A running parse stops at its next chunk; a cancelled re-parse
+     * keeps the result of the previous one.
+     */
+    @DeleteMapping("/{uuid}/parse")
+    public ResponseEntity<?> cancelParse(@PathVariable String uuid) {
+        return recordRepo.findByUuid(uuid)
+                .<ResponseEntity<?>>map(rec -> jobService.cancel(rec)
+                        ? ResponseEntity.accepted().body(Map.of("message", "Parse cancelled"))
+                        : ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "No queued or running parse")))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @DeleteMapping("/batch")
-    @org.springframework.transaction.annotation.Transactional
     public ResponseEntity<?> batchDelete(@RequestBody java.util.List<String> uuids) {
         if (uuids == null || uuids.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("message", "ids cannot be empty"));
         }
-        // 先查询对应记录，方便删除磁盘目录
-        java.util.List<FileRecord> recs = recordRepo.findByUuidIn(uuids);
-
-        // 批量删除日志 & 文件记录
-        logRepo.deleteByFileRecord_UuidIn(uuids);
-        recordRepo.deleteByUuidIn(uuids);
-
-        // 删除磁盘目录（不在同一事务，不影响数据库锁）
-        recs.forEach(rec -> {
-            if (rec.getStoragePath() != null) {
-                java.nio.file.Path p = java.nio.file.Paths.get(rec.getStoragePath()).getParent();
-                try {
-                    if (java.nio.file.Files.exists(p)) {
-                        java.nio.file.Files.walk(p)
-                                .sorted((a,b)->b.compareTo(a))
-                                .forEach(path -> {
-                                    try { java.nio.file.Files.deleteIfExists(path); } catch (Exception ignored) {}
-                                });
-                    }
-                } catch (Exception ignored) {}
-            }
-        });
+        // 批量删除日志、文件记录及磁盘目录（目录在事务提交后删除）
+        int deleted = storageService.delete(recordRepo.findByUuidIn(uuids));
+        return ResponseEntity.ok(Map.of("deleted", deleted));
+    }
 
-        return ResponseEntity.ok(Map.of("deleted", recs.size()));
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
     }
-} 
\ No newline at end of file
+}
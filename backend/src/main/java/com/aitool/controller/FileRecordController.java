@@ -2,8 +2,11 @@ package com.aitool.controller;
 
 import com.aitool.dto.FileStatusDto;
 import com.aitool.model.FileRecord;
+import com.aitool.model.FileStatus;
 import com.aitool.repository.FileRecordRepository;
 import com.aitool.repository.LogEntryRepository;
+import com.aitool.service.LogQueryService;
+import com.aitool.service.ParseMetrics;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -19,18 +22,33 @@ public class FileRecordController {
 
     private final FileRecordRepository repository;
     private final LogEntryRepository logRepo;
+    private final LogQueryService logQueryService;
+    private final ParseMetrics parseMetrics;
 
     @GetMapping("/{uuid}/status")
     public FileStatusDto status(@PathVariable String uuid) {
         FileRecord rec = repository.findByUuid(uuid).orElseThrow();
-        long count = logRepo.count((root, q, cb) -> cb.equal(root.get("fileRecord"), rec));
+        // 解析完成后直接使用入库时记录的条数，避免每次请求全量 count
+        long count = rec.getEntryCount() != null
+                ? rec.getEntryCount()
+                : logRepo.count((root, q, cb) -> cb.equal(root.get("fileRecord").get("id"), rec.dataId()));
+        ParseMetrics.Run run = parseMetrics.running(rec);
         return FileStatusDto.builder()
                 .uuid(rec.getUuid())
                 .filename(rec.getFilename())
                 .status(rec.getStatus())
                 .createdAt(rec.getCreatedAt())
                 .message(rec.getMessage())
+                .contentHash(rec.getContentHash())
+                .deduplicated(rec.getDataRecordId() != null)
                 .logCount(count)
+                .parseMillis(rec.getParseMillis())
+                .rowsPerSecond(rec.getRowsPerSecond())
+                .bytesPerSecond(rec.getBytesPerSecond())
+                .foldedLines(rec.getFoldedLines())
+                .unmatchedLines(rec.getUnmatchedLines())
+                .progress(run != null ? Double.valueOf(run.percent())
+                        : rec.getStatus() == FileStatus.PARSED ? Double.valueOf(100) : null)
                 .build();
     }
 
@@ -40,12 +58,15 @@ public class FileRecordController {
                                           @RequestParam(defaultValue = "100") int size) {
         FileRecord rec = repository.findByUuid(uuid).orElseThrow();
         Pageable pageable = PageRequest.of(page, size);
-        return logRepo.findByFileRecord(rec, pageable)
-                .map(e -> Map.of(
-                        "timestamp", e.getTimestamp(),
-                        "level", e.getLevel(),
-                        "tag", e.getTag(),
-                        "message", e.getMessage()
-                ));
+        return logQueryService.query(rec, null, pageable)
+                .map(e -> {
+                    // 无法识别的级别和没有 tag 的条目为 null，Map.of 不接受 null
+                    Map<String, Object> row = new java.util.LinkedHashMap<>();
+                    row.put("timestamp", e.getTimestamp());
+                    row.put("level", e.getLevel());
+                    row.put("tag", e.getTag());
+                    row.put("message", e.getMessage());
+                    return row;
+                });
     }
 } 
\ No newline at end of file
@@ -1,19 +1,26 @@
 package com.aitool.controller;
 
+import com.aitool.service.ChunkedUploadService;
+import com.aitool.service.RemoteIngestService;
 import com.aitool.service.StorageService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotBlank;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Validated
@@ -23,6 +30,9 @@ import java.util.Map;
 public class UploadController {
 
     private final StorageService storageService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final RemoteIngestService remoteIngestService;
+    private final AsyncTaskExecutor ioExecutor;
     private static final long MAX_FILE_SIZE = 500 * 1024 * 1024; // 500MB
 
     @GetMapping("/test")
@@ -55,14 +65,89 @@ public class UploadController {
                 .body(Map.of("id", id, "filename", file.getOriginalFilename(), "size", file.getSize()));
     }
 
+    /**
+     * Start a chunked upload; no size limit applies. Send every chunk with {@code PUT .../chunks/{index}},
+     * in any order and in parallel, then call {@code complete}. The upload id becomes the file id.
+     */
+    @PostMapping("/chunked")
+    public ResponseEntity<ChunkedUploadService.Status> initChunked(@RequestParam("filename") @NotBlank String filename,
+                                                                   @RequestParam("size") long size,
+                                                                   @RequestParam(value = "chunkSize", required = false) Long chunkSize)
+            throws IOException {
+        return ResponseEntity.status(HttpStatus.CREATED).body(chunkedUploadService.init(filename, size, chunkSize));
+    }
+
+    /**
+     * Raw chunk bytes as the request body, streamed to disk at the chunk's offset.
+     */
+    @PutMapping("/chunked/{uploadId}/chunks/{index}")
+    public ResponseEntity<ChunkedUploadService.Status> putChunk(@PathVariable String uploadId,
+                                                                @PathVariable int index,
+                                                                HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(chunkedUploadService.writeChunk(uploadId, index, request.getContentLengthLong(),
+                request.getInputStream()));
+    }
+
+    /**
+     * Received and missing chunks, for resuming an interrupted upload.
+     */
+    @GetMapping("/chunked/{uploadId}")
+    public ResponseEntity<ChunkedUploadService.Status> chunkedStatus(@PathVariable String uploadId) {
+        return ResponseEntity.ok(chunkedUploadService.status(uploadId));
+    }
+
+    @PostMapping("/chunked/{uploadId}/complete")
+    public ResponseEntity<Map<String, Object>> completeChunked(@PathVariable String uploadId) throws IOException {
+        ChunkedUploadService.Status status = chunkedUploadService.complete(uploadId);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(Map.of("id", status.uploadId(), "filename", status.filename(), "size", status.size()));
+    }
+
+    @DeleteMapping("/chunked/{uploadId}")
+    public ResponseEntity<Void> abortChunked(@PathVariable String uploadId) {
+        chunkedUploadService.abort(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/remote")
-    public ResponseEntity<Map<String, Object>> remoteFetch(@RequestParam("url") @NotBlank String url) throws IOException {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> remoteFetch(@RequestParam("url") @NotBlank String url,
+                                                                             HttpServletRequest request) {
         log.info("接收远程下载请求: {}", url);
-        
-        String id = storageService.saveRemoteFile(url);
-        
-        log.info("远程文件下载成功: {} (ID: {})", url, id);
-        return ResponseEntity.status(HttpStatus.CREATED)
-                .body(Map.of("id", id, "sourceUrl", url));
+        // 下载时长取决于文件大小，只对这个请求取消异步超时；读取停滞由连接的读取超时处理
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(-1L);
+        // 下载可能持续数分钟，在 ioExecutor 上进行，不占用 Tomcat 工作线程
+        return ioExecutor.submitCompletable(() -> {
+            String id = storageService.saveRemoteFile(url);
+
+            log.info("远程文件下载成功: {} (ID: {})", url, id);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(Map.<String, Object>of("id", id, "sourceUrl", url));
+        });
+    }
+
+    /**
+     * Download many URLs in the background. Every file is queued for parsing with {@code priority} as soon as it is
+     * stored; batches should use a negative one. Poll {@code GET .../batch/{batchId}} for progress and file ids.
+     */
+    @PostMapping("/remote/batch")
+    public ResponseEntity<RemoteIngestService.Batch> remoteBatch(@RequestBody List<String> urls,
+                                                                 @RequestParam(defaultValue = "-1") int priority,
+                                                                 @RequestHeader(value = "X-Tenant", required = false) String tenant)
+            throws IOException {
+        log.info("接收批量远程下载请求: {} 个 URL", urls != null ? urls.size() : 0);
+        return ResponseEntity.accepted().body(remoteIngestService.submit(urls, priority, tenant));
+    }
+
+    @GetMapping("/remote/batch/{batchId}")
+    public ResponseEntity<RemoteIngestService.Batch> remoteBatchStatus(@PathVariable String batchId) {
+        return ResponseEntity.ok(remoteIngestService.status(batchId));
+    }
+
+    /**
+     * Retry the failed downloads of a batch; ranged downloads only fetch their missing segments.
+     */
+    @PostMapping("/remote/batch/{batchId}/resume")
+    public ResponseEntity<RemoteIngestService.Batch> resumeRemoteBatch(@PathVariable String batchId) {
+        return ResponseEntity.accepted().body(remoteIngestService.resume(batchId));
     }
-} 
\ No newline at end of file
+}
@@ -14,5 +14,18 @@ public class FileStatusDto {
     private FileStatus status;
     private LocalDateTime createdAt;
     private String message;
+    /** 上传内容的 SHA-256 */
+    private String contentHash;
+    /** 是否复用了内容相同文件的解析结果 */
+    private boolean deduplicated;
     private long logCount;
+    private Long parseMillis;
+    private Long rowsPerSecond;
+    private Long bytesPerSecond;
+    /** 折叠进上一条日志的续行数 */
+    private Long foldedLines;
+    /** 未匹配任何日志格式、也未被折叠的行数 */
+    private Long unmatchedLines;
+    /** 已处理输入字节的百分比；未开始解析时为 null */
+    private Double progress;
 } 
\ No newline at end of file
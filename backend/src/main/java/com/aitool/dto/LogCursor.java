@@ -0,0 +1,40 @@
+package com.aitool.dto;
+
+import com.aitool.model.LogEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Keyset position in {@code (timestamp, id)} order: the next page starts strictly after this entry.
+ * Clients only see the opaque {@link #encode()} form.
+ */
+public record LogCursor(LocalDateTime timestamp, long id) {
+
+    public static LogCursor of(LogEntry entry) {
+        return new LogCursor(entry.getTimestamp(), entry.getId());
+    }
+
+    public String encode() {
+        String raw = (timestamp != null ? timestamp.toString() : "") + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the decoded cursor, or {@code null} for a blank value (first page)
+     */
+    public static LogCursor decode(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int bar = raw.lastIndexOf('|');
+            String ts = raw.substring(0, bar);
+            return new LogCursor(ts.isEmpty() ? null : LocalDateTime.parse(ts), Long.parseLong(raw.substring(bar + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的 cursor: " + value);
+        }
+    }
+}
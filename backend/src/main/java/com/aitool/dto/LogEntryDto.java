@@ -0,0 +1,18 @@
+package com.aitool.dto;
+
+import com.aitool.model.LogEntry;
+
+import java.time.LocalDateTime;
+
+/**
+ * Wire form of a log entry; unlike {@code Map.of} it tolerates missing fields. The id is the one queries and the
+ * tail stream report for the same row.
+ */
+public record LogEntryDto(Long id, LocalDateTime timestamp, String level, String tag, String message,
+                          String rawLine) {
+
+    public static LogEntryDto from(LogEntry e) {
+        return new LogEntryDto(e.getId(), e.getTimestamp(), e.getLevel(), e.getTag(), e.getMessage(),
+                e.getRawLine());
+    }
+}
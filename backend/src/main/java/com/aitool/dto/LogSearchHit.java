@@ -0,0 +1,9 @@
+package com.aitool.dto;
+
+import com.aitool.model.LogEntry;
+
+/**
+ * Full-text match with its highlighted excerpt of the message.
+ */
+public record LogSearchHit(LogEntry entry, String snippet) {
+}
@@ -0,0 +1,16 @@
+package com.aitool.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Wire form of a full-text match: the entry plus its highlighted message excerpt.
+ */
+public record LogSearchHitDto(LocalDateTime timestamp, String level, String tag, String message, String rawLine,
+                              String snippet) {
+
+    public static LogSearchHitDto from(LogSearchHit hit) {
+        var e = hit.entry();
+        return new LogSearchHitDto(e.getTimestamp(), e.getLevel(), e.getTag(), e.getMessage(), e.getRawLine(),
+                hit.snippet());
+    }
+}
@@ -0,0 +1,12 @@
+package com.aitool.dto;
+
+import java.util.List;
+
+/**
+ * One page of full-text matches in ingestion order.
+ *
+ * @param next  cursor for the following page, {@code null} when this is the last one
+ * @param total total matches, only computed when requested
+ */
+public record LogSearchResult(List<LogSearchHit> hits, LogCursor next, Long total) {
+}
@@ -0,0 +1,24 @@
+package com.aitool.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Aggregated view of one or more files.
+ *
+ * @param total     number of matching entries
+ * @param levels    count per stored level value
+ * @param tags      the most frequent tags, descending
+ * @param histogram entries per time bucket, ascending; entries without a timestamp are left out
+ */
+public record LogStats(long total, List<LevelCount> levels, List<TagCount> tags, List<Bucket> histogram) {
+
+    public record LevelCount(String level, long count) {
+    }
+
+    public record TagCount(String tag, long count) {
+    }
+
+    public record Bucket(LocalDateTime start, long count, List<LevelCount> levels) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.aitool.dto;
+
+import com.aitool.model.LogEntry;
+
+import java.util.List;
+
+/**
+ * One keyset page.
+ *
+ * @param entries entries in {@code (timestamp, id)} order
+ * @param next    cursor for the following page, {@code null} when this is the last one
+ * @param total   total matches, only computed when requested
+ */
+public record LogWindow(List<LogEntry> entries, LogCursor next, Long total) {
+}
@@ -0,0 +1,49 @@
+package com.aitool.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Position in a merged multi-file timeline, ordered by {@code (timestamp, fileRecordId, id)}.
+ * A single key is enough to resume: every file can derive its own seek position from it.
+ */
+public record TimelineCursor(LocalDateTime timestamp, long fileRecordId, long id) {
+
+    public static TimelineCursor of(TimelineEntry entry) {
+        return new TimelineCursor(entry.entry().getTimestamp(), entry.record().getId(), entry.entry().getId());
+    }
+
+    /**
+     * Per-file keyset position equivalent to this cursor: files ordered before the cursor's file resume strictly
+     * after its timestamp, files ordered after it resume at its timestamp.
+     */
+    public LogCursor forFile(long otherFileRecordId) {
+        if (otherFileRecordId == fileRecordId) {
+            return new LogCursor(timestamp, id);
+        }
+        return new LogCursor(timestamp, otherFileRecordId < fileRecordId ? Long.MAX_VALUE : 0L);
+    }
+
+    public String encode() {
+        String raw = (timestamp != null ? timestamp.toString() : "") + "|" + fileRecordId + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the decoded cursor, or {@code null} for a blank value (first page)
+     */
+    public static TimelineCursor decode(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            return new TimelineCursor(parts[0].isEmpty() ? null : LocalDateTime.parse(parts[0]),
+                    Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的 cursor: " + value);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.aitool.dto;
+
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+
+public record TimelineEntry(FileRecord record, LogEntry entry) {
+}
@@ -0,0 +1,16 @@
+package com.aitool.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Wire form of a merged-timeline entry; {@code uuid} names the file it came from.
+ */
+public record TimelineEntryDto(String uuid, LocalDateTime timestamp, String level, String tag, String message,
+                               String rawLine) {
+
+    public static TimelineEntryDto from(TimelineEntry t) {
+        var e = t.entry();
+        return new TimelineEntryDto(t.record().getUuid(), e.getTimestamp(), e.getLevel(), e.getTag(), e.getMessage(),
+                e.getRawLine());
+    }
+}
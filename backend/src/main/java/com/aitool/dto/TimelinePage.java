@@ -0,0 +1,13 @@
+package com.aitool.dto;
+
+import java.util.List;
+
+/**
+ * One page of a merged timeline.
+ *
+ * @param entries entries in {@code (timestamp, fileRecordId, id)} order
+ * @param next    cursor for the following page, {@code null} when this is the last one
+ * @param total   total matches over all files, only computed when requested
+ */
+public record TimelinePage(List<TimelineEntry> entries, TimelineCursor next, Long total) {
+}
@@ -0,0 +1,32 @@
+package com.aitool.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * A stored file known by the SHA-256 of its content, reused through hard links by later files with the same content.
+ */
+@Entity
+@Table(name = "content_blob", indexes = {
+        @Index(name = "idx_content_blob_hash", columnList = "hash")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ContentBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** 内容 SHA-256，十六进制 */
+    @Column(nullable = false, length = 64)
+    private String hash;
+
+    private Long size;
+
+    @Column(length = 4096)
+    private String path;
+}
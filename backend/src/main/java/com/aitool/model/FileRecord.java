@@ -6,7 +6,9 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "file_record")
+@Table(name = "file_record", indexes = {
+        @Index(name = "idx_file_record_content_hash", columnList = "content_hash")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -27,10 +29,59 @@ public class FileRecord {
 
     private String extractedPath;
 
-    @Enumerated(EnumType.STRING)
+    @Convert(converter = FileStatusConverter.class)
     private FileStatus status;
 
     private LocalDateTime createdAt;
 
     private String message;
-} 
\ No newline at end of file
+
+    /** 最近一次解析写入的条目数 */
+    private Long entryCount;
+
+    /** 最近一次解析（含入库）耗时，毫秒 */
+    private Long parseMillis;
+
+    /** 最近一次解析读取的输入字节数（流式模式下为压缩包字节数） */
+    private Long inputBytes;
+
+    /** 最近一次解析中折叠进上一条日志的续行数（如堆栈） */
+    private Long foldedLines;
+
+    /** 最近一次解析中既不是日志头也未被折叠的行数 */
+    private Long unmatchedLines;
+
+    /** 上传内容的 SHA-256（十六进制），用于识别重复上传 */
+    @Column(length = 64)
+    private String contentHash;
+
+    /**
+     * 内容相同、已解析的另一条记录的 id：本记录直接复用其 log_entry / log_rollup / log_source 及段文件，不再解析。
+     * 为 null 表示条目属于本记录。
+     */
+    private Long dataRecordId;
+
+    /** 使用 SEGMENT 存储时的段文件路径；为 null 表示条目存放在 log_entry 表 */
+    private String segmentPath;
+
+    public Long getRowsPerSecond() {
+        if (entryCount == null || parseMillis == null) {
+            return null;
+        }
+        return parseMillis == 0 ? entryCount : entryCount * 1000 / parseMillis;
+    }
+
+    public Long getBytesPerSecond() {
+        if (inputBytes == null || parseMillis == null) {
+            return null;
+        }
+        return parseMillis == 0 ? inputBytes : inputBytes * 1000 / parseMillis;
+    }
+
+    /**
+     * @return id of the record that owns this file's rows
+     */
+    public Long dataId() {
+        return dataRecordId != null ? dataRecordId : id;
+    }
+}
@@ -2,7 +2,11 @@ package com.aitool.model;
 
 public enum FileStatus {
     STORED,
+    /** 已提交解析任务，等待调度 */
+    QUEUED,
+    /** 解析任务已开始执行 */
+    RUNNING,
     EXTRACTED,
     PARSED,
     FAILED
-} 
\ No newline at end of file
+} 
@@ -0,0 +1,23 @@
+package com.aitool.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores {@link FileStatus} by name, like {@code EnumType.STRING}, but as a plain text column: Hibernate declares
+ * {@code @Enumerated} columns with a CHECK constraint listing the values known when the table was created, and
+ * SQLite cannot alter a constraint once a status is added.
+ */
+@Converter
+public class FileStatusConverter implements AttributeConverter<FileStatus, String> {
+
+    @Override
+    public String convertToDatabaseColumn(FileStatus status) {
+        return status != null ? status.name() : null;
+    }
+
+    @Override
+    public FileStatus convertToEntityAttribute(String name) {
+        return name != null ? FileStatus.valueOf(name) : null;
+    }
+}
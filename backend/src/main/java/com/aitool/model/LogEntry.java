@@ -2,14 +2,15 @@ package com.aitool.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Formula;
 
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "log_entry", indexes = {
-        @Index(columnList = "timestamp"),
-        @Index(columnList = "level"),
-        @Index(columnList = "tag"),
+        // 查询总是限定在文件内：级别的等值或范围条件、tag 的等值条件各命中连续的一段，等值时还按时间有序
+        @Index(name = "idx_log_entry_level", columnList = "file_record_id,level_code,timestamp"),
+        @Index(name = "idx_log_entry_file_tag", columnList = "file_record_id,tag_id,timestamp"),
         @jakarta.persistence.Index(name = "idx_file_record_ts", columnList = "file_record_id,timestamp")
 })
 @Getter
@@ -29,13 +30,40 @@ public class LogEntry {
 
     private LocalDateTime timestamp;
 
+    /** {@link LogLevel} 的序号，入库时由 level 规范化得出；无法识别的级别为 null */
+    @Column(name = "level_code")
+    private Integer levelCode;
+
+    /** {@link LogTag} 字典中的 id */
+    @Column(name = "tag_id")
+    private Integer tagId;
+
+    /** 解析器给出的级别，入库前规范化为 {@link LogLevel#label()}；读取时由 levelCode 还原，不单独存储 */
+    @Transient
     private String level;
 
+    /** 读取时由 tag_id 关联字典得出，不写入 */
+    @Formula("(SELECT t.name FROM log_tag t WHERE t.id = tag_id)")
     private String tag;
 
     @Column(length = 2048)
     private String message;
 
-    @Column(length = 4096)
+    /** 去重模式下为 null，读取时按 source 偏移从源文件回填；回填值不会被写回数据库 */
+    @Column(length = 4096, updatable = false)
     private String rawLine;
-} 
\ No newline at end of file
+
+    /** 条目所在的 {@link LogSource}，仅在不保存 rawLine 时记录 */
+    private Long sourceId;
+
+    /** 条目在源文件中的字节偏移 */
+    private Long sourceOffset;
+
+    /** 条目在源文件中的字节长度，不含换行符 */
+    private Integer sourceLength;
+
+    @PostLoad
+    void decodeLevel() {
+        level = LogLevel.labelOf(levelCode);
+    }
+}
@@ -0,0 +1,109 @@
+package com.aitool.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Canonical log level, stored as its ordinal in {@code log_entry.level_code} and {@code log_rollup.level_code}.
+ * Constants are ordered by severity, so "at least {@code WARN}" is a single range of codes; never reorder them.
+ * <p>
+ * Android letters and iOS words are mapped when entries are ingested. A level none of the names matches is stored
+ * as {@code null}; the original text stays in the raw line.
+ */
+public enum LogLevel {
+    VERBOSE("Verbose", "V", "Trace"),
+    DEBUG("Debug", "D"),
+    INFO("Info", "I", "Default", "Notice"),
+    WARN("Warn", "W", "Warning"),
+    ERROR("Error", "E"),
+    FATAL("Fatal", "F", "A", "Assert", "Fault", "Critical");
+
+    private static final Map<String, LogLevel> BY_NAME = new HashMap<>();
+
+    static {
+        for (LogLevel level : values()) {
+            level.names.forEach(name -> BY_NAME.put(name.toLowerCase(Locale.ROOT), level));
+        }
+    }
+
+    private final String label;
+    /** 全部写法，含 label，不区分大小写 */
+    private final List<String> names;
+
+    LogLevel(String label, String... aliases) {
+        this.label = label;
+        this.names = Stream.concat(Stream.of(label), Arrays.stream(aliases)).toList();
+    }
+
+    /**
+     * Name returned to clients, e.g. {@code Error}.
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Every spelling that means this level, the label first.
+     */
+    public List<String> names() {
+        return names;
+    }
+
+    public int code() {
+        return ordinal();
+    }
+
+    /**
+     * The level written as {@code text} in any case, or {@code null} when it is none of the known names.
+     */
+    public static LogLevel parse(String text) {
+        return text != null ? BY_NAME.get(text.trim().toLowerCase(Locale.ROOT)) : null;
+    }
+
+    public static LogLevel ofCode(Integer code) {
+        return code != null && code >= 0 && code < values().length ? values()[code] : null;
+    }
+
+    public static String labelOf(Integer code) {
+        LogLevel level = ofCode(code);
+        return level != null ? level.label : null;
+    }
+
+    /**
+     * Parse a level filter: a level matches itself, a level followed by {@code +} matches it and everything more
+     * severe, e.g. {@code Warn+} or {@code W+}.
+     *
+     * @throws IllegalArgumentException for an unknown level
+     */
+    public static Range filter(String expression) {
+        String text = expression.trim();
+        boolean andAbove = text.endsWith("+");
+        LogLevel level = parse(andAbove ? text.substring(0, text.length() - 1) : text);
+        if (level == null) {
+            throw new IllegalArgumentException("未知的日志级别: " + expression);
+        }
+        return new Range(level, andAbove ? FATAL : level);
+    }
+
+    /**
+     * Levels from {@code min} to {@code max}, both included.
+     */
+    public record Range(LogLevel min, LogLevel max) {
+
+        public boolean single() {
+            return min == max;
+        }
+
+        public boolean contains(Integer code) {
+            return code != null && code >= min.code() && code <= max.code();
+        }
+
+        public boolean contains(LogLevel level) {
+            return level != null && contains(level.code());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.aitool.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pre-aggregated entry count of one file per second, level and tag, written alongside the rows it counts.
+ * A key may appear in several rows (one per commit), so readers always {@code SUM(cnt)}.
+ */
+@Entity
+@Table(name = "log_rollup", indexes = {
+        @Index(name = "idx_rollup_file_bucket", columnList = "file_record_id,bucket")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LogRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_record_id")
+    private FileRecord fileRecord;
+
+    /** 条目时间截断到秒；无时间戳的条目为 null */
+    private LocalDateTime bucket;
+
+    /** 同 {@link LogEntry#getLevelCode()} */
+    @Column(name = "level_code")
+    private Integer levelCode;
+
+    /** 同 {@link LogEntry#getTagId()} */
+    @Column(name = "tag_id")
+    private Integer tagId;
+
+    @Column(name = "cnt")
+    private long count;
+}
@@ -0,0 +1,48 @@
+package com.aitool.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * One parsed file of a file record: a file on disk, or an entry read straight from an archive. All entries parsed
+ * from it point at it, and entries stored without {@code rawLine} read their text back from it by byte offset.
+ * A re-parse keeps the entries of sources whose size and modification time, or fingerprint, and parser are unchanged.
+ */
+@Entity
+@Table(name = "log_source")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LogSource {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_record_id")
+    private FileRecord fileRecord;
+
+    @Column(length = 4096)
+    private String path;
+
+    /** 内容指纹：落盘文件为 SHA-256（未知时为空），压缩包内条目为大小、修改时间与 CRC */
+    private String fingerprint;
+
+    /** 落盘文件的大小与修改时间（毫秒），重新解析时先于指纹比较，相同则不再计算哈希 */
+    private Long size;
+
+    private Long lastModified;
+
+    /** 解析该文件的解析器标识，见 LogParser#id */
+    private String parser;
+
+    /** 写入的条目数；为空表示该文件的解析尚未完成提交 */
+    private Long entryCount;
+
+    private Long foldedLines;
+
+    private Long unmatchedLines;
+}
@@ -0,0 +1,24 @@
+package com.aitool.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Dictionary of tag names; rows and rollups store the id. Entries are never removed, ids stay stable.
+ */
+@Entity
+@Table(name = "log_tag")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LogTag {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(unique = true, nullable = false)
+    private String name;
+}
@@ -0,0 +1,59 @@
+package com.aitool.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A requested parse of a file record. Jobs are claimed by one instance at a time and held through a lease that
+ * the instance keeps renewing; a job whose lease ran out is queued again, so parses survive restarts.
+ */
+@Entity
+@Table(name = "parse_job", indexes = {
+        @Index(name = "idx_parse_job_state", columnList = "state, priority, created_at"),
+        @Index(name = "idx_parse_job_file_record", columnList = "file_record_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ParseJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_record_id")
+    private FileRecord fileRecord;
+
+    /** 提交方，同一优先级内按租户轮流调度 */
+    @Column(nullable = false)
+    private String tenant;
+
+    /** 越大越先执行；大于 0 的任务可以使用预留给紧急任务的并发槽位 */
+    private int priority;
+
+    @Convert(converter = ParseJobStateConverter.class)
+    private ParseJobState state;
+
+    /** 被领取执行的次数，租约过期重新排队时累加 */
+    private int attempts;
+
+    /** 持有租约的实例 */
+    private String leaseOwner;
+
+    private LocalDateTime leaseUntil;
+
+    private boolean cancelRequested;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    private String message;
+}
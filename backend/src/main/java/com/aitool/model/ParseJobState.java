@@ -0,0 +1,9 @@
+package com.aitool.model;
+
+public enum ParseJobState {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED
+}
@@ -0,0 +1,22 @@
+package com.aitool.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores {@link ParseJobState} by name as a plain text column, so that adding a state needs no schema change; see
+ * {@link FileStatusConverter}.
+ */
+@Converter
+public class ParseJobStateConverter implements AttributeConverter<ParseJobState, String> {
+
+    @Override
+    public String convertToDatabaseColumn(ParseJobState state) {
+        return state != null ? state.name() : null;
+    }
+
+    @Override
+    public ParseJobState convertToEntityAttribute(String name) {
+        return name != null ? ParseJobState.valueOf(name) : null;
+    }
+}
@@ -0,0 +1,74 @@
+package com.aitool.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One URL of a batch remote ingest. Ranged downloads are written segment by segment into a preallocated part file;
+ * the bitmap of finished segments is persisted so a download resumes where it stopped, also after a restart.
+ */
+@Entity
+@Table(name = "remote_fetch", indexes = {
+        @Index(name = "idx_remote_fetch_batch", columnList = "batch_id"),
+        @Index(name = "idx_remote_fetch_state", columnList = "state, priority")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RemoteFetch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String batchId;
+
+    /** 下载完成后即为文件记录的 uuid */
+    @Column(unique = true, nullable = false)
+    private String uuid;
+
+    @Column(length = 4096, nullable = false)
+    private String url;
+
+    private String filename;
+
+    /** 下载完成后提交解析任务使用的租户和优先级 */
+    private String tenant;
+
+    private int priority;
+
+    @Convert(converter = RemoteFetchStateConverter.class)
+    private RemoteFetchState state;
+
+    /** 远程文件大小，未知时为 null */
+    private Long totalBytes;
+
+    /** 服务器是否支持 Range；不支持时只能整体重新下载 */
+    private boolean ranged;
+
+    private Long segmentSize;
+
+    /** 续传时随 If-Range 发送的强 ETag 或 Last-Modified，远程内容变化后从头下载 */
+    private String validator;
+
+    @Column(length = 4096)
+    private String partPath;
+
+    /** 已完成分段的位图（BitSet.toByteArray） */
+    private byte[] receivedSegments;
+
+    private String message;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    public int segmentCount() {
+        return (int) ((totalBytes + segmentSize - 1) / segmentSize);
+    }
+}
@@ -0,0 +1,8 @@
+package com.aitool.model;
+
+public enum RemoteFetchState {
+    QUEUED,
+    DOWNLOADING,
+    STORED,
+    FAILED
+}
@@ -0,0 +1,22 @@
+package com.aitool.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores {@link RemoteFetchState} by name as a plain text column, so that adding a state needs no schema change;
+ * see {@link FileStatusConverter}.
+ */
+@Converter
+public class RemoteFetchStateConverter implements AttributeConverter<RemoteFetchState, String> {
+
+    @Override
+    public String convertToDatabaseColumn(RemoteFetchState state) {
+        return state != null ? state.name() : null;
+    }
+
+    @Override
+    public RemoteFetchState convertToEntityAttribute(String name) {
+        return name != null ? RemoteFetchState.valueOf(name) : null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.aitool.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A chunked upload in progress. Chunks are written into a preallocated part file at their offsets; the bitmap of
+ * received chunks is persisted so an upload can be resumed, also after a restart.
+ */
+@Entity
+@Table(name = "upload_session")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** 上传完成后即为文件记录的 uuid */
+    @Column(unique = true, nullable = false)
+    private String uuid;
+
+    private String filename;
+
+    private Long totalBytes;
+
+    private Integer chunkSize;
+
+    /** 预分配的临时文件，完成时重命名为 filename */
+    @Column(length = 4096)
+    private String partPath;
+
+    /** 已接收块的位图（BitSet.toByteArray） */
+    private byte[] receivedChunks;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    public int chunkCount() {
+        return (int) ((totalBytes + chunkSize - 1) / chunkSize);
+    }
+}
@@ -1,20 +1,15 @@
 package com.aitool.parser;
 
 import com.aitool.model.LogEntry;
-import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-@Slf4j
-public class AndroidLogParser implements LogParser {
+public class AndroidLogParser extends LineLogParser {
 
     // 支持两种格式：
     // 1. [I]|2025-06-30 15:08:56.004|TAG|message (老格式，带方括号)
@@ -23,43 +18,202 @@ public class AndroidLogParser implements LogParser {
     private static final Pattern PATTERN_V2 = Pattern.compile("^([A-Z])\\|(?<time>\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3})\\|.*?\\|T:(?<tag>[^|]+)\\|.*?D:(?<msg>.*)$");
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
-    @Override
-    public boolean supports(Path filePath) {
-        String name = filePath.getFileName().toString().toLowerCase();
-        return name.endsWith(".log") || name.endsWith(".txt");
+    /** "yyyy-MM-dd HH:mm:ss.SSS" */
+    private static final int TIME_LENGTH = 23;
+
+    public AndroidLogParser() {
+    }
+
+    public AndroidLogParser(Splitting splitting) {
+        super(splitting);
+    }
+
+    public AndroidLogParser(Splitting splitting, int maxEntryBytes) {
+        super(splitting, maxEntryBytes);
     }
 
+    /**
+     * Positional scan first; the regexes only see lines whose prefix looks like one of the two layouts
+     * but that the scanner could not settle, so they decide every edge case exactly as before.
+     */
     @Override
-    public List<LogEntry> parse(Path filePath) throws IOException {
-        List<LogEntry> list = new ArrayList<>();
-        try (var lines = Files.lines(filePath)) {
-            lines.forEach(line -> {
-                Matcher m = PATTERN_V1.matcher(line);
-                if (!m.find()) {
-                    m = PATTERN_V2.matcher(line);
-                }
-                if (m.find()) {
-                    String level = m.group(1);
-                    String tsStr = m.group("time");
-                    String tag = m.group("tag");
-                    String msg = m.group("msg");
-                    LocalDateTime ts;
-                    try {
-                        ts = LocalDateTime.parse(tsStr, FORMATTER);
-                    } catch (Exception e) {
-                        ts = null;
-                    }
-                    list.add(LogEntry.builder()
-                            .timestamp(ts)
-                            .level(level)
-                            .tag(tag)
-                            .message(msg)
-                            .rawLine(line)
-                            .build());
-                }
-            });
-        }
-        log.info("Android parser produced {} entries from {}", list.size(), filePath);
-        return list;
+    protected LogEntry parseLine(String line) {
+        int len = line.length();
+        int timeStart;
+        boolean v1;
+        if (len > 4 && line.charAt(0) == '[' && isUpper(line.charAt(1)) && line.charAt(2) == ']' && line.charAt(3) == '|') {
+            v1 = true;
+            timeStart = 4;
+        } else if (len > 2 && isUpper(line.charAt(0)) && line.charAt(1) == '|') {
+            v1 = false;
+            timeStart = 2;
+        } else {
+            // 两个正则都以这样的前缀开头，前缀不符必然不匹配
+            return null;
+        }
+        LogEntry entry = v1 ? scanV1(line, timeStart) : scanV2(line, timeStart);
+        return entry != null ? entry : parseWithRegex(line);
+    }
+
+    private static LogEntry scanV1(String line, int timeStart) {
+        int rest = timeStart + TIME_LENGTH + 1;
+        if (!isTimeField(line, timeStart) || hasLineTerminator(line, rest)) {
+            return null;
+        }
+        // .*?(?<tag>[A-Za-z0-9_]+).*?\| —— 第一个单词字符串作为 tag，其后第一个 '|' 之后为消息
+        int len = line.length();
+        int tagStart = rest;
+        while (tagStart < len && !isWordChar(line.charAt(tagStart))) {
+            tagStart++;
+        }
+        if (tagStart == len) {
+            return null;
+        }
+        int tagEnd = tagStart + 1;
+        while (tagEnd < len && isWordChar(line.charAt(tagEnd))) {
+            tagEnd++;
+        }
+        int bar = line.indexOf('|', tagEnd);
+        if (bar < 0) {
+            return null;
+        }
+        return entry(line, timeStart, line.substring(tagStart, tagEnd), line.substring(bar + 1));
+    }
+
+    private static LogEntry scanV2(String line, int timeStart) {
+        int rest = timeStart + TIME_LENGTH + 1;
+        if (!isTimeField(line, timeStart) || hasLineTerminator(line, rest)) {
+            return null;
+        }
+        // .*?\|T:(?<tag>[^|]+)\|.*?D: —— 第一个 "|T:" 到下一个 '|' 为 tag，其后第一个 "D:" 之后为消息
+        int t = line.indexOf("|T:", rest);
+        if (t < 0) {
+            return null;
+        }
+        int tagStart = t + 3;
+        int tagEnd = line.indexOf('|', tagStart);
+        if (tagEnd <= tagStart) {
+            return null;
+        }
+        int d = line.indexOf("D:", tagEnd + 1);
+        if (d < 0) {
+            return null;
+        }
+        return entry(line, timeStart, line.substring(tagStart, tagEnd), line.substring(d + 2));
+    }
+
+    private static LogEntry entry(String line, int timeStart, String tag, String msg) {
+        return LogEntry.builder()
+                .timestamp(parseTime(line, timeStart))
+                .level(String.valueOf(line.charAt(timeStart == 4 ? 1 : 0)))
+                .tag(tag)
+                .message(msg)
+                .rawLine(line)
+                .build();
+    }
+
+    /**
+     * Parse with the two regexes alone; package-private so the scanner can be checked against it.
+     */
+    LogEntry parseWithRegex(String line) {
+        Matcher m = PATTERN_V1.matcher(line);
+        if (!m.find()) {
+            m = PATTERN_V2.matcher(line);
+            if (!m.find()) {
+                return null;
+            }
+        }
+        String level = m.group(1);
+        String tsStr = m.group("time");
+        String tag = m.group("tag");
+        String msg = m.group("msg");
+        LocalDateTime ts;
+        try {
+            ts = LocalDateTime.parse(tsStr, FORMATTER);
+        } catch (Exception e) {
+            ts = null;
+        }
+        return LogEntry.builder()
+                .timestamp(ts)
+                .level(level)
+                .tag(tag)
+                .message(msg)
+                .rawLine(line)
+                .build();
+    }
+
+    /**
+     * Checks the fixed-width "yyyy-MM-dd HH:mm:ss.SSS|" field at {@code p}.
+     */
+    private static boolean isTimeField(String s, int p) {
+        if (s.length() < p + TIME_LENGTH + 1) {
+            return false;
+        }
+        for (int i = 0; i < TIME_LENGTH; i++) {
+            char c = s.charAt(p + i);
+            boolean ok = switch (i) {
+                case 4, 7 -> c == '-';
+                case 10 -> c == ' ';
+                case 13, 16 -> c == ':';
+                case 19 -> c == '.';
+                default -> c >= '0' && c <= '9';
+            };
+            if (!ok) {
+                return false;
+            }
+        }
+        return s.charAt(p + TIME_LENGTH) == '|';
+    }
+
+    /**
+     * Arithmetic parse of a validated time field; values the formatter would adjust or reject go through it instead.
+     */
+    private static LocalDateTime parseTime(String s, int p) {
+        int year = digits(s, p, 4);
+        int month = digits(s, p + 5, 2);
+        int day = digits(s, p + 8, 2);
+        int hour = digits(s, p + 11, 2);
+        int minute = digits(s, p + 14, 2);
+        int second = digits(s, p + 17, 2);
+        int millis = digits(s, p + 20, 3);
+        if (year > 0 && month >= 1 && month <= 12 && day >= 1
+                && (day <= 28 || day <= Month.of(month).length(Year.isLeap(year)))
+                && hour <= 23 && minute <= 59 && second <= 59) {
+            return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000);
+        }
+        try {
+            return LocalDateTime.parse(s.substring(p, p + TIME_LENGTH), FORMATTER);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int digits(String s, int p, int n) {
+        int v = 0;
+        for (int i = 0; i < n; i++) {
+            v = v * 10 + (s.charAt(p + i) - '0');
+        }
+        return v;
+    }
+
+    /**
+     * Java's '.' does not match these, so a line containing one must be left to the regex.
+     */
+    private static boolean hasLineTerminator(String s, int from) {
+        for (int i = from, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,460 @@
+package com.aitool.parser;
+
+import com.aitool.model.LogEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Base class for parsers whose format is one entry per header line.
+ * Lines are read one at a time and handed downstream in bounded chunks. Lines that are not a header (stack-trace
+ * frames, wrapped messages) are folded into the entry before them, joined with {@code '\n'}, until the entry
+ * would exceed {@code maxEntryBytes}; anything else is counted as unmatched. Every entry carries the byte offset
+ * and length of its lines in the source, so the raw text can be read back from the file instead of being stored.
+ * <p>
+ * When {@link Splitting} is configured, files at or above the threshold are instead cut into byte ranges
+ * aligned to the start of a header line, memory-mapped and parsed concurrently on a fork-join pool. Range results
+ * are emitted strictly in file order and only a small window of ranges is in flight, so memory stays bounded.
+ */
+@Slf4j
+public abstract class LineLogParser implements LogParser {
+
+    /**
+     * @param threshold  minimum file size in bytes for range splitting
+     * @param rangeBytes nominal size of one range; actual ranges end at the next newline
+     * @param pool       pool that parses the ranges
+     */
+    public record Splitting(long threshold, int rangeBytes, ForkJoinPool pool) {
+
+        /**
+         * Whether a file of {@code size} bytes is parsed as ranges; a single-thread pool never splits.
+         */
+        public boolean applies(long size) {
+            return pool.getParallelism() > 1 && size >= threshold && size > rangeBytes;
+        }
+    }
+
+    /** 单条日志（首行加续行）的默认字节上限 */
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 64 * 1024;
+
+    private static final int SCAN_BUFFER = 64 * 1024;
+
+    private final Splitting splitting;
+    private final int maxEntryBytes;
+    /** 同一解析器实例会被多个文件、多个区间并发使用 */
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder linesMatched = new LongAdder();
+    private final LongAdder linesFolded = new LongAdder();
+
+    protected LineLogParser() {
+        this(null);
+    }
+
+    protected LineLogParser(Splitting splitting) {
+        this(splitting, DEFAULT_MAX_ENTRY_BYTES);
+    }
+
+    /**
+     * @param maxEntryBytes byte cap of an entry including its continuation lines; 0 disables folding
+     */
+    protected LineLogParser(Splitting splitting, int maxEntryBytes) {
+        this.splitting = splitting;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    @Override
+    public boolean supports(Path filePath) {
+        String name = filePath.getFileName().toString().toLowerCase();
+        return name.endsWith(".log") || name.endsWith(".txt");
+    }
+
+    /**
+     * Number of sample lines this parser recognizes.
+     */
+    @Override
+    public int score(List<String> sampleLines) {
+        int matched = 0;
+        for (String line : sampleLines) {
+            if (parseLine(line) != null) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Folding depends on the entry byte cap; range splitting does not change the entries.
+     */
+    @Override
+    public String id() {
+        return LogParser.super.id() + "/" + maxEntryBytes;
+    }
+
+    @Override
+    public long linesRead() {
+        return linesRead.sum();
+    }
+
+    @Override
+    public long linesMatched() {
+        return linesMatched.sum();
+    }
+
+    @Override
+    public long linesFolded() {
+        return linesFolded.sum();
+    }
+
+    @Override
+    public ParseStats parse(Path filePath, int chunkSize, Consumer<List<LogEntry>> sink) throws IOException {
+        ParseStats stats;
+        long size = Files.size(filePath);
+        if (splitting != null && splitting.applies(size)) {
+            stats = parseRanges(filePath, size, chunkSize, sink);
+        } else {
+            try (Reader reader = Files.newBufferedReader(filePath)) {
+                stats = parse(reader, chunkSize, sink);
+            }
+        }
+        logStats(stats, filePath);
+        return stats;
+    }
+
+    @Override
+    public ParseStats parse(InputStream in, String name, int chunkSize, Consumer<List<LogEntry>> sink)
+            throws IOException {
+        // 与 Files.newBufferedReader 一致：遇到非法 UTF-8 直接报错而不是静默替换
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder());
+        ParseStats stats = parse(reader, chunkSize, sink);
+        logStats(stats, name);
+        return stats;
+    }
+
+    protected ParseStats parse(Reader reader, int chunkSize, Consumer<List<LogEntry>> sink) throws IOException {
+        Assembler assembler = new Assembler(chunkSize, sink);
+        OffsetLineReader lines = new OffsetLineReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            long offset = lines.lineOffset();
+            assembler.accept(line, offset, offset + lines.lineLength());
+        }
+        return assembler.finish();
+    }
+
+    private void logStats(ParseStats stats, Object source) {
+        log.info("{} produced {} entries from {} ({} continuation lines folded, {} unmatched)",
+                getClass().getSimpleName(), stats.entries(), source, stats.folded(), stats.unmatched());
+    }
+
+    /**
+     * @return the parsed entry, or {@code null} if the line does not match the format
+     */
+    protected abstract LogEntry parseLine(String line);
+
+    private ParseStats parseRanges(Path filePath, long size, int chunkSize, Consumer<List<LogEntry>> sink)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long[] bounds = splitPoints(channel, size, splitting.rangeBytes());
+            int ranges = bounds.length - 1;
+            int window = splitting.pool().getParallelism() * 2;
+            log.debug("Splitting {} ({} bytes) into {} ranges", filePath, size, ranges);
+
+            Deque<ForkJoinTask<RangeResult>> inFlight = new ArrayDeque<>(window);
+            List<LogEntry> chunk = new ArrayList<>(chunkSize);
+            ParseStats stats = ParseStats.EMPTY;
+            int next = 0;
+            try {
+                while (next < ranges || !inFlight.isEmpty()) {
+                    while (next < ranges && inFlight.size() < window) {
+                        long from = bounds[next];
+                        long to = bounds[next + 1];
+                        inFlight.add(splitting.pool().submit(() -> parseRange(channel, from, to)));
+                        next++;
+                    }
+                    RangeResult range = inFlight.poll().join();
+                    stats = stats.plus(range.stats());
+                    for (LogEntry entry : range.entries()) {
+                        chunk.add(entry);
+                        if (chunk.size() >= chunkSize) {
+                            sink.accept(chunk);
+                            chunk = new ArrayList<>(chunkSize);
+                        }
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                inFlight.forEach(t -> t.cancel(true));
+            }
+            if (!chunk.isEmpty()) {
+                sink.accept(chunk);
+            }
+            return stats;
+        }
+    }
+
+    private record RangeResult(List<LogEntry> entries, ParseStats stats) {
+    }
+
+    /**
+     * @return range boundaries: {@code [0, b1, ..., size]}, every inner boundary is the offset just after a newline,
+     * moved forward to the next header line so that no range starts inside an entry's continuation lines
+     */
+    private long[] splitPoints(FileChannel channel, long size, int rangeBytes) throws IOException {
+        List<Long> points = new ArrayList<>();
+        points.add(0L);
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER);
+        long pos = rangeBytes;
+        while (pos < size) {
+            long boundary = nextHeaderStart(channel, nextLineStart(channel, pos, size, buf), size, buf);
+            if (boundary >= size) {
+                break;
+            }
+            points.add(boundary);
+            pos = boundary + rangeBytes;
+        }
+        points.add(size);
+        return points.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * First header line at or after the line starting at {@code lineStart}. The scan gives up after
+     * {@code maxEntryBytes}: a longer run of continuation lines could not be folded completely anyway.
+     */
+    private long nextHeaderStart(FileChannel channel, long lineStart, long size, ByteBuffer buf) throws IOException {
+        if (maxEntryBytes <= 0) {
+            return lineStart;
+        }
+        long pos = lineStart;
+        while (pos < size && pos - lineStart <= maxEntryBytes) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            int end = 0;
+            while (end < n && buf.get(end) != '\n' && buf.get(end) != '\r') {
+                end++;
+            }
+            if (parseLine(new String(buf.array(), 0, end, StandardCharsets.UTF_8)) != null) {
+                return pos;
+            }
+            pos = nextLineStart(channel, pos + end, size, buf);
+        }
+        return lineStart;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer buf) throws IOException {
+        long pos = from;
+        while (pos < size) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /**
+     * Parse the lines of one range straight from its mapping. Line terminators follow
+     * {@link BufferedReader#readLine()}; in UTF-8 their bytes never occur inside a multi-byte character, so lines are
+     * found on the bytes and only each line is decoded.
+     */
+    private RangeResult parseRange(FileChannel channel, long from, long to) {
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            LineDecoder decoder = new LineDecoder();
+            List<LogEntry> entries = new ArrayList<>();
+            Assembler assembler = new Assembler(Integer.MAX_VALUE, entries::addAll);
+            int end = mapped.limit();
+            int start = 0;
+            for (int i = 0; i < end; i++) {
+                byte b = mapped.get(i);
+                if (b == '\n' || b == '\r') {
+                    assembler.accept(decoder.decode(mapped, start, i), from + start, from + i);
+                    if (b == '\r' && i + 1 < end && mapped.get(i + 1) == '\n') {
+                        i++;
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start < end) {
+                assembler.accept(decoder.decode(mapped, start, end), from + start, from + end);
+            }
+            return new RangeResult(entries, assembler.finish());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Strict UTF-8 decoding of single lines through buffers that are reused for the whole range and only grow to
+     * the longest line. A mapped buffer cannot take the decoder's array fast path, so each line is copied first.
+     */
+    private static final class LineDecoder {
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        private byte[] bytes = new byte[8192];
+        private CharBuffer chars = CharBuffer.allocate(8192);
+
+        String decode(ByteBuffer source, int from, int to) throws CharacterCodingException {
+            int length = to - from;
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+                chars = CharBuffer.allocate(bytes.length);
+            }
+            source.get(from, bytes, 0, length);
+            // UTF-8 解码后的字符数不超过字节数
+            chars.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(ByteBuffer.wrap(bytes, 0, length), chars, true);
+            if (result.isUnderflow()) {
+                result = decoder.flush(chars);
+            }
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            return new String(chars.array(), 0, chars.position());
+        }
+    }
+
+    /**
+     * Turns lines into entries: a header line opens an entry and the following non-header lines are folded into it.
+     * An entry is handed on only once the next header or the end of input closes it, so a chunk boundary never
+     * separates an entry from its continuation lines. Line counters are published once per chunk.
+     */
+    private final class Assembler {
+
+        private final int chunkSize;
+        private final Consumer<List<LogEntry>> sink;
+        private List<LogEntry> chunk;
+        private LogEntry open;
+        /** 出现续行时才创建 */
+        private StringBuilder message;
+        private StringBuilder raw;
+        private long entries;
+        private long lines;
+        private long folded;
+        private long unmatched;
+        private long reportedLines;
+        private long reportedEntries;
+        private long reportedFolded;
+
+        Assembler(int chunkSize, Consumer<List<LogEntry>> sink) {
+            this.chunkSize = chunkSize;
+            this.sink = sink;
+            this.chunk = new ArrayList<>(Math.min(chunkSize, 8192));
+        }
+
+        /**
+         * @param start byte offset of the line in the source
+         * @param end   byte offset just after the line, excluding its terminator
+         */
+        void accept(String line, long start, long end) {
+            lines++;
+            LogEntry entry = parseLine(line);
+            if (entry != null) {
+                close();
+                entry.setSourceOffset(start);
+                entry.setSourceLength(Math.toIntExact(end - start));
+                open = entry;
+                entries++;
+            } else if (open != null && end - open.getSourceOffset() <= maxEntryBytes) {
+                fold(line, end);
+                folded++;
+            } else {
+                // 超出上限后不再接收续行，保证 [offset, offset + length) 始终是一段连续的原文
+                close();
+                unmatched++;
+            }
+        }
+
+        ParseStats finish() {
+            close();
+            if (!chunk.isEmpty()) {
+                emit();
+            } else {
+                report();
+            }
+            return new ParseStats(entries, lines, folded, unmatched);
+        }
+
+        private void fold(String line, long end) {
+            if (message == null) {
+                message = new StringBuilder(Objects.toString(open.getMessage(), ""));
+                raw = open.getRawLine() != null ? new StringBuilder(open.getRawLine()) : null;
+            }
+            message.append('\n').append(line);
+            if (raw != null) {
+                raw.append('\n').append(line);
+            }
+            open.setSourceLength(Math.toIntExact(end - open.getSourceOffset()));
+        }
+
+        private void close() {
+            if (open == null) {
+                return;
+            }
+            if (message != null) {
+                open.setMessage(message.toString());
+                if (raw != null) {
+                    open.setRawLine(raw.toString());
+                }
+                message = null;
+                raw = null;
+            }
+            chunk.add(open);
+            open = null;
+            if (chunk.size() >= chunkSize) {
+                emit();
+            }
+        }
+
+        private void emit() {
+            report();
+            sink.accept(chunk);
+            chunk = new ArrayList<>(Math.min(chunkSize, 8192));
+        }
+
+        private void report() {
+            linesRead.add(lines - reportedLines);
+            linesMatched.add(entries - reportedEntries);
+            linesFolded.add(folded - reportedFolded);
+            reportedLines = lines;
+            reportedEntries = entries;
+            reportedFolded = folded;
+        }
+    }
+}
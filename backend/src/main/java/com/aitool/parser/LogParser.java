@@ -2,13 +2,80 @@ package com.aitool.parser;
 
 import com.aitool.model.LogEntry;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface LogParser {
     boolean supports(Path filePath);
 
-    List<LogEntry> parse(Path filePath) throws IOException;
-} 
\ No newline at end of file
+    /**
+     * Stream entries of the file to {@code sink} in chunks of at most {@code chunkSize} entries.
+     * Every chunk is a fresh list that the sink may keep; the parser never holds more than one chunk.
+     *
+     * @return entry and line counts of the file
+     */
+    ParseStats parse(Path filePath, int chunkSize, Consumer<List<LogEntry>> sink) throws IOException;
+
+    /**
+     * Stream variant for content that is not a regular file, e.g. an entry read straight from an archive.
+     * The stream is consumed but not closed.
+     *
+     * @param name label of the content, used for logging
+     * @return entry and line counts of the content
+     */
+    ParseStats parse(InputStream in, String name, int chunkSize, Consumer<List<LogEntry>> sink) throws IOException;
+
+    /**
+     * Score how well a sample from the head of a file fits this format; 0 means not this format.
+     */
+    int score(List<String> sampleLines);
+
+    /**
+     * Identity of the entries this parser produces: the parser, its {@link #version()} and any setting that
+     * changes its output. Files whose entries were produced under another id are parsed again on re-parse.
+     */
+    default String id() {
+        return getClass().getSimpleName() + "@" + version();
+    }
+
+    /**
+     * Bump whenever a change to the parser changes the entries it produces for the same input.
+     */
+    default int version() {
+        return 1;
+    }
+
+    /**
+     * @return lines this parser has read since startup, for metrics
+     */
+    default long linesRead() {
+        return 0;
+    }
+
+    /**
+     * @return lines this parser has turned into entries since startup, for metrics
+     */
+    default long linesMatched() {
+        return 0;
+    }
+
+    /**
+     * @return continuation lines this parser has folded into entries since startup, for metrics
+     */
+    default long linesFolded() {
+        return 0;
+    }
+
+    /**
+     * Convenience variant that materializes the whole file, only meant for small inputs.
+     */
+    default List<LogEntry> parse(Path filePath) throws IOException {
+        List<LogEntry> list = new ArrayList<>();
+        parse(filePath, 1000, list::addAll);
+        return list;
+    }
+}
@@ -0,0 +1,121 @@
+package com.aitool.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Line reader with the terminator rules of {@link java.io.BufferedReader#readLine()} ({@code \n}, {@code \r},
+ * {@code \r\n}) that also reports where each line sits in the UTF-8 source: byte offset and byte length without
+ * the terminator. The input must be strictly decoded UTF-8 so that re-encoding yields the original bytes.
+ */
+final class OffsetLineReader {
+
+    private final Reader in;
+    private final char[] buf = new char[8192];
+    private int pos;
+    private int limit;
+    /** 下一个未读字符在源文件中的字节偏移 */
+    private long offset;
+    private boolean skipLf;
+    private long lineOffset;
+    private int lineLength;
+
+    OffsetLineReader(Reader in) {
+        this(in, 0);
+    }
+
+    OffsetLineReader(Reader in, long startOffset) {
+        this.in = in;
+        this.offset = startOffset;
+    }
+
+    /**
+     * @return the next line without terminator, or {@code null} at end of input
+     */
+    String readLine() throws IOException {
+        StringBuilder pending = null;
+        long start = offset;
+        while (true) {
+            if (pos == limit && !fill()) {
+                if (pending == null) {
+                    return null;
+                }
+                return finish(pending.toString(), start);
+            }
+            if (skipLf) {
+                skipLf = false;
+                if (buf[pos] == '\n') {
+                    pos++;
+                    offset++;
+                    start = offset;
+                    continue;
+                }
+            }
+            int i = pos;
+            long bytes = 0;
+            while (i < limit) {
+                char c = buf[i];
+                if (c == '\n' || c == '\r') {
+                    break;
+                }
+                bytes += utf8Length(c);
+                i++;
+            }
+            offset += bytes;
+            if (i == limit) {
+                // 行跨越缓冲区边界，先暂存
+                if (pending == null) {
+                    pending = new StringBuilder(Math.max(80, (i - pos) * 2));
+                }
+                pending.append(buf, pos, i - pos);
+                pos = i;
+                continue;
+            }
+            String line = pending == null
+                    ? new String(buf, pos, i - pos)
+                    : pending.append(buf, pos, i - pos).toString();
+            skipLf = buf[i] == '\r';
+            pos = i + 1;
+            String result = finish(line, start);
+            offset++;
+            return result;
+        }
+    }
+
+    /** 最近一行在源文件中的起始字节偏移 */
+    long lineOffset() {
+        return lineOffset;
+    }
+
+    /** 最近一行的字节长度，不含换行符 */
+    int lineLength() {
+        return lineLength;
+    }
+
+    static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        // 代理对两个 char 合计编码为 4 字节
+        return Character.isSurrogate(c) ? 2 : 3;
+    }
+
+    private String finish(String line, long start) {
+        lineOffset = start;
+        lineLength = Math.toIntExact(offset - start);
+        return line;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) {
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
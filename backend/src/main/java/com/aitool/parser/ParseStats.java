@@ -0,0 +1,19 @@
+package com.aitool.parser;
+
+/**
+ * Line accounting of one parsed input.
+ *
+ * @param entries   entries produced, one per header line
+ * @param lines     lines read
+ * @param folded    continuation lines appended to the entry before them
+ * @param unmatched lines that ended up in no entry
+ */
+public record ParseStats(long entries, long lines, long folded, long unmatched) {
+
+    public static final ParseStats EMPTY = new ParseStats(0, 0, 0, 0);
+
+    public ParseStats plus(ParseStats other) {
+        return new ParseStats(entries + other.entries, lines + other.lines,
+                folded + other.folded, unmatched + other.unmatched);
+    }
+}
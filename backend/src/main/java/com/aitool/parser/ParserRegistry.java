@@ -1,18 +1,101 @@
 package com.aitool.parser;
 
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
+import com.aitool.config.ParseProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
-@Configuration
+/**
+ * Holds the registered parsers and picks exactly one per file.
+ * <p>
+ * Selection sniffs only the head of the file: every parser that {@link LogParser#supports supports} the name
+ * scores the sample lines, and the highest non-zero score wins (ties go to registration order). Adding a format
+ * therefore costs one sample scan per file instead of one full read.
+ */
+@Slf4j
+@Component
 public class ParserRegistry {
 
-    @Bean
-    public List<LogParser> logParsers() {
-        return List.of(
-                new AndroidLogParser(),
-                new IosLogParser()
+    private final List<LogParser> parsers;
+    private final LineLogParser.Splitting splitting;
+    private final int sniffBytes;
+
+    public ParserRegistry(ParseProperties properties, ForkJoinPool rangeParsePool) {
+        this.splitting = new LineLogParser.Splitting(
+                properties.splitThreshold().toBytes(),
+                (int) properties.splitRangeSize().toBytes(),
+                rangeParsePool);
+        int maxEntryBytes = Math.toIntExact(properties.maxEntrySize().toBytes());
+        this.parsers = List.of(
+                new AndroidLogParser(splitting, maxEntryBytes),
+                new IosLogParser(splitting, maxEntryBytes)
         );
+        this.sniffBytes = (int) properties.sniffBytes().toBytes();
+    }
+
+    public List<LogParser> parsers() {
+        return parsers;
+    }
+
+    public Optional<LogParser> detect(Path filePath) throws IOException {
+        byte[] head;
+        try (InputStream in = Files.newInputStream(filePath)) {
+            head = in.readNBytes(sniffBytes);
+        }
+        return detect(filePath, head, head.length);
+    }
+
+    /**
+     * @param name   file name used for {@link LogParser#supports}
+     * @param head   first bytes of the content
+     * @param length number of valid bytes in {@code head}
+     */
+    public Optional<LogParser> detect(Path name, byte[] head, int length) {
+        List<String> sample = sampleLines(head, length, length >= sniffBytes);
+        LogParser best = null;
+        int bestScore = 0;
+        for (LogParser parser : parsers) {
+            if (!parser.supports(name)) {
+                continue;
+            }
+            int score = parser.score(sample);
+            if (score > bestScore) {
+                best = parser;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            log.debug("No parser recognizes {} ({} sample lines)", name, sample.size());
+        }
+        return Optional.ofNullable(best);
+    }
+
+    public int sniffBytes() {
+        return sniffBytes;
+    }
+
+    /**
+     * Whether the parsers cut a file of {@code size} bytes into ranges parsed in parallel.
+     */
+    public boolean splits(long size) {
+        return splitting.applies(size);
+    }
+
+    private static List<String> sampleLines(byte[] head, int length, boolean truncated) {
+        String text = new String(head, 0, length, StandardCharsets.UTF_8);
+        List<String> lines = text.lines().toList();
+        // 采样截断处的最后一行不完整，不参与打分
+        if (truncated && !lines.isEmpty()) {
+            lines = lines.subList(0, lines.size() - 1);
+        }
+        return lines;
     }
-} 
\ No newline at end of file
+}
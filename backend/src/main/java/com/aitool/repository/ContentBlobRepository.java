@@ -0,0 +1,10 @@
+package com.aitool.repository;
+
+import com.aitool.model.ContentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, Long> {
+    List<ContentBlob> findByHashAndSize(String hash, Long size);
+}
@@ -14,4 +14,14 @@ public interface FileRecordRepository extends JpaRepository<FileRecord, Long> {
     void deleteByUuidIn(List<String> uuids);
 
     java.util.List<FileRecord> findByUuidIn(List<String> uuids);
+
+    /**
+     * An already parsed record that owns the rows for {@code contentHash}, other than {@code id}.
+     */
+    Optional<FileRecord> findFirstByContentHashAndStatusAndDataRecordIdIsNullAndIdNotOrderByIdAsc(
+            String contentHash, com.aitool.model.FileStatus status, Long id);
+
+    List<FileRecord> findByDataRecordId(Long dataRecordId);
+
+    List<FileRecord> findByStatusIn(List<com.aitool.model.FileStatus> statuses);
 } 
\ No newline at end of file
@@ -9,10 +9,20 @@ import org.springframework.data.domain.Pageable;
 
 public interface LogEntryRepository extends JpaRepository<LogEntry, Long>, JpaSpecificationExecutor<LogEntry> {
     Page<LogEntry> findByFileRecord(FileRecord file, Pageable pageable);
+
+    Page<LogEntry> findByFileRecord_Id(Long fileRecordId, Pageable pageable);
+
+    boolean existsByFileRecord_Id(Long fileRecordId);
+
     @org.springframework.transaction.annotation.Transactional
     @org.springframework.data.jpa.repository.Modifying
     long deleteByFileRecord(FileRecord fileRecord);
 
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("DELETE FROM LogEntry e WHERE e.fileRecord.id = :fileRecordId")
+    int deleteAllByFileRecordId(@org.springframework.data.repository.query.Param("fileRecordId") Long fileRecordId);
+
     @org.springframework.transaction.annotation.Transactional
     @org.springframework.data.jpa.repository.Modifying
     void deleteByFileRecord_UuidIn(java.util.List<String> uuids);
@@ -0,0 +1,20 @@
+package com.aitool.repository;
+
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface LogRollupRepository extends JpaRepository<LogRollup, Long> {
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    long deleteByFileRecord(FileRecord fileRecord);
+
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("DELETE FROM LogRollup r WHERE r.fileRecord.id = :fileRecordId")
+    int deleteAllByFileRecordId(@org.springframework.data.repository.query.Param("fileRecordId") Long fileRecordId);
+
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    void deleteByFileRecord_UuidIn(java.util.List<String> uuids);
+}
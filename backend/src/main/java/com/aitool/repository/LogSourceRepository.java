@@ -0,0 +1,17 @@
+package com.aitool.repository;
+
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogSource;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface LogSourceRepository extends JpaRepository<LogSource, Long> {
+    java.util.List<LogSource> findByFileRecord(FileRecord fileRecord);
+
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    long deleteByFileRecord(FileRecord fileRecord);
+
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    void deleteByFileRecord_UuidIn(java.util.List<String> uuids);
+}
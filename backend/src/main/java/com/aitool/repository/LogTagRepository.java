@@ -0,0 +1,7 @@
+package com.aitool.repository;
+
+import com.aitool.model.LogTag;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface LogTagRepository extends JpaRepository<LogTag, Integer> {
+}
@@ -0,0 +1,70 @@
+package com.aitool.repository;
+
+import com.aitool.model.FileRecord;
+import com.aitool.model.ParseJob;
+import com.aitool.model.ParseJobState;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface ParseJobRepository extends JpaRepository<ParseJob, Long> {
+    List<ParseJob> findByStateOrderByPriorityDescCreatedAtAsc(ParseJobState state);
+
+    List<ParseJob> findByState(ParseJobState state);
+
+    List<ParseJob> findByStateAndLeaseUntilBefore(ParseJobState state, LocalDateTime time);
+
+    List<ParseJob> findByStateAndLeaseOwner(ParseJobState state, String leaseOwner);
+
+    Optional<ParseJob> findFirstByFileRecordAndStateInOrderByIdDesc(FileRecord fileRecord,
+                                                                  Collection<ParseJobState> states);
+
+    Optional<ParseJob> findFirstByFileRecordOrderByIdDesc(FileRecord fileRecord);
+
+    /**
+     * Take a queued job; only one instance can succeed.
+     *
+     * @return 1 when the job was claimed
+     */
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("update ParseJob j set j.state = com.aitool.model.ParseJobState.RUNNING, "
+            + "j.leaseOwner = :owner, j.leaseUntil = :until, j.startedAt = :now, j.attempts = j.attempts + 1 "
+            + "where j.id = :id and j.state = com.aitool.model.ParseJobState.QUEUED")
+    int claim(@org.springframework.data.repository.query.Param("id") Long id,
+              @org.springframework.data.repository.query.Param("owner") String owner,
+              @org.springframework.data.repository.query.Param("until") LocalDateTime until,
+              @org.springframework.data.repository.query.Param("now") LocalDateTime now);
+
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("update ParseJob j set j.leaseUntil = :until "
+            + "where j.id in :ids and j.leaseOwner = :owner and j.state = com.aitool.model.ParseJobState.RUNNING")
+    int renew(@org.springframework.data.repository.query.Param("ids") Collection<Long> ids,
+              @org.springframework.data.repository.query.Param("owner") String owner,
+              @org.springframework.data.repository.query.Param("until") LocalDateTime until);
+
+    /**
+     * Cancel a job that has not been claimed yet.
+     *
+     * @return 1 when the job was still queued
+     */
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("update ParseJob j set j.state = com.aitool.model.ParseJobState.CANCELLED, "
+            + "j.finishedAt = :now where j.id = :id and j.state = com.aitool.model.ParseJobState.QUEUED")
+    int cancelQueued(@org.springframework.data.repository.query.Param("id") Long id,
+                     @org.springframework.data.repository.query.Param("now") LocalDateTime now);
+
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("update ParseJob j set j.cancelRequested = true where j.id = :id")
+    int requestCancel(@org.springframework.data.repository.query.Param("id") Long id);
+
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    long deleteByFileRecord(FileRecord fileRecord);
+}
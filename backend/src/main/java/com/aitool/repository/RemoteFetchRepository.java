@@ -0,0 +1,31 @@
+package com.aitool.repository;
+
+import com.aitool.model.RemoteFetch;
+import com.aitool.model.RemoteFetchState;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface RemoteFetchRepository extends JpaRepository<RemoteFetch, Long> {
+    List<RemoteFetch> findByBatchIdOrderById(String batchId);
+
+    List<RemoteFetch> findByState(RemoteFetchState state);
+
+    Optional<RemoteFetch> findFirstByStateOrderByPriorityDescIdAsc(RemoteFetchState state);
+
+    List<RemoteFetch> findByStateInAndUpdatedAtBefore(Collection<RemoteFetchState> states, LocalDateTime time);
+
+    /**
+     * Store the bitmap without loading the entity; callers serialize updates of one fetch.
+     */
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(
+            "update RemoteFetch f set f.receivedSegments = :bits, f.updatedAt = :now where f.id = :id")
+    int updateReceived(@org.springframework.data.repository.query.Param("id") Long id,
+                       @org.springframework.data.repository.query.Param("bits") byte[] bits,
+                       @org.springframework.data.repository.query.Param("now") LocalDateTime now);
+}
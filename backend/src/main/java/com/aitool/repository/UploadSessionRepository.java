@@ -0,0 +1,29 @@
+package com.aitool.repository;
+
+import com.aitool.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+    Optional<UploadSession> findByUuid(String uuid);
+
+    List<UploadSession> findByUpdatedAtBefore(LocalDateTime time);
+
+    /**
+     * Store the bitmap without loading the entity; callers serialize updates of one session.
+     */
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(
+            "update UploadSession s set s.receivedChunks = :bits, s.updatedAt = :now where s.uuid = :uuid")
+    int updateReceived(@org.springframework.data.repository.query.Param("uuid") String uuid,
+                       @org.springframework.data.repository.query.Param("bits") byte[] bits,
+                       @org.springframework.data.repository.query.Param("now") LocalDateTime now);
+
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Modifying
+    long deleteByUuid(String uuid);
+}
@@ -0,0 +1,112 @@
+package com.aitool.segment;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * On-disk layout of a log segment.
+ * <pre>
+ * segment := MAGIC block* footer footerOffset:i64 MAGIC
+ * block   := count:varint
+ *            tsLen:varint   ts column     (first value, then zigzag deltas; NULL_TS for no timestamp)
+ *            lvlLen:varint  level column  (dictionary ids)
+ *            tagLen:varint  tag column    (dictionary ids)
+ *            textLen:varint text column   (deflated message / raw line pairs)
+ * footer  := entryCount:varint levels:dict tags:dict blockCount:varint blockIndex*
+ * dict    := size:varint string*          (id = position + 1, id 0 is null)
+ * blockIndex := offset:varint length:varint count:varint minTs:zigzag maxTs:zigzag levelMask:i64
+ * string  := (len + 1):varint utf8       (0 is null)
+ * </pre>
+ * Timestamps are epoch milliseconds of the {@link LocalDateTime} read as UTC, so a segment does not depend on the
+ * server time zone.
+ */
+final class SegmentFormat {
+
+    static final int MAGIC = 0x414C5347; // "ALSG"
+    static final int BLOCK_ENTRIES = 4096;
+    /** 无时间戳的条目，排序时位于最前，与 SQLite 中 NULL 的顺序一致 */
+    static final long NULL_TS = Long.MIN_VALUE;
+    /** 级别字典超过 64 项时，块级别掩码全部置位，不再据此跳过块 */
+    static final long ALL_LEVELS = -1L;
+
+    private SegmentFormat() {
+    }
+
+    static long toMillis(LocalDateTime ts) {
+        return ts == null ? NULL_TS : ts.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime fromMillis(long millis) {
+        return millis == NULL_TS ? null : LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    static long levelBit(int id) {
+        return id < 64 ? 1L << id : ALL_LEVELS;
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static void writeZigZag(ByteArrayOutputStream out, long v) {
+        writeVarLong(out, (v << 1) ^ (v >> 63));
+    }
+
+    static void writeString(ByteArrayOutputStream out, String s) {
+        if (s == null) {
+            out.write(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return v;
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        return Math.toIntExact(readVarLong(in));
+    }
+
+    static long readZigZag(ByteBuffer in) {
+        long v = readVarLong(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static String readString(ByteBuffer in) {
+        int len = readVarInt(in);
+        if (len == 0) {
+            return null;
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), len - 1, StandardCharsets.UTF_8);
+        in.position(in.position() + len - 1);
+        return s;
+    }
+
+    /**
+     * Sub-buffer of the next {@code length} bytes; advances {@code in} past them.
+     */
+    static ByteBuffer slice(ByteBuffer in, int length) {
+        ByteBuffer s = in.slice(in.position(), length);
+        in.position(in.position() + length);
+        return s;
+    }
+}
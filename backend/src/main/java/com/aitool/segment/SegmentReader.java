@@ -0,0 +1,301 @@
+package com.aitool.segment;
+
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static com.aitool.segment.SegmentFormat.*;
+
+/**
+ * Read side of a segment. Queries run in two passes: the first decodes only the timestamp, level and tag columns
+ * of blocks the sparse index cannot rule out and keeps the best {@code limit} keys in a heap; the second inflates
+ * the text of just the blocks that hold those keys.
+ */
+final class SegmentReader implements Closeable {
+
+    /**
+     * @param levelIds wanted level ids, {@code null} for any
+     * @param tagId    wanted tag id, {@code null} for any, {@code -1} when the tag never occurs
+     */
+    record Filter(int[] levelIds, Integer tagId, long fromMillis, long toMillis) {
+
+        long levelMask() {
+            if (levelIds == null) {
+                return ALL_LEVELS;
+            }
+            long mask = 0;
+            for (int id : levelIds) {
+                mask |= levelBit(id);
+            }
+            return mask;
+        }
+
+        boolean matches(int level, int tag, long ts) {
+            if (tagId != null && tagId != tag) {
+                return false;
+            }
+            if (ts < fromMillis || ts > toMillis) {
+                return false;
+            }
+            if (levelIds != null) {
+                for (int id : levelIds) {
+                    if (id == level) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /** 排序键：(时间戳, 段内序号)，与数据库中 (timestamp, id) 的顺序对应 */
+    record Key(long ts, long ordinal) {
+        static final Comparator<Key> ORDER = Comparator.comparingLong(Key::ts).thenComparingLong(Key::ordinal);
+    }
+
+    record Selection(List<Key> keys, long total) {
+    }
+
+    private record Block(long offset, int length, int count, long firstOrdinal, long minTs, long maxTs, long levelMask) {
+    }
+
+    private record Columns(long[] ts, int[] levels, int[] tags, ByteBuffer text) {
+    }
+
+    private final FileChannel channel;
+    private final long entryCount;
+    private final String[] levels;
+    private final String[] tags;
+    private final List<Block> blocks;
+
+    SegmentReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer trailer = read(size - Long.BYTES - Integer.BYTES, Long.BYTES + Integer.BYTES);
+            long footerOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || read(0, Integer.BYTES).getInt() != MAGIC) {
+                throw new IOException("不是有效的日志段文件: " + path);
+            }
+            ByteBuffer footer = read(footerOffset, (int) (size - Long.BYTES - Integer.BYTES - footerOffset));
+            this.entryCount = readVarLong(footer);
+            this.levels = readDict(footer);
+            this.tags = readDict(footer);
+            int blockCount = readVarInt(footer);
+            this.blocks = new ArrayList<>(blockCount);
+            long ordinal = 0;
+            for (int i = 0; i < blockCount; i++) {
+                long offset = readVarLong(footer);
+                int length = readVarInt(footer);
+                int count = readVarInt(footer);
+                Block b = new Block(offset, length, count, ordinal, readZigZag(footer), readZigZag(footer),
+                        footer.getLong());
+                blocks.add(b);
+                ordinal += count;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Dictionary id of {@code value}, or {@code -1} when the segment never contains it.
+     */
+    int tagId(String value) {
+        return indexOf(tags, value);
+    }
+
+    /**
+     * Dictionary ids of the levels in {@code range}. Segments written before levels were normalized hold the
+     * parser's notation, so every value is mapped.
+     */
+    int[] levelIds(LogLevel.Range range) {
+        return IntStream.range(0, levels.length).filter(id -> range.contains(LogLevel.parse(levels[id]))).toArray();
+    }
+
+    /**
+     * The first {@code limit} matching keys strictly after {@code after} in {@code (ts, ordinal)} order.
+     * The total is only counted when {@code countAll}; otherwise the scan stops as soon as no remaining block
+     * can improve the result.
+     */
+    Selection select(Filter filter, Key after, int limit, boolean countAll) throws IOException {
+        PriorityQueue<Key> best = new PriorityQueue<>(limit + 1, Key.ORDER.reversed());
+        long total = 0;
+        long levelMask = filter.levelMask();
+        long lowerTs = after != null ? Math.max(after.ts(), filter.fromMillis()) : filter.fromMillis();
+        List<Block> candidates = new ArrayList<>(blocks);
+        if (!countAll) {
+            candidates.sort(Comparator.comparingLong(Block::minTs));
+        }
+        for (Block b : candidates) {
+            if ((b.levelMask() & levelMask) == 0 || b.minTs() > filter.toMillis() || b.maxTs() < filter.fromMillis()) {
+                continue;
+            }
+            if (!countAll) {
+                if (b.maxTs() < lowerTs) {
+                    continue;
+                }
+                // 块按最小时间戳升序，之后的块都不可能比堆中最大的键更靠前
+                if (best.size() == limit && b.minTs() > best.peek().ts()) {
+                    break;
+                }
+            }
+            Columns c = columns(b, false);
+            for (int i = 0; i < b.count(); i++) {
+                long ts = c.ts()[i];
+                if (!filter.matches(c.levels()[i], c.tags()[i], ts)) {
+                    continue;
+                }
+                total++;
+                Key key = new Key(ts, b.firstOrdinal() + i);
+                if (after != null && Key.ORDER.compare(key, after) <= 0) {
+                    continue;
+                }
+                if (best.size() < limit) {
+                    best.add(key);
+                } else if (limit > 0 && Key.ORDER.compare(key, best.peek()) < 0) {
+                    best.poll();
+                    best.add(key);
+                }
+            }
+        }
+        List<Key> keys = new ArrayList<>(best);
+        keys.sort(Key.ORDER);
+        return new Selection(keys, total);
+    }
+
+    /**
+     * Materialize entries in the order of {@code keys}; ids are 1-based ordinals within the segment.
+     */
+    List<LogEntry> load(List<Key> keys) throws IOException {
+        TreeMap<Long, Block> byOrdinal = new TreeMap<>();
+        blocks.forEach(b -> byOrdinal.put(b.firstOrdinal(), b));
+        TreeMap<Long, LogEntry> loaded = new TreeMap<>();
+        long[] ordinals = keys.stream().mapToLong(Key::ordinal).sorted().toArray();
+        int i = 0;
+        while (i < ordinals.length) {
+            Block b = byOrdinal.floorEntry(ordinals[i]).getValue();
+            Columns c = columns(b, true);
+            String[] text = inflateText(c.text(), b.count());
+            long end = b.firstOrdinal() + b.count();
+            for (; i < ordinals.length && ordinals[i] < end; i++) {
+                int row = (int) (ordinals[i] - b.firstOrdinal());
+                loaded.put(ordinals[i], LogEntry.builder()
+                        .id(ordinals[i] + 1)
+                        .timestamp(fromMillis(c.ts()[row]))
+                        .level(lookup(levels, c.levels()[row]))
+                        .tag(lookup(tags, c.tags()[row]))
+                        .message(text[row * 2])
+                        .rawLine(text[row * 2 + 1])
+                        .build());
+            }
+        }
+        return keys.stream().map(k -> loaded.get(k.ordinal())).toList();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Columns columns(Block b, boolean withText) throws IOException {
+        ByteBuffer buf = read(b.offset(), b.length());
+        int count = readVarInt(buf);
+        ByteBuffer tsCol = slice(buf, readVarInt(buf));
+        ByteBuffer lvlCol = slice(buf, readVarInt(buf));
+        ByteBuffer tagCol = slice(buf, readVarInt(buf));
+        ByteBuffer text = withText ? slice(buf, readVarInt(buf)) : null;
+        long[] ts = new long[count];
+        int[] lvl = new int[count];
+        int[] tag = new int[count];
+        long prev = 0;
+        for (int i = 0; i < count; i++) {
+            prev += readZigZag(tsCol);
+            ts[i] = prev;
+            lvl[i] = readVarInt(lvlCol);
+            tag[i] = readVarInt(tagCol);
+        }
+        return new Columns(ts, lvl, tag, text);
+    }
+
+    private static String[] inflateText(ByteBuffer compressed, int count) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] out = new byte[Math.max(1024, compressed.remaining() * 4)];
+            int n = 0;
+            while (!inflater.finished()) {
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                int r = inflater.inflate(out, n, out.length - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("日志段文本块不完整");
+                }
+                n += r;
+            }
+            ByteBuffer plain = ByteBuffer.wrap(out, 0, n);
+            String[] text = new String[count * 2];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = readString(plain);
+            }
+            return text;
+        } catch (DataFormatException e) {
+            throw new IOException("日志段文本块损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("日志段文件被截断");
+            }
+        }
+        return buf.flip();
+    }
+
+    private static String[] readDict(ByteBuffer in) {
+        String[] dict = new String[readVarInt(in) + 1];
+        for (int i = 1; i < dict.length; i++) {
+            dict[i] = readString(in);
+        }
+        return dict;
+    }
+
+    private static int indexOf(String[] dict, String value) {
+        for (int i = 1; i < dict.length; i++) {
+            if (dict[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String lookup(String[] dict, int id) {
+        return id == 0 ? null : dict[id];
+    }
+}
@@ -0,0 +1,116 @@
+package com.aitool.segment;
+
+import com.aitool.dto.LogCursor;
+import com.aitool.dto.LogQuery;
+import com.aitool.dto.LogWindow;
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+import com.aitool.service.LogEntryWriter;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Columnar alternative to {@code log_entry}: each parsed file becomes one immutable segment next to the upload,
+ * with dictionary-encoded level and tag columns, delta-encoded timestamps, deflated text blocks and a sparse
+ * per-block index (time range and level set). Selected with {@code aitool.parse.writer=SEGMENT}.
+ * <p>
+ * Entry ids are 1-based positions within the segment, so cursors are only meaningful per file.
+ */
+@Service
+public class SegmentStore {
+
+    public static final String FILE_NAME = "entries.seg";
+    /** 偏移分页跳过前面的条目时，每一步最多保留的键数 */
+    private static final int SKIP_STEP = 10_000;
+
+    public Path pathFor(FileRecord record) {
+        return Path.of(record.getStoragePath()).resolveSibling(FILE_NAME);
+    }
+
+    /**
+     * Start a new segment for {@code record}; it replaces any previous one when the writer is closed,
+     * while an aborted writer leaves the previous one in place.
+     */
+    public LogEntryWriter create(FileRecord record) {
+        Path path = pathFor(record);
+        try {
+            LogEntryWriter writer = new SegmentWriter(path);
+            record.setSegmentPath(path.toString());
+            return writer;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("无法创建日志段: " + path, e);
+        }
+    }
+
+    public LogWindow seek(FileRecord record, LogQuery q, LogCursor after, int size, boolean withTotal) {
+        Path path = Path.of(record.getSegmentPath());
+        if (!Files.exists(path)) {
+            // 解析尚未完成，段文件还未落地
+            return new LogWindow(List.of(), null, withTotal ? 0L : null);
+        }
+        try (SegmentReader reader = new SegmentReader(path)) {
+            SegmentReader.Key from = after == null ? null
+                    : new SegmentReader.Key(SegmentFormat.toMillis(after.timestamp()), after.id() - 1);
+            SegmentReader.Selection selection = reader.select(filter(reader, q), from, size + 1, withTotal);
+            List<LogEntry> rows = reader.load(selection.keys());
+            boolean more = rows.size() > size;
+            List<LogEntry> page = more ? rows.subList(0, size) : rows;
+            LogCursor next = more ? LogCursor.of(page.get(page.size() - 1)) : null;
+            return new LogWindow(page, next, withTotal ? selection.total() : null);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("读取日志段失败: " + path, e);
+        }
+    }
+
+    /**
+     * Offset paging in {@code (timestamp, id)} order; the sort of {@code pageable} is ignored. The offset is
+     * skipped with a {@code (timestamp, id)} cursor in steps of {@link #SKIP_STEP} keys, so memory does not grow
+     * with the page number.
+     */
+    public Page<LogEntry> query(FileRecord record, LogQuery q, Pageable pageable) {
+        Path path = Path.of(record.getSegmentPath());
+        if (!Files.exists(path)) {
+            return Page.empty(pageable);
+        }
+        try (SegmentReader reader = new SegmentReader(path)) {
+            SegmentReader.Filter filter = filter(reader, q);
+            SegmentReader.Key after = null;
+            long skipped = 0;
+            while (skipped < pageable.getOffset()) {
+                int step = (int) Math.min(SKIP_STEP, pageable.getOffset() - skipped);
+                List<SegmentReader.Key> keys = reader.select(filter, after, step, false).keys();
+                if (keys.isEmpty()) {
+                    break;
+                }
+                after = keys.get(keys.size() - 1);
+                skipped += keys.size();
+            }
+            // 最后一页的扫描同时统计总数
+            SegmentReader.Selection selection = reader.select(filter, after, pageable.getPageSize(), true);
+            List<LogEntry> rows = skipped < pageable.getOffset() ? List.of() : reader.load(selection.keys());
+            return new PageImpl<>(rows, pageable, selection.total());
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("读取日志段失败: " + path, e);
+        }
+    }
+
+    private static SegmentReader.Filter filter(SegmentReader reader, LogQuery q) {
+        if (q == null) {
+            return new SegmentReader.Filter(null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        return new SegmentReader.Filter(
+                q.level() != null ? reader.levelIds(LogLevel.filter(q.level())) : null,
+                q.tag() != null ? reader.tagId(q.tag()) : null,
+                q.from() != null ? SegmentFormat.toMillis(q.from()) : Long.MIN_VALUE,
+                q.to() != null ? SegmentFormat.toMillis(q.to()) : Long.MAX_VALUE);
+    }
+}
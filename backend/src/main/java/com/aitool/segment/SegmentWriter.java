@@ -0,0 +1,194 @@
+package com.aitool.segment;
+
+import com.aitool.model.LogEntry;
+import com.aitool.service.LogEntryWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static com.aitool.segment.SegmentFormat.*;
+
+/**
+ * Appends entries block by block to {@code <segment>.tmp} and moves the finished file into place on close,
+ * so readers only ever see complete, immutable segments. An aborted writer removes the temporary file and leaves the
+ * previous segment untouched.
+ */
+@Slf4j
+final class SegmentWriter implements LogEntryWriter {
+
+    private record BlockIndex(long offset, int length, int count, long minTs, long maxTs, long levelMask) {
+    }
+
+    private final Path target;
+    private final Path tmp;
+    private final OutputStream out;
+    private final Map<String, Integer> levels = new LinkedHashMap<>();
+    private final Map<String, Integer> tags = new LinkedHashMap<>();
+    private final List<BlockIndex> index = new ArrayList<>();
+    private final List<LogEntry> block = new ArrayList<>(BLOCK_ENTRIES);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] deflateBuffer = new byte[64 * 1024];
+    private long position;
+    private long written;
+
+    SegmentWriter(Path target) throws IOException {
+        this.target = target;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.out = new BufferedOutputStream(Files.newOutputStream(tmp), 256 * 1024);
+        writeRaw(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).array());
+    }
+
+    @Override
+    public void write(List<LogEntry> entries) {
+        try {
+            long ordinal = written;
+            for (LogEntry entry : entries) {
+                // 与 SegmentReader 一致：id 为条目在段内从 1 开始的序号
+                entry.setId(++ordinal);
+                block.add(entry);
+                if (block.size() == BLOCK_ENTRIES) {
+                    flushBlock();
+                }
+            }
+            written += entries.size();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("写入日志段失败: " + tmp, e);
+        }
+    }
+
+    @Override
+    public long written() {
+        return written;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!block.isEmpty()) {
+                flushBlock();
+            }
+            long footerOffset = position;
+            writeRaw(footer());
+            writeRaw(ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(footerOffset).putInt(MAGIC).array());
+            out.close();
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Segment {}: {} entries in {} blocks, {} bytes", target, written, index.size(), position);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("完成日志段失败: " + tmp, e);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void abort() {
+        release();
+    }
+
+    private void release() {
+        deflater.end();
+        try {
+            out.close();
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("清理临时日志段失败: {}", tmp, e);
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        ByteArrayOutputStream ts = new ByteArrayOutputStream(block.size() * 2);
+        ByteArrayOutputStream lvl = new ByteArrayOutputStream(block.size());
+        ByteArrayOutputStream tag = new ByteArrayOutputStream(block.size());
+        ByteArrayOutputStream text = new ByteArrayOutputStream(block.size() * 128);
+        long prev = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long levelMask = 0;
+        for (LogEntry e : block) {
+            long millis = toMillis(e.getTimestamp());
+            // 溢出在解码时以相同方式回绕，NULL_TS 也能正确往返
+            writeZigZag(ts, millis - prev);
+            prev = millis;
+            min = Math.min(min, millis);
+            max = Math.max(max, millis);
+            int levelId = dictId(levels, e.getLevel());
+            levelMask |= levelBit(levelId);
+            writeVarLong(lvl, levelId);
+            writeVarLong(tag, dictId(tags, e.getTag()));
+            writeString(text, e.getMessage());
+            writeString(text, e.getRawLine());
+        }
+        byte[] compressed = deflate(text.toByteArray());
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(
+                ts.size() + lvl.size() + tag.size() + compressed.length + 32);
+        writeVarLong(buf, block.size());
+        for (ByteArrayOutputStream column : List.of(ts, lvl, tag)) {
+            writeVarLong(buf, column.size());
+            column.writeTo(buf);
+        }
+        writeVarLong(buf, compressed.length);
+        buf.write(compressed, 0, compressed.length);
+
+        index.add(new BlockIndex(position, buf.size(), block.size(), min, max, levelMask));
+        writeRaw(buf.toByteArray());
+        block.clear();
+    }
+
+    private byte[] deflate(byte[] input) {
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 64);
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflateBuffer);
+            out.write(deflateBuffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] footer() {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(1024 + index.size() * 40);
+        writeVarLong(buf, written);
+        for (Map<String, Integer> dict : List.of(levels, tags)) {
+            writeVarLong(buf, dict.size());
+            dict.keySet().forEach(v -> writeString(buf, v));
+        }
+        writeVarLong(buf, index.size());
+        for (BlockIndex b : index) {
+            writeVarLong(buf, b.offset());
+            writeVarLong(buf, b.length());
+            writeVarLong(buf, b.count());
+            writeZigZag(buf, b.minTs());
+            writeZigZag(buf, b.maxTs());
+            byte[] mask = ByteBuffer.allocate(Long.BYTES).putLong(b.levelMask()).array();
+            buf.write(mask, 0, mask.length);
+        }
+        return buf.toByteArray();
+    }
+
+    private static int dictId(Map<String, Integer> dict, String value) {
+        if (value == null) {
+            return 0;
+        }
+        return dict.computeIfAbsent(value, v -> dict.size() + 1);
+    }
+
+    private void writeRaw(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+}
@@ -0,0 +1,309 @@
+package com.aitool.service;
+
+import com.aitool.config.StorageProperties;
+import com.aitool.model.UploadSession;
+import com.aitool.repository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumable chunked uploads: {@link #init} preallocates a part file, {@link #writeChunk} streams one chunk straight
+ * from the request into its offset through a {@link FileChannel}, and {@link #complete} renames the part file and
+ * registers it like a regular upload.
+ * <p>
+ * Chunks of one upload may arrive in any order and in parallel. A chunk counts as received only after all of its
+ * bytes are on disk, so a client resumes by asking {@link #status} for the missing chunks and sending them again.
+ * Nothing is buffered on the heap beyond the channel's transfer buffer, whatever the file size.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+
+    private static final long MIN_CHUNK_SIZE = 64 * 1024;
+
+    private final StorageProperties properties;
+    private final UploadSessionRepository repository;
+    private final StorageService storageService;
+    private final ContentStore contentStore;
+    private final TransactionTemplate tx;
+    /** 活跃上传的内存状态；重启后首次访问时从数据库恢复 */
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    public record Status(String uploadId, String filename, long size, int chunkSize, int chunkCount,
+                         int receivedChunks, List<Integer> missingChunks) {
+    }
+
+    /**
+     * Start an upload of {@code size} bytes.
+     *
+     * @param chunkSize requested chunk size, or {@code null} for the configured default
+     */
+    public Status init(String filename, long size, Long chunkSize) throws IOException {
+        if (filename == null || filename.isBlank()) {
+            throw new IllegalArgumentException("文件名不能为空");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("文件大小必须大于 0");
+        }
+        long chunk = chunkSize != null ? chunkSize : properties.chunkSize().toBytes();
+        if (chunk < MIN_CHUNK_SIZE || chunk > properties.maxChunkSize().toBytes()) {
+            throw new IllegalArgumentException("块大小需在 " + MIN_CHUNK_SIZE + " 到 "
+                    + properties.maxChunkSize().toBytes() + " 字节之间");
+        }
+        if ((size + chunk - 1) / chunk > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("块数过多，请增大块大小");
+        }
+        String cleanName = Path.of(StringUtils.cleanPath(filename)).getFileName().toString();
+        String uuid = UUID.randomUUID().toString();
+        Path dir = storageService.prepareDir(uuid);
+        if (Files.getFileStore(dir).getUsableSpace() < size) {
+            FileUtils.deleteQuietly(dir.toFile());
+            throw new ResponseStatusException(HttpStatus.INSUFFICIENT_STORAGE, "磁盘空间不足");
+        }
+        Path part = dir.resolve(cleanName + ".part");
+        // 预分配整个文件，各块按偏移直接写入
+        try (RandomAccessFile file = new RandomAccessFile(part.toFile(), "rw")) {
+            file.setLength(size);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = repository.save(UploadSession.builder()
+                .uuid(uuid)
+                .filename(cleanName)
+                .totalBytes(size)
+                .chunkSize((int) chunk)
+                .partPath(part.toString())
+                .receivedChunks(new byte[0])
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+        Upload upload = new Upload(session, new BitSet());
+        uploads.put(uuid, upload);
+        log.info("分块上传开始: {} ({} 字节, {} 块, UUID: {})", cleanName, size, session.chunkCount(), uuid);
+        return upload.status();
+    }
+
+    /**
+     * Write chunk {@code index} from {@code body}; sending a chunk again overwrites it.
+     *
+     * @param contentLength declared length of {@code body}, or -1 when unknown
+     */
+    public Status writeChunk(String uuid, int index, long contentLength, InputStream body) throws IOException {
+        Upload upload = find(uuid);
+        UploadSession session = upload.session;
+        if (index < 0 || index >= session.chunkCount()) {
+            throw new IllegalArgumentException("块序号超出范围: " + index);
+        }
+        long offset = (long) index * session.getChunkSize();
+        long expected = Math.min(session.getChunkSize(), session.getTotalBytes() - offset);
+        if (contentLength >= 0 && contentLength != expected) {
+            throw new IllegalArgumentException("块 " + index + " 的长度应为 " + expected + "，实际为 " + contentLength);
+        }
+        upload.begin();
+        try {
+            try (FileChannel channel = FileChannel.open(Path.of(session.getPartPath()), StandardOpenOption.WRITE);
+                 ReadableByteChannel in = Channels.newChannel(body)) {
+                long written = 0;
+                while (written < expected) {
+                    long n = channel.transferFrom(in, offset + written, expected - written);
+                    if (n <= 0) {
+                        break;
+                    }
+                    written += n;
+                }
+                if (written < expected) {
+                    throw new IllegalArgumentException("块 " + index + " 数据不完整: " + written + "/" + expected);
+                }
+                if (body.read() >= 0) {
+                    throw new IllegalArgumentException("块 " + index + " 超出应有长度 " + expected);
+                }
+                // 落盘后才记为已接收，崩溃后续传不会漏掉未写完的块
+                channel.force(false);
+            }
+            upload.received(index);
+        } finally {
+            upload.end();
+        }
+        return upload.status();
+    }
+
+    public Status status(String uuid) {
+        return find(uuid).status();
+    }
+
+    /**
+     * Turn a fully received upload into a stored file record whose uuid is the upload id. The record is saved and the
+     * session dropped in one transaction; when that fails the upload stays open, and completing it again picks up the
+     * already renamed file, also after a restart.
+     */
+    public Status complete(String uuid) throws IOException {
+        Upload upload = find(uuid);
+        Status status = upload.finish();
+        UploadSession session = upload.session;
+        Path part = Path.of(session.getPartPath());
+        Path target = part.resolveSibling(session.getFilename());
+        try {
+            // 之前的完成请求可能已改名，只是未能登记
+            if (Files.exists(part) || Files.notExists(target)) {
+                Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            // 各块乱序到达，只能在完成后顺序读一遍计算内容哈希
+            String hash = contentStore.hash(target);
+            tx.executeWithoutResult(s -> {
+                try {
+                    storageService.register(uuid, session.getFilename(), target, hash);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                repository.deleteByUuid(uuid);
+            });
+        } catch (UncheckedIOException e) {
+            upload.reopen();
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            upload.reopen();
+            throw e;
+        }
+        uploads.remove(uuid);
+        log.info("分块上传完成: {} ({} 字节, UUID: {})", session.getFilename(), session.getTotalBytes(), uuid);
+        return status;
+    }
+
+    public void abort(String uuid) {
+        Upload upload = find(uuid);
+        upload.cancel();
+        discard(upload.session);
+    }
+
+    /**
+     * Drop uploads that have not received a chunk for {@code aitool.storage.upload-expiry}.
+     */
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.HOURS)
+    public void expire() {
+        LocalDateTime threshold = LocalDateTime.now().minus(properties.uploadExpiry());
+        for (UploadSession session : repository.findByUpdatedAtBefore(threshold)) {
+            Upload upload = uploads.get(session.getUuid());
+            if (upload != null && !upload.cancelIfIdle()) {
+                continue;
+            }
+            log.info("清理过期的分块上传: {} (UUID: {})", session.getFilename(), session.getUuid());
+            discard(session);
+        }
+    }
+
+    private void discard(UploadSession session) {
+        uploads.remove(session.getUuid());
+        repository.deleteByUuid(session.getUuid());
+        FileUtils.deleteQuietly(Path.of(session.getPartPath()).getParent().toFile());
+    }
+
+    private Upload find(String uuid) {
+        Upload upload = uploads.computeIfAbsent(uuid, id -> repository.findByUuid(id)
+                .map(s -> new Upload(s, BitSet.valueOf(s.getReceivedChunks() != null ? s.getReceivedChunks() : new byte[0])))
+                .orElse(null));
+        if (upload == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "上传不存在或已结束: " + uuid);
+        }
+        return upload;
+    }
+
+    private final class Upload {
+
+        private final UploadSession session;
+        private final BitSet received;
+        /** 正在写入的块数；完成上传前必须为 0 */
+        private int writing;
+        private boolean closed;
+
+        Upload(UploadSession session, BitSet received) {
+            this.session = session;
+            this.received = received;
+        }
+
+        synchronized void begin() {
+            if (closed) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "上传已结束: " + session.getUuid());
+            }
+            writing++;
+        }
+
+        synchronized void end() {
+            writing--;
+        }
+
+        synchronized void received(int index) {
+            if (closed) {
+                return;
+            }
+            received.set(index);
+            // 持有锁写库，同一上传的位图按顺序更新，不会被较旧的位图覆盖
+            repository.updateReceived(session.getUuid(), received.toByteArray(), LocalDateTime.now());
+        }
+
+        synchronized Status finish() {
+            Status status = status();
+            if (closed) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "上传已结束: " + session.getUuid());
+            }
+            if (writing > 0 || !status.missingChunks().isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "仍有 " + status.missingChunks().size()
+                        + " 个块未接收、" + writing + " 个块正在写入");
+            }
+            closed = true;
+            return status;
+        }
+
+        synchronized void reopen() {
+            closed = false;
+        }
+
+        synchronized void cancel() {
+            closed = true;
+        }
+
+        synchronized boolean cancelIfIdle() {
+            if (writing > 0) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        synchronized Status status() {
+            int count = session.chunkCount();
+            List<Integer> missing = new ArrayList<>();
+            for (int i = received.nextClearBit(0); i < count; i = received.nextClearBit(i + 1)) {
+                missing.add(i);
+            }
+            return new Status(session.getUuid(), session.getFilename(), session.getTotalBytes(),
+                    session.getChunkSize(), count, count - missing.size(), missing);
+        }
+    }
+}
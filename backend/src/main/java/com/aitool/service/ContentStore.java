@@ -0,0 +1,175 @@
+package com.aitool.service;
+
+import com.aitool.model.ContentBlob;
+import com.aitool.repository.ContentBlobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content-addressed reuse of stored bytes.
+ * <p>
+ * Files are hashed (SHA-256) while they are written. When a file with the same content is already stored, the new
+ * copy is replaced by a hard link to it, so repeated uploads and identical files inside archives occupy disk space
+ * once. Sharing an inode is safe because stored files are never modified in place: writers delete or rename over
+ * a name instead of truncating it, and deleting one name leaves the others intact.
+ * <p>
+ * The hashes of recently written files are remembered together with their size and modification time, so that a
+ * parse fingerprinting the files it just extracted does not read them a second time.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContentStore {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    /** 记住哈希的最近写入文件数 */
+    private static final int KNOWN_HASHES = 10_000;
+
+    private final ContentBlobRepository repository;
+    private final Map<Path, Known> known = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Known> eldest) {
+            return size() > KNOWN_HASHES;
+        }
+    });
+
+    private record Known(long size, FileTime modified, String hash) {
+    }
+
+    /**
+     * Write {@code in} to a new file at {@code target}, replacing whatever name was there.
+     *
+     * @return SHA-256 of the content, hex
+     */
+    public String copy(InputStream in, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        // 目标可能是与其他文件共享内容的硬链接，必须先删除再写，不能原地截断
+        Files.deleteIfExists(target);
+        try (OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[BUFFER_BYTES];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        remember(target, hash);
+        return hash;
+    }
+
+    /**
+     * @return SHA-256 of the content of {@code file}, hex
+     */
+    public String hash(Path file) throws IOException {
+        String hash = knownHash(file);
+        if (hash != null) {
+            return hash;
+        }
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_BYTES];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return SHA-256 of {@code file} as written by {@link #copy} or {@link #deduplicate}, hex, or {@code null} when
+     * it is not known or the file changed since
+     */
+    public String knownHash(Path file) throws IOException {
+        Known k = known.get(file);
+        if (k == null) {
+            return null;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        return attrs.size() == k.size() && attrs.lastModifiedTime().equals(k.modified()) ? k.hash() : null;
+    }
+
+    private void remember(Path file, String hash) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        known.put(file, new Known(attrs.size(), attrs.lastModifiedTime(), hash));
+    }
+
+    /**
+     * Make {@code file} share the bytes of a stored file with the same content, or register it as the stored copy
+     * of that content. Keeps the separate copy when hard links are not possible, e.g. across file systems.
+     *
+     * @return whether {@code file} now reuses bytes that were already stored
+     */
+    public boolean deduplicate(Path file, String hash) throws IOException {
+        boolean reused = link(file, hash);
+        // 换成硬链接后修改时间随之改变
+        remember(file, hash);
+        return reused;
+    }
+
+    private boolean link(Path file, String hash) throws IOException {
+        long size = Files.size(file);
+        for (ContentBlob blob : repository.findByHashAndSize(hash, size)) {
+            Path existing = Path.of(blob.getPath());
+            if (!Files.isRegularFile(existing) || Files.size(existing) != size) {
+                // 原文件已随记录删除
+                repository.delete(blob);
+                continue;
+            }
+            if (Files.isSameFile(existing, file)) {
+                return true;
+            }
+            Path link = file.resolveSibling(file.getFileName() + ".link");
+            try {
+                Files.deleteIfExists(link);
+                Files.createLink(link, existing);
+                Files.move(link, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.debug("Reused stored content of {} for {} ({} bytes)", existing, file, size);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                log.debug("Cannot hard-link {} to {}, keeping the copy: {}", file, existing, e.getMessage());
+                Files.deleteIfExists(link);
+                return false;
+            }
+        }
+        repository.save(ContentBlob.builder().hash(hash).size(size).path(file.toString()).build());
+        return false;
+    }
+
+    /**
+     * Give {@code target} the content of {@code source}, as a hard link when possible.
+     */
+    public void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
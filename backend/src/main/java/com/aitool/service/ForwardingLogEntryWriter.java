@@ -0,0 +1,48 @@
+package com.aitool.service;
+
+import com.aitool.model.LogEntry;
+
+import java.util.List;
+
+/**
+ * A {@link LogEntryWriter} that forwards every call to {@code delegate}. Decorators extend it and override only the
+ * calls they change.
+ */
+public abstract class ForwardingLogEntryWriter implements LogEntryWriter {
+
+    protected final LogEntryWriter delegate;
+
+    protected ForwardingLogEntryWriter(LogEntryWriter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void write(List<LogEntry> entries) {
+        delegate.write(entries);
+    }
+
+    @Override
+    public long written() {
+        return delegate.written();
+    }
+
+    @Override
+    public long committed() {
+        return delegate.committed();
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void abort() {
+        delegate.abort();
+    }
+}
@@ -0,0 +1,424 @@
+package com.aitool.service;
+
+import com.aitool.config.ParseProperties;
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Plain JDBC ingestion path for {@link LogEntry} rows.
+ * <p>
+ * Rows are inserted with multi-row {@code INSERT ... VALUES (..),(..)} statements that are reused through
+ * prepared-statement batching, and committed every {@code commitInterval} rows. SQLite only allows a single
+ * writer, so an open transaction holds {@link #writeLock} until it commits; concurrent parses take turns
+ * instead of failing with SQLITE_BUSY.
+ * <p>
+ * Each commit also flushes the {@code log_rollup} counts of the rows it contains, so the statistics served by
+ * {@link LogStatsService} always match the committed rows. Ids of known tags are looked up before the write lock is
+ * taken; tags new to {@link TagDictionary} are added in the same transaction.
+ * <p>
+ * A re-parse must not show its rows next to the ones it replaces. {@link #openStaged} writes them under the
+ * negated record id, which no query asks for, and {@link #replace} swaps them in with a single commit.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogEntryBulkWriter {
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO log_entry (file_record_id, timestamp, level_code, tag_id, message, raw_line, "
+                    + "source_id, source_offset, source_length) VALUES ";
+    private static final String ROW_PLACEHOLDER = "(?,?,?,?,?,?,?,?,?)";
+    private static final int COLUMNS = 9;
+    private static final String INSERT_ROLLUP =
+            "INSERT INTO log_rollup (file_record_id, bucket, level_code, tag_id, cnt) VALUES (?,?,?,?,?)";
+
+    private final DataSource dataSource;
+    private final ParseProperties properties;
+    private final TagDictionary tagDictionary;
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+
+    public LogEntryWriter open(FileRecord record) {
+        return open(record.getId());
+    }
+
+    /**
+     * Open a writer whose rows stay invisible until {@link #replace} moves them into {@code record}.
+     */
+    public LogEntryWriter openStaged(FileRecord record) {
+        return open(stagingId(record));
+    }
+
+    private LogEntryWriter open(long fileRecordId) {
+        try {
+            return new Session(fileRecordId);
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("无法打开批量写入连接", e);
+        }
+    }
+
+    /**
+     * Placeholder record that rows are staged under, for writers that set the record themselves.
+     */
+    static FileRecord staging(FileRecord record) {
+        return FileRecord.builder().id(stagingId(record)).build();
+    }
+
+    private static long stagingId(FileRecord record) {
+        return -record.getId();
+    }
+
+    /**
+     * Drop rows and rollups left staged by a re-parse of {@code record} that did not finish.
+     */
+    public void discardStaged(FileRecord record) {
+        inTransaction(connection -> {
+            for (String sql : List.of("DELETE FROM log_entry WHERE file_record_id = ?",
+                    "DELETE FROM log_rollup WHERE file_record_id = ?")) {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setLong(1, stagingId(record));
+                    ps.executeUpdate();
+                }
+            }
+        });
+    }
+
+    /**
+     * Publish the outcome of a parse of {@code record} in one transaction: delete the {@code obsolete} sources,
+     * record the counts of the {@code completed} ones and, for a staged parse, replace every row that no longer
+     * belongs to a source of the record by the staged rows and recount the record's rollups.
+     */
+    public void replace(FileRecord record, boolean staged, Collection<Long> obsolete,
+                        Collection<LogSource> completed) {
+        inTransaction(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("DELETE FROM log_source WHERE id = ?")) {
+                for (Long id : obsolete) {
+                    ps.setLong(1, id);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "UPDATE log_source SET entry_count = ?, folded_lines = ?, unmatched_lines = ? WHERE id = ?")) {
+                for (LogSource source : completed) {
+                    ps.setLong(1, source.getEntryCount());
+                    ps.setLong(2, source.getFoldedLines());
+                    ps.setLong(3, source.getUnmatchedLines());
+                    ps.setLong(4, source.getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            if (!staged) {
+                return;
+            }
+            // 旧版本写入的条目没有 source_id，同样被替换
+            update(connection, """
+                    DELETE FROM log_entry WHERE file_record_id = ? AND (source_id IS NULL
+                    OR source_id NOT IN (SELECT id FROM log_source WHERE file_record_id = ?))""",
+                    record.getId(), record.getId());
+            update(connection, "UPDATE log_entry SET file_record_id = ? WHERE file_record_id = ?",
+                    record.getId(), stagingId(record));
+            update(connection, "DELETE FROM log_rollup WHERE file_record_id IN (?, ?)",
+                    record.getId(), stagingId(record));
+            update(connection, LogStatsService.ROLLUP_FROM_ENTRIES, record.getId());
+        });
+    }
+
+    private static void update(Connection connection, String sql, long... args) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) {
+                ps.setLong(i + 1, args[i]);
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run(Connection connection) throws SQLException;
+    }
+
+    private void inTransaction(SqlWork work) {
+        writeLock.lock();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                work.run(connection);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("替换解析结果失败", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sb = new StringBuilder(INSERT_PREFIX.length() + rows * (ROW_PLACEHOLDER.length() + 1));
+        sb.append(INSERT_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(ROW_PLACEHOLDER);
+        }
+        return sb.toString();
+    }
+
+    private final class Session implements LogEntryWriter {
+
+        private final long fileRecordId;
+        private final int rowsPerStatement;
+        private final int commitInterval;
+        private final Connection connection;
+        private final PreparedStatement multiRow;
+        private final PreparedStatement lastRowId;
+        private final List<LogEntry> pending;
+        /** 已插入、尚未取得 id 的条目，按插入顺序 */
+        private final List<LogEntry> unnumbered = new ArrayList<>();
+        private final LogRollupCounter rollups = new LogRollupCounter();
+        private final TagDictionary.Interner tags;
+        private long written;
+        private long uncommitted;
+
+        Session(long fileRecordId) throws SQLException {
+            this.fileRecordId = fileRecordId;
+            this.rowsPerStatement = Math.max(1, properties.insertRowsPerStatement());
+            this.commitInterval = Math.max(rowsPerStatement, properties.commitInterval());
+            this.pending = new ArrayList<>(rowsPerStatement);
+            this.connection = dataSource.getConnection();
+            this.tags = tagDictionary.interner(connection);
+            try {
+                // 先在自动提交模式下预编译：事务内编译会读取 schema 并一直持有共享锁，阻塞其他连接提交
+                this.multiRow = connection.prepareStatement(insertSql(rowsPerStatement));
+                this.lastRowId = connection.prepareStatement("SELECT last_insert_rowid()");
+                connection.setAutoCommit(false);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(List<LogEntry> entries) {
+            try {
+                for (LogEntry entry : entries) {
+                    // 已提交的 tag 在取得写锁之前换成 id，写事务内只需插入新出现的 tag
+                    entry.setTagId(tags.committed(entry.getTag()));
+                    pending.add(entry);
+                    if (pending.size() == rowsPerStatement) {
+                        beginIfNeeded();
+                        bind(multiRow, pending);
+                        multiRow.addBatch();
+                        unnumbered.addAll(pending);
+                        rollups.add(pending);
+                        uncommitted += pending.size();
+                        pending.clear();
+                    }
+                }
+                if (uncommitted > 0) {
+                    multiRow.executeBatch();
+                    assignIds();
+                    if (uncommitted >= commitInterval) {
+                        commit();
+                    }
+                }
+                written += entries.size();
+            } catch (SQLException e) {
+                rollbackQuietly();
+                throw new DataAccessResourceFailureException("批量写入日志失败", e);
+            }
+        }
+
+        @Override
+        public long written() {
+            return written;
+        }
+
+        @Override
+        public long committed() {
+            return written - uncommitted - pending.size();
+        }
+
+        @Override
+        public void flush() {
+            try {
+                writeTail();
+                commit();
+            } catch (SQLException e) {
+                rollbackQuietly();
+                throw new DataAccessResourceFailureException("批量写入日志失败", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                writeTail();
+                commit();
+            } catch (SQLException e) {
+                rollbackQuietly();
+                throw new DataAccessResourceFailureException("批量写入日志失败", e);
+            } finally {
+                try {
+                    multiRow.close();
+                    lastRowId.close();
+                    connection.setAutoCommit(true);
+                    connection.close();
+                } catch (SQLException e) {
+                    log.warn("关闭批量写入连接失败", e);
+                }
+            }
+        }
+
+        private void writeTail() throws SQLException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            beginIfNeeded();
+            try (PreparedStatement tail = connection.prepareStatement(insertSql(pending.size()))) {
+                bind(tail, pending);
+                tail.executeUpdate();
+            }
+            unnumbered.addAll(pending);
+            assignIds();
+            rollups.add(pending);
+            uncommitted += pending.size();
+            pending.clear();
+        }
+
+        /**
+         * Give the rows just inserted their ids, so that tail subscribers receive the ids queries return. This
+         * connection holds the write transaction, so the rows got consecutive rowids ending at
+         * {@code last_insert_rowid()}.
+         */
+        private void assignIds() throws SQLException {
+            if (unnumbered.isEmpty()) {
+                return;
+            }
+            long id;
+            try (ResultSet rs = lastRowId.executeQuery()) {
+                rs.next();
+                id = rs.getLong(1) - unnumbered.size();
+            }
+            for (LogEntry entry : unnumbered) {
+                entry.setId(++id);
+            }
+            unnumbered.clear();
+        }
+
+        private void bind(PreparedStatement ps, List<LogEntry> rows) throws SQLException {
+            int i = 1;
+            for (LogEntry e : rows) {
+                ps.setLong(i, fileRecordId);
+                if (e.getTimestamp() != null) {
+                    ps.setTimestamp(i + 1, Timestamp.valueOf(e.getTimestamp()));
+                } else {
+                    ps.setNull(i + 1, Types.TIMESTAMP);
+                }
+                setNullableInt(ps, i + 2, e.getLevelCode());
+                setNullableInt(ps, i + 3, e.getTagId() != null ? e.getTagId() : tags.id(e.getTag()));
+                ps.setString(i + 4, e.getMessage());
+                ps.setString(i + 5, e.getRawLine());
+                setNullableLong(ps, i + 6, e.getSourceId());
+                setNullableLong(ps, i + 7, e.getSourceOffset());
+                setNullableLong(ps, i + 8, e.getSourceLength() != null ? e.getSourceLength().longValue() : null);
+                i += COLUMNS;
+            }
+        }
+
+        private static void setNullableInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+            if (value != null) {
+                ps.setInt(index, value);
+            } else {
+                ps.setNull(index, Types.INTEGER);
+            }
+        }
+
+        private static void setNullableLong(PreparedStatement ps, int index, Long value) throws SQLException {
+            if (value != null) {
+                ps.setLong(index, value);
+            } else {
+                ps.setNull(index, Types.BIGINT);
+            }
+        }
+
+        private void beginIfNeeded() {
+            if (!writeLock.isHeldByCurrentThread()) {
+                writeLock.lock();
+            }
+        }
+
+        private void commit() throws SQLException {
+            if (writeLock.isHeldByCurrentThread()) {
+                flushRollups();
+                connection.commit();
+                tags.publish();
+                uncommitted = 0;
+                writeLock.unlock();
+            }
+        }
+
+        private void flushRollups() throws SQLException {
+            if (rollups.counts().isEmpty()) {
+                return;
+            }
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_ROLLUP)) {
+                for (var c : rollups.counts().entrySet()) {
+                    LogRollupCounter.Key key = c.getKey();
+                    ps.setLong(1, fileRecordId);
+                    if (key.bucket() != null) {
+                        ps.setTimestamp(2, Timestamp.valueOf(key.bucket()));
+                    } else {
+                        ps.setNull(2, Types.TIMESTAMP);
+                    }
+                    setNullableInt(ps, 3, key.level());
+                    setNullableInt(ps, 4, tags.id(key.tag()));
+                    ps.setLong(5, c.getValue());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            rollups.clear();
+        }
+
+        private void rollbackQuietly() {
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                log.warn("回滚批量写入失败", ex);
+            } finally {
+                pending.clear();
+                unnumbered.clear();
+                rollups.clear();
+                tags.discard();
+                uncommitted = 0;
+                if (writeLock.isHeldByCurrentThread()) {
+                    writeLock.unlock();
+                }
+            }
+        }
+    }
+}
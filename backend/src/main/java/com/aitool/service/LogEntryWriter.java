@@ -0,0 +1,44 @@
+package com.aitool.service;
+
+import com.aitool.model.LogEntry;
+
+import java.util.List;
+
+/**
+ * Sink for parsed entries of one file record. Writers are single-threaded and must be closed to flush.
+ */
+public interface LogEntryWriter extends AutoCloseable {
+
+    void write(List<LogEntry> entries);
+
+    /**
+     * @return number of entries accepted so far
+     */
+    long written();
+
+    /**
+     * @return number of accepted entries that are durable; writers that do not commit incrementally report
+     * everything they accepted
+     */
+    default long committed() {
+        return written();
+    }
+
+    /**
+     * Commit everything accepted so far and release the database, so that other connections may write before
+     * the next entries arrive. Writers that do not hold a transaction open have nothing to do.
+     */
+    default void flush() {
+    }
+
+    @Override
+    void close();
+
+    /**
+     * Release the writer after a failed or cancelled parse. Writers that only publish on {@link #close} discard
+     * what they accepted and leave the previous result in place; the others close as usual.
+     */
+    default void abort() {
+        close();
+    }
+}
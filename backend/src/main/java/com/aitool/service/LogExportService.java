@@ -0,0 +1,360 @@
+package com.aitool.service;
+
+import com.aitool.dto.LogCursor;
+import com.aitool.dto.LogQuery;
+import com.aitool.dto.LogWindow;
+import com.aitool.dto.TimelineEntry;
+import com.aitool.dto.TimelineEntryDto;
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+import com.aitool.segment.SegmentStore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams every entry matching a {@link LogQuery} to an output stream, in the same global order as the merged
+ * timeline.
+ * <p>
+ * Each database-backed file is read through one forward-only cursor ({@code ORDER BY timestamp, id} walks the
+ * {@code (file_record_id, timestamp)} index, no sort), segment-backed files are paged with keyset seeks, and a heap
+ * over the files' current rows merges them. Rows are written in small batches, so memory stays bounded by the
+ * fetch size and the number of files no matter how many rows match.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogExportService {
+
+    /** 游标每次预取的行数，也是段文件每次读取的条数 */
+    private static final int FETCH_SIZE = 1000;
+    /** 攒够一批再回填 rawLine 并写出 */
+    private static final int WRITE_BATCH = 500;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    public enum Format {
+        /** 每行一个 JSON 对象 */
+        NDJSON("application/x-ndjson", ".ndjson"),
+        /** 原始日志行 */
+        RAW("text/plain;charset=UTF-8", ".log");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("format 只支持 ndjson 或 raw: " + value);
+            }
+        }
+    }
+
+    private final DataSource dataSource;
+    private final SegmentStore segmentStore;
+    private final RawLineResolver rawLines;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Write all matching entries of {@code records} to {@code out}; {@code out} itself is left open.
+     *
+     * @return number of entries written
+     */
+    public long export(List<FileRecord> records, LogQuery q, Format format, boolean gzip, OutputStream out)
+            throws IOException {
+        long started = System.currentTimeMillis();
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_BYTES) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(compressed != null ? compressed : out,
+                StandardCharsets.UTF_8), BUFFER_BYTES);
+        Sink sink = format == Format.NDJSON ? new JsonSink(writer) : new RawSink(writer);
+
+        long written = 0;
+        Connection conn = DataSourceUtils.getConnection(dataSource);
+        List<Source> sources = new ArrayList<>(records.size());
+        try {
+            PriorityQueue<Source> heap = new PriorityQueue<>(Math.max(1, records.size()),
+                    Comparator.comparing(Source::head, TimelineService.ORDER));
+            for (FileRecord record : records) {
+                Source source = record.getSegmentPath() != null
+                        ? new SegmentSource(record, q)
+                        : new CursorSource(conn, record, q);
+                sources.add(source);
+                if (source.advance()) {
+                    heap.add(source);
+                }
+            }
+            List<TimelineEntry> batch = new ArrayList<>(WRITE_BATCH);
+            while (!heap.isEmpty()) {
+                Source source = heap.poll();
+                batch.add(source.head());
+                if (source.advance()) {
+                    heap.add(source);
+                }
+                if (batch.size() == WRITE_BATCH) {
+                    written += write(batch, sink);
+                    batch.clear();
+                }
+            }
+            written += write(batch, sink);
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("导出日志失败", e);
+        } finally {
+            sources.forEach(LogExportService::closeQuietly);
+            DataSourceUtils.releaseConnection(conn, dataSource);
+        }
+
+        sink.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        log.debug("Exported {} entries of {} file(s) as {} in {} ms", written, records.size(), format,
+                System.currentTimeMillis() - started);
+        return written;
+    }
+
+    private int write(List<TimelineEntry> batch, Sink sink) throws IOException {
+        rawLines.fill(batch.stream().map(TimelineEntry::entry).toList());
+        for (TimelineEntry entry : batch) {
+            sink.write(entry);
+        }
+        return batch.size();
+    }
+
+    private static void closeQuietly(Source source) {
+        try {
+            source.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close export cursor", e);
+        }
+    }
+
+    private interface Sink {
+
+        void write(TimelineEntry entry) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private final class JsonSink implements Sink {
+
+        private final JsonGenerator json;
+        private final ObjectWriter dtoWriter;
+
+        JsonSink(Writer writer) throws IOException {
+            this.json = objectMapper.getFactory().createGenerator(writer)
+                    .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            // 行分隔由 writeRaw 负责，根值之间不再插入默认的空格
+            this.json.setRootValueSeparator(null);
+            this.dtoWriter = objectMapper.writerFor(TimelineEntryDto.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        }
+
+        @Override
+        public void write(TimelineEntry entry) throws IOException {
+            dtoWriter.writeValue(json, TimelineEntryDto.from(entry));
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            json.flush();
+        }
+    }
+
+    private record RawSink(Writer writer) implements Sink {
+
+        @Override
+        public void write(TimelineEntry entry) throws IOException {
+            LogEntry e = entry.entry();
+            // 原始行不可用时（如源文件已删除）退回到消息正文
+            writer.write(Objects.requireNonNullElse(e.getRawLine(), Objects.toString(e.getMessage(), "")));
+            writer.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Entries of one file in {@code (timestamp, id)} order.
+     */
+    private interface Source {
+
+        TimelineEntry head();
+
+        /**
+         * @return whether {@link #head()} now holds another entry
+         */
+        boolean advance() throws SQLException;
+
+        void close() throws SQLException;
+    }
+
+    private static final class CursorSource implements Source {
+
+        private final FileRecord record;
+        private final PreparedStatement statement;
+        private final ResultSet rs;
+        private TimelineEntry head;
+
+        CursorSource(Connection conn, FileRecord record, LogQuery q) throws SQLException {
+            this.record = record;
+            List<Object> args = new ArrayList<>();
+            String sql = "SELECT id, timestamp, level_code, (SELECT t.name FROM log_tag t WHERE t.id = tag_id) AS tag,"
+                    + " message, raw_line, source_id, source_offset, source_length"
+                    + " FROM log_entry" + whereClause(record, q, args) + " ORDER BY timestamp, id";
+            this.statement = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                statement.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < args.size(); i++) {
+                    statement.setObject(i + 1, args.get(i));
+                }
+                this.rs = statement.executeQuery();
+            } catch (SQLException e) {
+                statement.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public TimelineEntry head() {
+            return head;
+        }
+
+        @Override
+        public boolean advance() throws SQLException {
+            if (!rs.next()) {
+                head = null;
+                return false;
+            }
+            Timestamp ts = rs.getTimestamp("timestamp");
+            LogEntry e = LogEntry.builder()
+                    .id(rs.getLong("id"))
+                    .timestamp(ts != null ? ts.toLocalDateTime() : null)
+                    .levelCode(LogSearchService.nullableInt(rs, "level_code"))
+                    .level(LogLevel.labelOf(LogSearchService.nullableInt(rs, "level_code")))
+                    .tag(rs.getString("tag"))
+                    .message(rs.getString("message"))
+                    .rawLine(rs.getString("raw_line"))
+                    .sourceId(LogSearchService.nullableLong(rs, "source_id"))
+                    .sourceOffset(LogSearchService.nullableLong(rs, "source_offset"))
+                    .sourceLength(rs.getObject("source_length") != null ? rs.getInt("source_length") : null)
+                    .build();
+            head = new TimelineEntry(record, e);
+            return true;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            statement.close();
+        }
+
+        private static String whereClause(FileRecord record, LogQuery q, List<Object> args) {
+            StringBuilder sb = new StringBuilder(" WHERE file_record_id = ?");
+            args.add(record.dataId());
+            if (q == null) {
+                return sb.toString();
+            }
+            if (q.level() != null) {
+                sb.append(" AND ").append(LogQueryService.levelCondition("level_code", q.level(), args));
+            }
+            if (q.tag() != null) {
+                sb.append(" AND ").append(LogQueryService.tagCondition("tag_id", q.tag(), args));
+            }
+            if (q.from() != null) {
+                sb.append(" AND timestamp >= ?");
+                args.add(Timestamp.valueOf(q.from()));
+            }
+            if (q.to() != null) {
+                sb.append(" AND timestamp <= ?");
+                args.add(Timestamp.valueOf(q.to()));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final class SegmentSource implements Source {
+
+        private final FileRecord record;
+        private final LogQuery q;
+        private List<LogEntry> buffer = List.of();
+        private int pos;
+        private LogCursor cursor;
+        private boolean exhausted;
+        private TimelineEntry head;
+
+        SegmentSource(FileRecord record, LogQuery q) {
+            this.record = record;
+            this.q = q;
+        }
+
+        @Override
+        public TimelineEntry head() {
+            return head;
+        }
+
+        @Override
+        public boolean advance() {
+            while (pos >= buffer.size()) {
+                if (exhausted) {
+                    head = null;
+                    return false;
+                }
+                LogWindow window = segmentStore.seek(record, q, cursor, FETCH_SIZE, false);
+                buffer = window.entries();
+                pos = 0;
+                cursor = window.next();
+                exhausted = cursor == null;
+            }
+            head = new TimelineEntry(record, buffer.get(pos++));
+            return true;
+        }
+
+        @Override
+        public void close() {
+            buffer = List.of();
+        }
+    }
+}
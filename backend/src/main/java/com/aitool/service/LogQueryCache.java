@@ -0,0 +1,175 @@
+package com.aitool.service;
+
+import com.aitool.config.QueryCacheProperties;
+import com.aitool.dto.LogQuery;
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Results of offset page queries and match counts, for {@link LogQueryService}.
+ * <p>
+ * A key holds the normalized filter and the ids of the records whose rows are read ({@link FileRecord#dataId()}),
+ * so {@link #invalidate} drops exactly the entries that read one record's rows. {@link ParseService} invalidates
+ * whenever rows of a record become visible or go away, {@link StorageService#delete} once the deletion is
+ * committed. A result computed while its record was invalidated is not kept.
+ * <p>
+ * Pages are weighed by the estimated heap size of their entries and evicted by Caffeine's W-TinyLFU policy within
+ * {@code aitool.query-cache.max-size}. They hold copies of the entries without their {@code fileRecord}, so no
+ * cached page keeps a persistence context alive.
+ * <p>
+ * Meters: {@code cache.gets} (tag {@code result} = hit / miss), {@code cache.evictions}, {@code cache.size} and
+ * {@code cache.eviction.weight}, tag {@code cache} = {@code logPages} / {@code logTotals}.
+ */
+@Component
+public class LogQueryCache {
+
+    /** 对象头、引用及时间戳等定长字段的估算开销 */
+    private static final int ENTRY_OVERHEAD = 160;
+    private static final int PAGE_OVERHEAD = 256;
+
+    private final Cache<Key, Page<LogEntry>> pages;
+    private final Cache<Key, Long> totals;
+    /** 每条记录的失效次数，用于丢弃失效期间查出的结果 */
+    private final Map<Long, Long> generations = new ConcurrentHashMap<>();
+
+    /**
+     * @param levels levels that match; {@code null} for any level
+     * @param page   {@code null} for a total
+     */
+    private record Key(List<Long> dataIds, LogLevel.Range levels, String tag, LocalDateTime from, LocalDateTime to,
+                       Pageable page) {
+
+        static Key of(List<FileRecord> records, LogQuery q, Pageable page) {
+            List<Long> ids = records.stream().map(FileRecord::dataId).distinct().sorted().toList();
+            if (q == null) {
+                return new Key(ids, null, null, null, null, page);
+            }
+            // 同一级别的不同写法（如 Error 与 E）查询条件相同
+            LogLevel.Range levels = q.level() != null ? LogLevel.filter(q.level()) : null;
+            return new Key(ids, levels, q.tag(), q.from(), q.to(), page);
+        }
+    }
+
+    public LogQueryCache(QueryCacheProperties properties, MeterRegistry registry) {
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(properties.maxSize().toBytes())
+                .<Key, Page<LogEntry>>weigher((key, page) -> weigh(page))
+                .expireAfterAccess(properties.expireAfterAccess())
+                .recordStats()
+                .build();
+        this.totals = Caffeine.newBuilder()
+                .maximumSize(properties.maxTotals())
+                .expireAfterAccess(properties.expireAfterAccess())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, pages, "logPages");
+        CaffeineCacheMetrics.monitor(registry, totals, "logTotals");
+    }
+
+    /**
+     * The cached page of {@code records} for {@code q}, or the one {@code loader} returns. Its total is kept as
+     * the total of {@code q}, too.
+     */
+    Page<LogEntry> page(List<FileRecord> records, LogQuery q, Pageable pageable, Supplier<Page<LogEntry>> loader) {
+        Key key = Key.of(records, q, pageable);
+        Page<LogEntry> cached = pages.getIfPresent(key);
+        if (cached != null) {
+            return new PageImpl<>(cached.getContent(), pageable, cached.getTotalElements());
+        }
+        List<Long> before = generations(key);
+        Page<LogEntry> page = loader.get();
+        Page<LogEntry> copy = new PageImpl<>(page.getContent().stream().map(LogQueryCache::detach).toList(),
+                pageable, page.getTotalElements());
+        store(pages, key, copy, before);
+        store(totals, Key.of(records, q, null), page.getTotalElements(), before);
+        return page;
+    }
+
+    /**
+     * The cached number of entries of {@code records} matching {@code q}, or the one {@code loader} counts.
+     */
+    long total(List<FileRecord> records, LogQuery q, LongSupplier loader) {
+        Key key = Key.of(records, q, null);
+        Long cached = totals.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        List<Long> before = generations(key);
+        long total = loader.getAsLong();
+        store(totals, key, total, before);
+        return total;
+    }
+
+    /**
+     * Drop every result that reads rows of the record with id {@code dataId}. Call it after the change is
+     * committed; results of queries still running are dropped when they complete.
+     */
+    public void invalidate(long dataId) {
+        generations.merge(dataId, 1L, Long::sum);
+        pages.asMap().keySet().removeIf(key -> key.dataIds().contains(dataId));
+        totals.asMap().keySet().removeIf(key -> key.dataIds().contains(dataId));
+    }
+
+    /**
+     * Keep {@code value} unless one of its records was invalidated since {@code before}. Checked again after the
+     * put: an invalidation between the check and the put would miss the entry.
+     */
+    private <V> void store(Cache<Key, V> cache, Key key, V value, List<Long> before) {
+        if (!before.equals(generations(key))) {
+            return;
+        }
+        cache.put(key, value);
+        if (!before.equals(generations(key))) {
+            cache.invalidate(key);
+        }
+    }
+
+    private List<Long> generations(Key key) {
+        return key.dataIds().stream().map(id -> generations.getOrDefault(id, 0L)).toList();
+    }
+
+    private static LogEntry detach(LogEntry e) {
+        return LogEntry.builder()
+                .id(e.getId())
+                .timestamp(e.getTimestamp())
+                .levelCode(e.getLevelCode())
+                .tagId(e.getTagId())
+                .level(e.getLevel())
+                .tag(e.getTag())
+                .message(e.getMessage())
+                .rawLine(e.getRawLine())
+                .sourceId(e.getSourceId())
+                .sourceOffset(e.getSourceOffset())
+                .sourceLength(e.getSourceLength())
+                .build();
+    }
+
+    private static int weigh(Page<LogEntry> page) {
+        long bytes = PAGE_OVERHEAD;
+        for (LogEntry e : page.getContent()) {
+            bytes += ENTRY_OVERHEAD + 2L * (length(e.getLevel()) + length(e.getTag()) + length(e.getMessage())
+                    + length(e.getRawLine()));
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static int length(String s) {
+        return s != null ? s.length() : 0;
+    }
+}
@@ -1,60 +1,120 @@
 package com.aitool.service;
 
+import com.aitool.dto.LogCursor;
 import com.aitool.dto.LogQuery;
+import com.aitool.dto.LogWindow;
 import com.aitool.model.FileRecord;
 import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+import com.aitool.model.LogTag;
 import com.aitool.repository.LogEntryRepository;
+import com.aitool.segment.SegmentStore;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
 public class LogQueryService {
 
+    /** 与 idx_file_record_ts(file_record_id, timestamp) 及隐含的 rowid 顺序一致 */
+    private static final Sort SEEK_ORDER = Sort.by("timestamp", "id").ascending();
+
     private final LogEntryRepository repo;
+    private final SegmentStore segmentStore;
+    private final RawLineResolver rawLines;
+    private final LogQueryCache cache;
 
+    /**
+     * One offset page, served from {@link LogQueryCache} when the same page was asked for before.
+     */
     public Page<LogEntry> query(FileRecord record, LogQuery q, Pageable pageable) {
-        if (q == null || (q.level() == null && q.tag() == null && q.from() == null && q.to() == null)) {
-            return repo.findByFileRecord(record, pageable);
+        return cache.page(List.of(record), q, pageable, () -> load(record, q, pageable));
+    }
+
+    private Page<LogEntry> load(FileRecord record, LogQuery q, Pageable pageable) {
+        if (record.getSegmentPath() != null) {
+            return segmentStore.query(record, q, pageable);
+        }
+        Page<LogEntry> page = isEmpty(q)
+                ? repo.findByFileRecord_Id(record.dataId(), pageable)
+                : repo.findAll(filter(List.of(record), q), pageable);
+        rawLines.fill(page.getContent());
+        return page;
+    }
+
+    /**
+     * Offset paging across several files, used by the batch endpoint.
+     */
+    public Page<LogEntry> query(List<FileRecord> records, LogQuery q, Pageable pageable) {
+        if (records.size() == 1) {
+            return query(records.get(0), q, pageable);
+        }
+        if (records.stream().anyMatch(r -> r.getSegmentPath() != null)) {
+            throw new IllegalArgumentException("段存储的文件暂不支持跨文件分页查询");
         }
-        return repo.findAll((root, query, cb) -> {
+        return cache.page(records, q, pageable, () -> {
+            Page<LogEntry> page = repo.findAll(filter(records, q), pageable);
+            rawLines.fill(page.getContent());
+            return page;
+        });
+    }
+
+    /**
+     * Keyset pagination: seeks past {@code after} on {@code (timestamp, id)} instead of skipping rows,
+     * so every page costs the same no matter how deep it is. No count query runs unless {@code withTotal}, and
+     * its result is cached.
+     */
+    public LogWindow seek(List<FileRecord> records, LogQuery q, LogCursor after, int size, boolean withTotal) {
+        if (records.stream().anyMatch(r -> r.getSegmentPath() != null)) {
+            if (records.size() > 1) {
+                throw new IllegalArgumentException("段存储的文件暂不支持跨文件游标查询");
+            }
+            return segmentStore.seek(records.get(0), q, after, size, withTotal);
+        }
+        Specification<LogEntry> filter = filter(records, q);
+        Specification<LogEntry> spec = after == null ? filter : filter.and(after(after));
+        List<LogEntry> rows = repo.findBy(spec, f -> f.sortBy(SEEK_ORDER).limit(size + 1).all());
+        boolean more = rows.size() > size;
+        List<LogEntry> page = more ? rows.subList(0, size) : rows;
+        LogCursor next = more ? LogCursor.of(page.get(page.size() - 1)) : null;
+        Long total = withTotal ? cache.total(records, q, () -> repo.count(filter)) : null;
+        rawLines.fill(page);
+        return new LogWindow(page, next, total);
+    }
+
+    private static boolean isEmpty(LogQuery q) {
+        return q == null || (q.level() == null && q.tag() == null && q.from() == null && q.to() == null);
+    }
+
+    private static Specification<LogEntry> filter(List<FileRecord> records, LogQuery q) {
+        return (root, query, cb) -> {
             var predicates = cb.conjunction();
-            predicates = cb.and(predicates, cb.equal(root.get("fileRecord"), record));
+            // 内容重复的文件共用所属记录的行
+            predicates = cb.and(predicates, records.size() == 1
+                    ? cb.equal(root.get("fileRecord").get("id"), records.get(0).dataId())
+                    : root.get("fileRecord").get("id").in(records.stream().map(FileRecord::dataId).distinct().toList()));
+            if (q == null) {
+                return predicates;
+            }
             if (Objects.nonNull(q.level())) {
-                // 处理级别的简写和全称对应关系
-                String level = q.level();
-                String shortLevel = null;
-                
-                // 从全称映射到简写
-                if ("Error".equalsIgnoreCase(level)) {
-                    shortLevel = "E";
-                } else if ("Warn".equalsIgnoreCase(level)) {
-                    shortLevel = "W";
-                } else if ("Info".equalsIgnoreCase(level)) {
-                    shortLevel = "I";
-                } else if ("Debug".equalsIgnoreCase(level)) {
-                    shortLevel = "D";
-                }
-                
-                // 如果有对应的简写，创建OR条件
-                if (shortLevel != null) {
-                    predicates = cb.and(predicates, 
-                        cb.or(
-                            cb.equal(root.get("level"), level),
-                            cb.equal(root.get("level"), shortLevel)
-                        )
-                    );
-                } else {
-                    // 没有对应简写，直接使用原值
-                    predicates = cb.and(predicates, cb.equal(root.get("level"), level));
-                }
+                predicates = cb.and(predicates, levelPredicate(root, cb, q.level()));
             }
             if (Objects.nonNull(q.tag())) {
-                predicates = cb.and(predicates, cb.equal(root.get("tag"), q.tag()));
+                predicates = cb.and(predicates, tagPredicate(root, query, cb, q.tag()));
             }
             if (Objects.nonNull(q.from())) {
                 predicates = cb.and(predicates, cb.greaterThanOrEqualTo(root.get("timestamp"), q.from()));
@@ -63,6 +123,62 @@ public class LogQueryService {
                 predicates = cb.and(predicates, cb.lessThanOrEqualTo(root.get("timestamp"), q.to()));
             }
             return predicates;
-        }, pageable);
+        };
+    }
+
+    private static Predicate levelPredicate(Root<LogEntry> root, CriteriaBuilder cb, String level) {
+        LogLevel.Range range = LogLevel.filter(level);
+        Path<Integer> code = root.get("levelCode");
+        return range.single()
+                ? cb.equal(code, range.min().code())
+                : cb.between(code, range.min().code(), range.max().code());
+    }
+
+    private static Predicate tagPredicate(Root<LogEntry> root, CriteriaQuery<?> query, CriteriaBuilder cb, String tag) {
+        Subquery<Integer> id = query.subquery(Integer.class);
+        Root<LogTag> dictionary = id.from(LogTag.class);
+        id.select(dictionary.get("id")).where(cb.equal(dictionary.get("name"), tag));
+        return cb.equal(root.get("tagId"), id);
+    }
+
+    /**
+     * SQL condition on the level code {@code column} for the level filter {@code level}: one equality, or one
+     * range for a filter like {@code Warn+}.
+     */
+    static String levelCondition(String column, String level, List<Object> args) {
+        LogLevel.Range range = LogLevel.filter(level);
+        args.add(range.min().code());
+        if (range.single()) {
+            return column + " = ?";
+        }
+        args.add(range.max().code());
+        return column + " BETWEEN ? AND ?";
+    }
+
+    /**
+     * SQL condition on the tag id {@code column}; an unknown tag matches nothing.
+     */
+    static String tagCondition(String column, String tag, List<Object> args) {
+        args.add(tag);
+        return column + " = (SELECT t.id FROM log_tag t WHERE t.name = ?)";
+    }
+
+    /**
+     * Strictly after the cursor in {@code (timestamp, id)} order. SQLite sorts NULL timestamps first.
+     * The non-null case is written as {@code ts >= ? AND (ts > ? OR id > ?)} so the leading range can use the index.
+     */
+    private static Specification<LogEntry> after(LogCursor c) {
+        return (root, query, cb) -> {
+            var ts = root.<LocalDateTime>get("timestamp");
+            var id = root.<Long>get("id");
+            if (c.timestamp() == null) {
+                return cb.or(
+                        cb.and(cb.isNull(ts), cb.greaterThan(id, c.id())),
+                        cb.isNotNull(ts));
+            }
+            return cb.and(
+                    cb.greaterThanOrEqualTo(ts, c.timestamp()),
+                    cb.or(cb.greaterThan(ts, c.timestamp()), cb.greaterThan(id, c.id())));
+        };
     }
-} 
\ No newline at end of file
+}
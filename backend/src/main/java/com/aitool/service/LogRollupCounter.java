@@ -0,0 +1,56 @@
+package com.aitool.service;
+
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+import com.aitool.model.LogRollup;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Counts ingested entries per {@code (second, level, tag)} between two flushes of {@code log_rollup}.
+ * Memory is bounded by the number of distinct keys, not by the number of rows.
+ */
+final class LogRollupCounter {
+
+    /**
+     * @param level {@link LogLevel} code; the tag is interned when the counts are flushed
+     */
+    record Key(LocalDateTime bucket, Integer level, String tag) {
+    }
+
+    private final Map<Key, Long> counts = new HashMap<>();
+
+    void add(List<LogEntry> entries) {
+        for (LogEntry e : entries) {
+            LocalDateTime ts = e.getTimestamp();
+            Key key = new Key(ts != null ? ts.truncatedTo(ChronoUnit.SECONDS) : null, e.getLevelCode(), e.getTag());
+            counts.merge(key, 1L, Long::sum);
+        }
+    }
+
+    Map<Key, Long> counts() {
+        return counts;
+    }
+
+    List<LogRollup> toRollups(FileRecord record, Function<String, Integer> tagIds) {
+        return counts.entrySet().stream()
+                .map(c -> LogRollup.builder()
+                        .fileRecord(record)
+                        .bucket(c.getKey().bucket())
+                        .levelCode(c.getKey().level())
+                        .tagId(tagIds.apply(c.getKey().tag()))
+                        .count(c.getValue())
+                        .build())
+                .toList();
+    }
+
+    void clear() {
+        counts.clear();
+    }
+}
@@ -0,0 +1,219 @@
+package com.aitool.service;
+
+import com.aitool.dto.LogCursor;
+import com.aitool.dto.LogQuery;
+import com.aitool.dto.LogSearchHit;
+import com.aitool.dto.LogSearchResult;
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keyword / phrase / prefix search over {@code log_entry.message} backed by an SQLite FTS5 index.
+ * <p>
+ * {@code log_entry_fts} is an external-content table: it stores only the inverted index and reads message text
+ * from {@code log_entry}. Triggers keep it in step with every insert and delete, so whatever {@link ParseService}
+ * ingests is searchable as soon as it commits. Results come back in rowid (ingestion) order, which FTS5 yields
+ * natively, so a page stops after {@code size} matches instead of sorting every hit.
+ */
+@Slf4j
+@Service
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class LogSearchService {
+
+    private static final String SNIPPET_OPEN = "<mark>";
+    private static final String SNIPPET_CLOSE = "</mark>";
+    private static final int SNIPPET_TOKENS = 16;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final RawLineResolver rawLines;
+
+    /**
+     * Create the index on first start. Existing rows are indexed with {@code rebuild} in the same transaction
+     * as the triggers, because deleting an unindexed row from an external-content table corrupts the index.
+     */
+    @PostConstruct
+    void initIndex() {
+        Integer exists = jdbc.queryForObject(
+                "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = 'log_entry_fts'", Integer.class);
+        if (exists != null && exists > 0) {
+            return;
+        }
+        log.info("Creating full-text index log_entry_fts, existing rows will be indexed once");
+        tx.executeWithoutResult(status -> {
+            jdbc.execute("CREATE VIRTUAL TABLE log_entry_fts USING fts5(message, content='log_entry', content_rowid='id')");
+            jdbc.execute("INSERT INTO log_entry_fts(log_entry_fts) VALUES('rebuild')");
+            jdbc.execute("""
+                    CREATE TRIGGER IF NOT EXISTS log_entry_fts_ai AFTER INSERT ON log_entry BEGIN
+                      INSERT INTO log_entry_fts(rowid, message) VALUES (new.id, new.message);
+                    END""");
+            jdbc.execute("""
+                    CREATE TRIGGER IF NOT EXISTS log_entry_fts_ad AFTER DELETE ON log_entry BEGIN
+                      INSERT INTO log_entry_fts(log_entry_fts, rowid, message) VALUES ('delete', old.id, old.message);
+                    END""");
+            jdbc.execute("""
+                    CREATE TRIGGER IF NOT EXISTS log_entry_fts_au AFTER UPDATE OF message ON log_entry BEGIN
+                      INSERT INTO log_entry_fts(log_entry_fts, rowid, message) VALUES ('delete', old.id, old.message);
+                      INSERT INTO log_entry_fts(rowid, message) VALUES (new.id, new.message);
+                    END""");
+        });
+    }
+
+    public LogSearchResult search(List<FileRecord> records, String q, LogQuery filter, LogCursor after,
+                                  int size, boolean withTotal) {
+        if (records.stream().anyMatch(r -> r.getSegmentPath() != null)) {
+            throw new IllegalArgumentException("段存储的文件不在全文索引中");
+        }
+        String match = toMatchExpression(q);
+        if (match.isEmpty() || records.isEmpty()) {
+            return new LogSearchResult(List.of(), null, withTotal ? 0L : null);
+        }
+        List<Object> args = new ArrayList<>();
+        String where = whereClause(records, match, filter, args);
+
+        List<Object> pageArgs = new ArrayList<>(args);
+        String seek = "";
+        if (after != null) {
+            seek = " AND f.rowid > ?";
+            pageArgs.add(after.id());
+        }
+        pageArgs.add(size + 1);
+        List<LogSearchHit> rows = jdbc.query(
+                "SELECT e.id, e.timestamp, e.level_code, t.name AS tag, e.message, e.raw_line, "
+                        + "e.source_id, e.source_offset, e.source_length, "
+                        + "snippet(log_entry_fts, 0, ?, ?, '…', ?) AS snip "
+                        + "FROM log_entry_fts f JOIN log_entry e ON e.id = f.rowid "
+                        + "LEFT JOIN log_tag t ON t.id = e.tag_id"
+                        + where + seek + " ORDER BY f.rowid LIMIT ?",
+                (rs, i) -> {
+                    Timestamp ts = rs.getTimestamp("timestamp");
+                    LogEntry e = LogEntry.builder()
+                            .id(rs.getLong("id"))
+                            .timestamp(ts != null ? ts.toLocalDateTime() : null)
+                            .levelCode(nullableInt(rs, "level_code"))
+                            .level(LogLevel.labelOf(nullableInt(rs, "level_code")))
+                            .tag(rs.getString("tag"))
+                            .message(rs.getString("message"))
+                            .rawLine(rs.getString("raw_line"))
+                            .sourceId(nullableLong(rs, "source_id"))
+                            .sourceOffset(nullableLong(rs, "source_offset"))
+                            .sourceLength(rs.getObject("source_length") != null ? rs.getInt("source_length") : null)
+                            .build();
+                    return new LogSearchHit(e, rs.getString("snip"));
+                },
+                prepend(pageArgs, SNIPPET_OPEN, SNIPPET_CLOSE, SNIPPET_TOKENS));
+
+        boolean more = rows.size() > size;
+        List<LogSearchHit> page = more ? rows.subList(0, size) : rows;
+        rawLines.fill(page.stream().map(LogSearchHit::entry).toList());
+        LogCursor next = more ? LogCursor.of(page.get(page.size() - 1).entry()) : null;
+        Long total = withTotal
+                ? jdbc.queryForObject("SELECT count(*) FROM log_entry_fts f JOIN log_entry e ON e.id = f.rowid" + where,
+                Long.class, args.toArray())
+                : null;
+        return new LogSearchResult(page, next, total);
+    }
+
+    static Long nullableLong(ResultSet rs, String column) throws SQLException {
+        long v = rs.getLong(column);
+        return rs.wasNull() ? null : v;
+    }
+
+    static Integer nullableInt(ResultSet rs, String column) throws SQLException {
+        int v = rs.getInt(column);
+        return rs.wasNull() ? null : v;
+    }
+
+    private static String whereClause(List<FileRecord> records, String match, LogQuery filter, List<Object> args) {
+        StringBuilder sb = new StringBuilder(" WHERE log_entry_fts MATCH ?");
+        args.add(match);
+        sb.append(" AND e.file_record_id IN (")
+                .append(String.join(",", Collections.nCopies(records.size(), "?")))
+                .append(')');
+        records.forEach(r -> args.add(r.dataId()));
+        if (filter != null) {
+            if (filter.level() != null) {
+                sb.append(" AND ").append(LogQueryService.levelCondition("e.level_code", filter.level(), args));
+            }
+            if (filter.tag() != null) {
+                sb.append(" AND ").append(LogQueryService.tagCondition("e.tag_id", filter.tag(), args));
+            }
+            if (filter.from() != null) {
+                sb.append(" AND e.timestamp >= ?");
+                args.add(Timestamp.valueOf(filter.from()));
+            }
+            if (filter.to() != null) {
+                sb.append(" AND e.timestamp <= ?");
+                args.add(Timestamp.valueOf(filter.to()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Object[] prepend(List<Object> args, Object... head) {
+        List<Object> all = new ArrayList<>(head.length + args.size());
+        Collections.addAll(all, head);
+        all.addAll(args);
+        return all.toArray();
+    }
+
+    /**
+     * Translate user input into a safe FTS5 query: {@code "quoted text"} is a phrase, a trailing {@code *} makes
+     * a prefix term, everything else is a keyword; all terms must match. Each term is quoted so that FTS5
+     * operators or punctuation in the input cannot cause a syntax error.
+     */
+    static String toMatchExpression(String q) {
+        if (q == null) {
+            return "";
+        }
+        List<String> terms = new ArrayList<>();
+        int i = 0;
+        int len = q.length();
+        while (i < len) {
+            char c = q.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = q.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = len;
+                }
+                addTerm(terms, q.substring(i + 1, end), false);
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < len && !Character.isWhitespace(q.charAt(end))) {
+                    end++;
+                }
+                String word = q.substring(i, end);
+                boolean prefix = word.endsWith("*");
+                addTerm(terms, prefix ? word.substring(0, word.length() - 1) : word, prefix);
+                i = end;
+            }
+        }
+        return String.join(" ", terms);
+    }
+
+    private static void addTerm(List<String> terms, String text, boolean prefix) {
+        if (text.isBlank()) {
+            return;
+        }
+        terms.add('"' + text.replace("\"", "\"\"") + '"' + (prefix ? "*" : ""));
+    }
+}
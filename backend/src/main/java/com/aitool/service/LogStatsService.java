@@ -0,0 +1,154 @@
+package com.aitool.service;
+
+import com.aitool.dto.LogQuery;
+import com.aitool.dto.LogStats;
+import com.aitool.model.FileRecord;
+import com.aitool.model.FileStatus;
+import com.aitool.model.LogLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Level counts, top tags and time histograms served from {@code log_rollup} instead of {@code log_entry}.
+ * <p>
+ * Rollups are kept per second, so the cost of a query depends on the number of distinct
+ * {@code (second, level, tag)} keys rather than on the number of rows, and {@code from}/{@code to}
+ * are applied at whole-second precision.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogStatsService {
+
+    /** 由 log_entry 重新聚合一个文件记录的统计，参数为 file_record_id */
+    static final String ROLLUP_FROM_ENTRIES = """
+            INSERT INTO log_rollup (file_record_id, bucket, level_code, tag_id, cnt)
+            SELECT file_record_id, (timestamp / 1000) * 1000, level_code, tag_id, count(*)
+            FROM log_entry WHERE file_record_id = ?
+            GROUP BY (timestamp / 1000) * 1000, level_code, tag_id""";
+
+    public enum Interval {
+        SECOND(1_000L),
+        MINUTE(60_000L);
+
+        private final long millis;
+
+        Interval(long millis) {
+            this.millis = millis;
+        }
+
+        public static Interval parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("interval 仅支持 second / minute: " + value);
+            }
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+
+    public LogStats stats(List<FileRecord> records, LogQuery q, Interval interval, int topTags) {
+        if (records.isEmpty()) {
+            return new LogStats(0, List.of(), List.of(), List.of());
+        }
+        List<Object> args = new ArrayList<>();
+        String where = whereClause(records, q, args);
+
+        List<LogStats.LevelCount> levels = jdbc.query(
+                "SELECT level_code, SUM(cnt) AS c FROM log_rollup" + where + " GROUP BY level_code ORDER BY c DESC",
+                (rs, i) -> new LogStats.LevelCount(LogLevel.labelOf(LogSearchService.nullableInt(rs, "level_code")),
+                        rs.getLong(2)),
+                args.toArray());
+        long total = levels.stream().mapToLong(LogStats.LevelCount::count).sum();
+
+        List<Object> tagArgs = new ArrayList<>(args);
+        tagArgs.add(topTags);
+        List<LogStats.TagCount> tags = jdbc.query(
+                "SELECT (SELECT t.name FROM log_tag t WHERE t.id = tag_id), SUM(cnt) AS c FROM log_rollup" + where
+                        + " GROUP BY tag_id ORDER BY c DESC LIMIT ?",
+                (rs, i) -> new LogStats.TagCount(rs.getString(1), rs.getLong(2)),
+                tagArgs.toArray());
+
+        // bucket 以毫秒整数存储，整除即可对齐到秒/分钟
+        List<Object> histArgs = new ArrayList<>();
+        histArgs.add(interval.millis);
+        histArgs.add(interval.millis);
+        histArgs.addAll(args);
+        Map<LocalDateTime, List<LogStats.LevelCount>> byBucket = new LinkedHashMap<>();
+        jdbc.query("SELECT (bucket / ?) * ? AS b, level_code, SUM(cnt) FROM log_rollup" + where
+                        + " AND bucket IS NOT NULL GROUP BY b, level_code ORDER BY b",
+                rs -> {
+                    LocalDateTime start = new Timestamp(rs.getLong(1)).toLocalDateTime();
+                    byBucket.computeIfAbsent(start, k -> new ArrayList<>()).add(new LogStats.LevelCount(
+                            LogLevel.labelOf(LogSearchService.nullableInt(rs, "level_code")), rs.getLong(3)));
+                },
+                histArgs.toArray());
+        List<LogStats.Bucket> histogram = byBucket.entrySet().stream()
+                .map(b -> new LogStats.Bucket(b.getKey(),
+                        b.getValue().stream().mapToLong(LogStats.LevelCount::count).sum(), b.getValue()))
+                .toList();
+        return new LogStats(total, levels, tags, histogram);
+    }
+
+    /**
+     * Files parsed before rollups existed have none; build theirs once from {@code log_entry} at startup, so that
+     * stats requests only read. Runs once dictionary codes are in place; parses write their own rollups.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillMissing() {
+        List<Long> ids = jdbc.queryForList("""
+                SELECT r.id FROM file_record r WHERE r.status = ? AND r.data_record_id IS NULL
+                AND NOT EXISTS (SELECT 1 FROM log_rollup u WHERE u.file_record_id = r.id)
+                AND EXISTS (SELECT 1 FROM log_entry e WHERE e.file_record_id = r.id)""",
+                Long.class, FileStatus.PARSED.name());
+        for (Long id : ids) {
+            // 与重新解析的替换事务串行：期间已写入统计的记录不再重复汇总
+            Integer keys = tx.execute(status -> Boolean.TRUE.equals(jdbc.queryForObject(
+                    "SELECT EXISTS(SELECT 1 FROM log_rollup WHERE file_record_id = ?)", Boolean.class, id))
+                    ? 0 : jdbc.update(ROLLUP_FROM_ENTRIES, id));
+            log.info("Backfilled {} rollup rows for file record {}", keys, id);
+        }
+    }
+
+    private static String whereClause(List<FileRecord> records, LogQuery q, List<Object> args) {
+        StringBuilder sb = new StringBuilder(" WHERE file_record_id IN (")
+                .append(String.join(",", Collections.nCopies(records.size(), "?")))
+                .append(')');
+        records.forEach(r -> args.add(r.dataId()));
+        if (q == null) {
+            return sb.toString();
+        }
+        if (q.level() != null) {
+            sb.append(" AND ").append(LogQueryService.levelCondition("level_code", q.level(), args));
+        }
+        if (q.tag() != null) {
+            sb.append(" AND ").append(LogQueryService.tagCondition("tag_id", q.tag(), args));
+        }
+        if (q.from() != null) {
+            sb.append(" AND bucket >= ?");
+            args.add(Timestamp.valueOf(q.from().truncatedTo(ChronoUnit.SECONDS)));
+        }
+        if (q.to() != null) {
+            sb.append(" AND bucket <= ?");
+            args.add(Timestamp.valueOf(q.to().truncatedTo(ChronoUnit.SECONDS)));
+        }
+        return sb.toString();
+    }
+}
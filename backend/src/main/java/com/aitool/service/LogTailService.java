@@ -0,0 +1,361 @@
+package com.aitool.service;
+
+import com.aitool.dto.LogEntryDto;
+import com.aitool.dto.LogQuery;
+import com.aitool.model.FileRecord;
+import com.aitool.model.FileStatus;
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+import com.aitool.repository.FileRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pushes the entries of files that are still being parsed to Server-Sent Events subscribers.
+ * <p>
+ * {@link #tee} wraps the writer of a running parse and hands each batch over once the writer reports it
+ * {@linkplain LogEntryWriter#committed() committed}, so subscribers see the same rows, with the same ids, a query
+ * would. Rows of a staged re-parse or a segment become visible only when the parse publishes them; those are held,
+ * up to the queue limit of a subscriber, and handed over by {@link #finished}. Every
+ * subscriber has its own bounded queue, drained on {@code tailExecutor}; the parser never waits for a client.
+ * When a slow client's queue is full, further batches for it are dropped and a {@code dropped} event tells it how
+ * many entries to backfill with a regular query.
+ * <p>
+ * Events: {@code entries} (array of entries matching the subscriber's filter), {@code progress} (committed entry
+ * count, coalesced), {@code dropped} and a final {@code status}, after which the stream ends.
+ * A file without a parse job gets its status right away. A subscription that outlives half an hour ends without a
+ * status; the client subscribes again.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogTailService {
+
+    /** 单个订阅者排队中的最大条目数，超出的批次被丢弃 */
+    private static final int MAX_QUEUED_ENTRIES = 50_000;
+    /** 每个 entries 事件最多携带的条目数 */
+    private static final int EVENT_ENTRIES = 1000;
+    /** 订阅的最长时长：排队的任务可能迟迟不被调度；超时后流正常结束，客户端重新订阅并用查询补齐 */
+    private static final long SUBSCRIPTION_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    private final FileRecordRepository repository;
+    private final ThreadPoolTaskExecutor tailExecutor;
+    private final Map<Long, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    /** 正在解析的文件已提交的条目数 */
+    private final Map<Long, Long> committed = new ConcurrentHashMap<>();
+    /** 解析结束才对查询可见的条目，由 finished() 推送 */
+    private final Map<Long, Held> held = new ConcurrentHashMap<>();
+
+    private record Held(List<LogEntry> entries, long dropped) {
+    }
+
+    public SseEmitter subscribe(FileRecord record, LogQuery filter) {
+        SseEmitter emitter = new SseEmitter(SUBSCRIPTION_TIMEOUT_MILLIS);
+        Subscriber subscriber = new Subscriber(record.getId(), filter, emitter);
+        subscribers.compute(record.getId(), (id, list) -> {
+            List<Subscriber> target = list != null ? list : new CopyOnWriteArrayList<>();
+            target.add(subscriber);
+            return target;
+        });
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(() -> {
+            subscriber.close();
+            emitter.complete();
+        });
+        emitter.onError(e -> subscriber.close());
+        // 订阅前解析可能已经结束，以数据库中的最新状态为准；没有解析任务（STORED）时也不会再有推送
+        repository.findById(record.getId())
+                .filter(r -> r.getStatus() == FileStatus.PARSED || r.getStatus() == FileStatus.FAILED
+                        || r.getStatus() == FileStatus.STORED)
+                .ifPresentOrElse(subscriber::finish,
+                        () -> subscriber.progress(committed.getOrDefault(record.getId(), 0L)));
+        return emitter;
+    }
+
+    /**
+     * Wrap the writer of a running parse so that committed entries reach the file's subscribers.
+     * Writers are single-threaded, and so is the returned one.
+     *
+     * @param deferred the committed rows stay invisible to queries until the parse publishes them and
+     *                 {@link #finished} is called
+     */
+    public LogEntryWriter tee(LogEntryWriter delegate, FileRecord record, boolean deferred) {
+        long fileRecordId = record.getId();
+        return new ForwardingLogEntryWriter(delegate) {
+            /** 已写入、尚未推送的尾部条目；没有订阅者时不保留 */
+            private final List<LogEntry> unpublished = new ArrayList<>();
+            /** deferred 时已提交、等待解析结束的条目 */
+            private final List<LogEntry> holding = new ArrayList<>();
+            private long holdingDropped;
+            private long lastCommitted = -1;
+
+            @Override
+            public void write(List<LogEntry> entries) {
+                delegate.write(entries);
+                if (subscribers.containsKey(fileRecordId)) {
+                    unpublished.addAll(entries);
+                } else {
+                    unpublished.clear();
+                }
+                publishCommitted();
+            }
+
+            @Override
+            public void flush() {
+                delegate.flush();
+                publishCommitted();
+            }
+
+            @Override
+            public void close() {
+                delegate.close();
+                publishCommitted();
+                if (!holding.isEmpty() || holdingDropped > 0) {
+                    held.put(fileRecordId, new Held(List.copyOf(holding), holdingDropped));
+                }
+            }
+
+            private void publishCommitted() {
+                long done = delegate.committed();
+                // 未提交的条目总在尾部，其余部分可以推送
+                int ready = (int) Math.max(0, unpublished.size() - (delegate.written() - done));
+                if (ready > 0) {
+                    List<LogEntry> batch = unpublished.subList(0, ready);
+                    if (!deferred) {
+                        subscribers.getOrDefault(fileRecordId, List.of()).forEach(s -> s.offer(batch));
+                    } else if (holding.size() + ready <= MAX_QUEUED_ENTRIES) {
+                        holding.addAll(batch);
+                    } else {
+                        // 超出任何订阅者的队列上限，只记录数量，客户端按 dropped 事件查询补齐
+                        holdingDropped += ready;
+                    }
+                    batch.clear();
+                }
+                if (done != lastCommitted) {
+                    lastCommitted = done;
+                    committed.put(fileRecordId, done);
+                    subscribers.getOrDefault(fileRecordId, List.of()).forEach(s -> s.progress(done));
+                }
+            }
+        };
+    }
+
+    /**
+     * Send the entries held for a parse that published them, then its final status, and end its subscriptions.
+     * Called once the parse result is saved, and after a failed or cancelled one, whose held entries are dropped.
+     */
+    public void finished(FileRecord record) {
+        committed.remove(record.getId());
+        Held published = held.remove(record.getId());
+        List<Subscriber> list = subscribers.getOrDefault(record.getId(), List.of());
+        if (published != null && record.getStatus() == FileStatus.PARSED) {
+            list.forEach(s -> {
+                s.offer(published.entries());
+                s.dropped(published.dropped());
+            });
+        }
+        list.forEach(s -> s.finish(record));
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.fileRecordId, (id, list) -> {
+            list.remove(subscriber);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private record Pending(SseEmitter.SseEventBuilder event, int entries) {
+    }
+
+    private final class Subscriber {
+
+        private final long fileRecordId;
+        private final LogQuery filter;
+        private final LogLevel.Range levels;
+        private final SseEmitter emitter;
+        private final Queue<Pending> queue = new ArrayDeque<>();
+        private int queuedEntries;
+        private long dropped;
+        /** 最新的进度，发送后重置为 -1 */
+        private long progress = -1;
+        private boolean draining;
+        private boolean finished;
+        private boolean closed;
+
+        Subscriber(long fileRecordId, LogQuery filter, SseEmitter emitter) {
+            this.fileRecordId = fileRecordId;
+            this.filter = filter;
+            this.levels = filter != null && filter.level() != null ? LogLevel.filter(filter.level()) : null;
+            this.emitter = emitter;
+        }
+
+        void offer(List<LogEntry> batch) {
+            List<LogEntryDto> matched = batch.stream().filter(this::matches).map(LogEntryDto::from).toList();
+            if (matched.isEmpty()) {
+                return;
+            }
+            synchronized (this) {
+                if (finished || closed) {
+                    return;
+                }
+                if (queuedEntries + matched.size() > MAX_QUEUED_ENTRIES) {
+                    dropped += matched.size();
+                    return;
+                }
+                queueDropped();
+                for (int i = 0; i < matched.size(); i += EVENT_ENTRIES) {
+                    List<LogEntryDto> part = matched.subList(i, Math.min(matched.size(), i + EVENT_ENTRIES));
+                    queue.add(new Pending(SseEmitter.event().name("entries").data(part, MediaType.APPLICATION_JSON),
+                            part.size()));
+                }
+                queuedEntries += matched.size();
+            }
+            schedule();
+        }
+
+        void dropped(long count) {
+            synchronized (this) {
+                if (!finished && !closed) {
+                    dropped += count;
+                }
+            }
+        }
+
+        void progress(long count) {
+            synchronized (this) {
+                if (finished || closed) {
+                    return;
+                }
+                progress = count;
+            }
+            schedule();
+        }
+
+        void finish(FileRecord record) {
+            var body = new LinkedHashMap<String, Object>();
+            body.put("status", record.getStatus());
+            if (record.getEntryCount() != null) {
+                body.put("entryCount", record.getEntryCount());
+            }
+            if (record.getMessage() != null) {
+                body.put("message", record.getMessage());
+            }
+            synchronized (this) {
+                if (finished || closed) {
+                    return;
+                }
+                finished = true;
+                progress = -1;
+                queueDropped();
+                queue.add(new Pending(SseEmitter.event().name("status").data(body, MediaType.APPLICATION_JSON), 0));
+            }
+            schedule();
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                queue.clear();
+                queuedEntries = 0;
+            }
+            remove(this);
+        }
+
+        private void queueDropped() {
+            if (dropped > 0) {
+                queue.add(new Pending(SseEmitter.event().name("dropped")
+                        .data(Map.of("count", dropped), MediaType.APPLICATION_JSON), 0));
+                dropped = 0;
+            }
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (draining || closed) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                tailExecutor.execute(this::drain);
+            } catch (TaskRejectedException e) {
+                // 线程已用尽：事件留在队列中，下一次推送时重试
+                log.warn("Tail executor saturated, delaying events of file record {}", fileRecordId);
+                synchronized (this) {
+                    draining = false;
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                while (true) {
+                    SseEmitter.SseEventBuilder event;
+                    boolean complete = false;
+                    synchronized (this) {
+                        Pending next = queue.poll();
+                        if (next != null) {
+                            queuedEntries -= next.entries();
+                            event = next.event();
+                        } else if (progress >= 0) {
+                            event = SseEmitter.event().name("progress")
+                                    .data(Map.of("committed", progress), MediaType.APPLICATION_JSON);
+                            progress = -1;
+                        } else {
+                            draining = false;
+                            event = null;
+                            complete = finished && !closed;
+                        }
+                    }
+                    if (event == null) {
+                        if (complete) {
+                            emitter.complete();
+                        }
+                        return;
+                    }
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开或连接已结束
+                log.debug("Tail subscriber of file record {} gone: {}", fileRecordId, e.getMessage());
+                synchronized (this) {
+                    draining = false;
+                }
+                close();
+            }
+        }
+
+        private boolean matches(LogEntry e) {
+            if (filter == null) {
+                return true;
+            }
+            if (levels != null && !levels.contains(e.getLevelCode())) {
+                return false;
+            }
+            if (filter.tag() != null && !filter.tag().equals(e.getTag())) {
+                return false;
+            }
+            LocalDateTime ts = e.getTimestamp();
+            if (filter.from() != null && (ts == null || ts.isBefore(filter.from()))) {
+                return false;
+            }
+            return filter.to() == null || (ts != null && !ts.isAfter(filter.to()));
+        }
+    }
+}
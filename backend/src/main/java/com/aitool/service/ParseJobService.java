@@ -0,0 +1,419 @@
+package com.aitool.service;
+
+import com.aitool.config.JobProperties;
+import com.aitool.model.FileRecord;
+import com.aitool.model.FileStatus;
+import com.aitool.model.ParseJob;
+import com.aitool.model.ParseJobState;
+import com.aitool.repository.FileRecordRepository;
+import com.aitool.repository.ParseJobRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Durable, prioritized scheduling of parses.
+ * <p>
+ * Every requested parse is a {@link ParseJob} row. Up to {@code aitool.jobs.concurrency} jobs run at once on
+ * {@code parseExecutor}. A free slot goes to the queued job with the highest priority; among equal priorities, to
+ * the tenant with the fewest running jobs that was served longest ago, so that one tenant's batch does not hold
+ * back everybody else. {@code reserved-urgent-slots} slots only take jobs with a priority above 0, so an urgent
+ * single file never waits for a batch to drain.
+ * <p>
+ * A job is claimed with a conditional update and held through a lease that is renewed while it runs. Jobs whose
+ * lease ran out or whose run ended with an exception are queued again, up to {@code max-attempts} claims. On
+ * startup, the jobs this instance held and records that were left mid-parse without a job are queued again right
+ * away.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ParseJobService {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final List<ParseJobState> ACTIVE = List.of(ParseJobState.QUEUED, ParseJobState.RUNNING);
+    /** 按加入的先后去掉 CHECK 约束的枚举列，schema 版本（PRAGMA user_version）即已完成的个数 */
+    private static final List<EnumColumn> ENUM_CHECKS = List.of(
+            new EnumColumn("file_record", "status"),
+            new EnumColumn("parse_job", "state"),
+            new EnumColumn("remote_fetch", "state"));
+
+    private final ParseJobRepository jobRepo;
+    private final FileRecordRepository recordRepo;
+    private final ParseService parseService;
+    private final JobProperties properties;
+    private final AsyncTaskExecutor parseExecutor;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    /** 本实例正在执行的任务 */
+    private final Map<Long, Execution> running = new ConcurrentHashMap<>();
+    /** 各租户最近一次有任务开始执行的时刻，用于同优先级内轮转 */
+    private final Map<String, Long> lastServed = new ConcurrentHashMap<>();
+    private String owner;
+
+    private static final class Execution {
+        private final int priority;
+        private volatile boolean cancelled;
+
+        Execution(int priority) {
+            this.priority = priority;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        owner = properties.instanceId().isBlank() ? hostName() : properties.instanceId();
+        dropEnumChecks();
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * An enum column stored by name. Mapped with {@code @Enumerated} it got a CHECK constraint listing the values of
+     * that time; it is now mapped through a converter such as {@link com.aitool.model.FileStatusConverter}.
+     */
+    private record EnumColumn(String table, String column) {
+
+        Pattern check() {
+            return Pattern.compile("\\s*check\\s*\\(\\s*" + column + "\\s+in\\s*\\([^)]*\\)\\s*\\)",
+                    Pattern.CASE_INSENSITIVE);
+        }
+    }
+
+    /**
+     * Tables created before their enum columns were mapped through converters carry CHECK constraints that list the
+     * values of that time, and SQLite cannot drop a constraint. Each such table is rebuilt without it once, in its
+     * own transaction; {@code PRAGMA user_version} records how many of {@link #ENUM_CHECKS} are done.
+     */
+    private void dropEnumChecks() {
+        Integer version = jdbc.queryForObject("PRAGMA user_version", Integer.class);
+        for (int i = version != null ? version : 0; i < ENUM_CHECKS.size(); i++) {
+            EnumColumn enumColumn = ENUM_CHECKS.get(i);
+            int done = i + 1;
+            tx.executeWithoutResult(status -> {
+                dropCheck(enumColumn);
+                jdbc.execute("PRAGMA user_version = " + done);
+            });
+        }
+    }
+
+    private void dropCheck(EnumColumn enumColumn) {
+        String table = enumColumn.table();
+        String ddl = jdbc.queryForObject(
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?", String.class, table);
+        Matcher check = enumColumn.check().matcher(ddl);
+        if (!check.find()) {
+            return;
+        }
+        log.info("Rebuilding table {} without the CHECK constraint on {}", table, enumColumn.column());
+        List<String> indexes = jdbc.queryForList("SELECT sql FROM sqlite_master "
+                + "WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL", String.class, table);
+        jdbc.execute(check.replaceFirst("")
+                .replaceFirst("(?i)CREATE TABLE \"?" + table + "\"?", "CREATE TABLE " + table + "_rebuild"));
+        jdbc.execute("INSERT INTO " + table + "_rebuild SELECT * FROM " + table);
+        jdbc.execute("DROP TABLE " + table);
+        jdbc.execute("ALTER TABLE " + table + "_rebuild RENAME TO " + table);
+        indexes.forEach(jdbc::execute);
+    }
+
+    /**
+     * Queue jobs interrupted by the last shutdown and records that were being parsed without a job.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        // 上次运行时本实例持有的任务已随进程中断，无需等待租约过期
+        for (ParseJob job : jobRepo.findByStateAndLeaseOwner(ParseJobState.RUNNING, owner)) {
+            requeue(job, "interrupted by restart");
+        }
+        Set<Long> withJob = new HashSet<>();
+        for (ParseJobState state : ACTIVE) {
+            jobRepo.findByState(state).forEach(job -> withJob.add(job.getFileRecord().getId()));
+        }
+        for (FileRecord record : recordRepo.findByStatusIn(
+                List.of(FileStatus.QUEUED, FileStatus.RUNNING, FileStatus.EXTRACTED))) {
+            if (!withJob.contains(record.getId())) {
+                log.info("Resuming interrupted parse of {}", record.getUuid());
+                submit(record, 0, DEFAULT_TENANT);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Queue a parse of {@code record}. A record has at most one queued or running job; submitting again returns
+     * that job, raising its priority if it is still queued.
+     */
+    public synchronized ParseJob submit(FileRecord record, int priority, String tenant) {
+        Optional<ParseJob> active = jobRepo.findFirstByFileRecordAndStateInOrderByIdDesc(record, ACTIVE);
+        if (active.isPresent()) {
+            ParseJob job = active.get();
+            if (job.getState() == ParseJobState.QUEUED && priority > job.getPriority()) {
+                job.setPriority(priority);
+                jobRepo.save(job);
+            }
+            return job;
+        }
+        ParseJob job = jobRepo.save(ParseJob.builder()
+                .fileRecord(record)
+                .tenant(tenant != null && !tenant.isBlank() ? tenant : DEFAULT_TENANT)
+                .priority(priority)
+                .state(ParseJobState.QUEUED)
+                .createdAt(LocalDateTime.now())
+                .build());
+        record.setStatus(FileStatus.QUEUED);
+        recordRepo.save(record);
+        dispatch();
+        return job;
+    }
+
+    /**
+     * Cancel the queued or running job of {@code record}. A running parse stops at its next chunk.
+     *
+     * @return whether there was a job to cancel
+     */
+    public synchronized boolean cancel(FileRecord record) {
+        Optional<ParseJob> active = jobRepo.findFirstByFileRecordAndStateInOrderByIdDesc(record, ACTIVE);
+        if (active.isEmpty()) {
+            return false;
+        }
+        ParseJob job = active.get();
+        if (jobRepo.cancelQueued(job.getId(), LocalDateTime.now()) > 0) {
+            recordRepo.findById(record.getId()).ifPresent(this::restoreStatus);
+            return true;
+        }
+        // 已在执行：由执行线程在下一个分块处停止；在其他实例上执行时由其维护任务发现
+        jobRepo.requestCancel(job.getId());
+        Execution execution = running.get(job.getId());
+        if (execution != null) {
+            execution.cancelled = true;
+        }
+        return true;
+    }
+
+    /**
+     * Stop and forget the jobs of a record that is being deleted.
+     */
+    public void discard(FileRecord record) {
+        jobRepo.findFirstByFileRecordAndStateInOrderByIdDesc(record, ACTIVE)
+                .map(job -> running.get(job.getId()))
+                .ifPresent(execution -> execution.cancelled = true);
+        jobRepo.deleteByFileRecord(record);
+    }
+
+    public Optional<ParseJob> latest(FileRecord record) {
+        return jobRepo.findFirstByFileRecordOrderByIdDesc(record);
+    }
+
+    /**
+     * Renew the leases of running jobs, pick up cancellations and expired leases of other instances, and fill free
+     * slots with jobs queued elsewhere.
+     */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.SECONDS)
+    public void maintain() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            if (!running.isEmpty()) {
+                Set<Long> ids = Set.copyOf(running.keySet());
+                jobRepo.renew(ids, owner, now.plus(properties.lease()));
+                Map<Long, ParseJob> jobs = jobRepo.findAllById(ids).stream()
+                        .collect(Collectors.toMap(ParseJob::getId, Function.identity()));
+                for (Long id : ids) {
+                    ParseJob job = jobs.get(id);
+                    Execution execution = running.get(id);
+                    // 任务被删除（文件记录已删除）或在其他实例上被取消
+                    if (execution != null && (job == null || job.isCancelRequested())) {
+                        execution.cancelled = true;
+                    }
+                }
+            }
+            for (ParseJob job : jobRepo.findByStateAndLeaseUntilBefore(ParseJobState.RUNNING, now)) {
+                if (!running.containsKey(job.getId())) {
+                    requeue(job, "lease expired");
+                }
+            }
+            dispatch();
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Parse job maintenance failed, retrying later: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Start queued jobs while there are free slots.
+     */
+    public synchronized void dispatch() {
+        int free = properties.concurrency() - running.size();
+        if (free <= 0) {
+            return;
+        }
+        List<ParseJob> queued = jobRepo.findByStateOrderByPriorityDescCreatedAtAsc(ParseJobState.QUEUED);
+        if (queued.isEmpty()) {
+            return;
+        }
+        Map<String, Long> busy = jobRepo.findByState(ParseJobState.RUNNING).stream()
+                .collect(Collectors.groupingBy(ParseJob::getTenant, Collectors.counting()));
+        while (free > 0 && !queued.isEmpty()) {
+            ParseJob next = pick(queued, busy);
+            if (next == null) {
+                return;
+            }
+            queued.remove(next);
+            if (claim(next)) {
+                busy.merge(next.getTenant(), 1L, Long::sum);
+                free--;
+            }
+        }
+    }
+
+    /**
+     * @return the next job among {@code queued}, sorted by priority, or {@code null} when only non-urgent jobs are
+     * left and the slots they may use are taken
+     */
+    private ParseJob pick(List<ParseJob> queued, Map<String, Long> busy) {
+        int top = queued.get(0).getPriority();
+        if (top <= 0) {
+            long regular = running.values().stream().filter(e -> e.priority <= 0).count();
+            if (regular >= Math.max(1, properties.concurrency() - properties.reservedUrgentSlots())) {
+                return null;
+            }
+        }
+        // 同优先级内：运行中任务最少、最久未被调度的租户优先，其次按提交顺序
+        return queued.stream()
+                .filter(job -> job.getPriority() == top)
+                .min(Comparator.<ParseJob>comparingLong(job -> busy.getOrDefault(job.getTenant(), 0L))
+                        .thenComparingLong(job -> lastServed.getOrDefault(job.getTenant(), Long.MIN_VALUE)))
+                .orElseThrow();
+    }
+
+    private boolean claim(ParseJob job) {
+        LocalDateTime now = LocalDateTime.now();
+        if (jobRepo.claim(job.getId(), owner, now.plus(properties.lease()), now) == 0) {
+            // 已被其他实例领取或已取消
+            return false;
+        }
+        Execution execution = new Execution(job.getPriority());
+        running.put(job.getId(), execution);
+        lastServed.put(job.getTenant(), System.nanoTime());
+        try {
+            parseExecutor.execute(() -> run(job.getId(), execution));
+            return true;
+        } catch (TaskRejectedException e) {
+            running.remove(job.getId());
+            jobRepo.findById(job.getId()).ifPresent(claimed -> requeue(claimed, "executor saturated"));
+            return false;
+        }
+    }
+
+    private void run(long jobId, Execution execution) {
+        try {
+            Optional<FileRecord> record = jobRepo.findById(jobId)
+                    .flatMap(job -> recordRepo.findById(job.getFileRecord().getId()));
+            record.ifPresent(r -> parseService.parse(r.getUuid(), () -> execution.cancelled));
+            complete(jobId, execution);
+        } catch (RuntimeException e) {
+            log.error("Parse job {} ended abnormally", jobId, e);
+            try {
+                // 按领取次数重新排队，用完 max-attempts 后标记为失败
+                jobRepo.findById(jobId).ifPresent(job -> requeue(job, "ended abnormally"));
+            } catch (RuntimeException requeueFailed) {
+                // 数据库不可用时任务行保持 RUNNING，租约过期后由 maintain() 重新排队
+                log.warn("Could not requeue parse job {}: {}", jobId, requeueFailed.getMessage());
+            }
+        } finally {
+            running.remove(jobId);
+            dispatch();
+        }
+    }
+
+    private void complete(long jobId, Execution execution) {
+        Optional<ParseJob> found = jobRepo.findById(jobId);
+        if (found.isEmpty()) {
+            return;
+        }
+        ParseJob job = found.get();
+        Optional<FileRecord> record = recordRepo.findById(job.getFileRecord().getId());
+        if (execution.cancelled) {
+            job.setState(ParseJobState.CANCELLED);
+        } else {
+            job.setState(record.filter(r -> r.getStatus() == FileStatus.PARSED).isPresent()
+                    ? ParseJobState.DONE : ParseJobState.FAILED);
+        }
+        job.setMessage(record.map(FileRecord::getMessage).orElse(null));
+        job.setLeaseUntil(null);
+        job.setFinishedAt(LocalDateTime.now());
+        jobRepo.save(job);
+    }
+
+    /**
+     * Put a job whose run was lost or failed back in the queue, or fail it once it used up its attempts.
+     */
+    private void requeue(ParseJob job, String reason) {
+        Optional<FileRecord> found = recordRepo.findById(job.getFileRecord().getId());
+        if (found.isEmpty()) {
+            jobRepo.delete(job);
+            return;
+        }
+        FileRecord record = found.get();
+        job.setLeaseOwner(null);
+        job.setLeaseUntil(null);
+        if (job.isCancelRequested()) {
+            job.setState(ParseJobState.CANCELLED);
+            job.setFinishedAt(LocalDateTime.now());
+            restoreStatus(record);
+        } else if (job.getAttempts() >= properties.maxAttempts()) {
+            job.setState(ParseJobState.FAILED);
+            job.setMessage("解析任务已中断 " + job.getAttempts() + " 次，不再重试");
+            job.setFinishedAt(LocalDateTime.now());
+            record.setStatus(FileStatus.FAILED);
+            record.setMessage(job.getMessage());
+            recordRepo.save(record);
+        } else {
+            job.setState(ParseJobState.QUEUED);
+            record.setStatus(FileStatus.QUEUED);
+            recordRepo.save(record);
+        }
+        jobRepo.save(job);
+        log.warn("Parse job {} of {} {} after {} attempts, now {}", job.getId(), record.getUuid(), reason,
+                job.getAttempts(), job.getState());
+    }
+
+    /**
+     * Status of a record whose job was cancelled before it ran: parsed if an earlier parse left a result.
+     */
+    private void restoreStatus(FileRecord record) {
+        record.setStatus(record.getEntryCount() != null ? FileStatus.PARSED : FileStatus.STORED);
+        recordRepo.save(record);
+    }
+}
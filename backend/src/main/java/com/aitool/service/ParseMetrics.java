@@ -0,0 +1,302 @@
+package com.aitool.service;
+
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+import com.aitool.parser.LogParser;
+import com.aitool.parser.ParseStats;
+import com.aitool.parser.ParserRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Micrometer instrumentation of the parse pipeline, plus the byte progress of running parses for the status API.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>{@code aitool.parse.stage} timer, tag {@code stage} = extract / walk / parse / persist, one sample per
+ *       upload. {@code parse} is the wall time of the parse phase not spent persisting.</li>
+ *   <li>{@code aitool.parse.bytes} and {@code aitool.parse.entries} counters; their rates are bytes/s and rows/s.</li>
+ *   <li>{@code aitool.parse.lines.read / matched / folded / dropped} per parser, tag {@code parser}.</li>
+ *   <li>{@code executor.*} gauges of {@code parseWorkerExecutor} and {@code rangeParsePool};
+ *       {@code parseExecutor} is bound by Spring Boot's executor metrics under the same names.</li>
+ * </ul>
+ */
+@Component
+public class ParseMetrics {
+
+    public enum Stage {
+        EXTRACT, WALK, PARSE, PERSIST
+    }
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Counter bytes;
+    private final Counter entries;
+    private final Map<Long, Run> running = new ConcurrentHashMap<>();
+
+    public ParseMetrics(MeterRegistry registry, ParserRegistry parserRegistry,
+                        ExecutorService parseWorkerExecutor, ForkJoinPool rangeParsePool) {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("aitool.parse.stage")
+                    .description("Time spent per pipeline stage of one upload")
+                    .tag("stage", stage.name().toLowerCase())
+                    .register(registry));
+        }
+        this.bytes = Counter.builder("aitool.parse.bytes").baseUnit("bytes")
+                .description("Input bytes consumed by parses").register(registry);
+        this.entries = Counter.builder("aitool.parse.entries")
+                .description("Entries handed to the store").register(registry);
+        for (LogParser parser : parserRegistry.parsers()) {
+            Tags tags = Tags.of("parser", parser.getClass().getSimpleName());
+            FunctionCounter.builder("aitool.parse.lines.read", parser, LogParser::linesRead)
+                    .tags(tags).register(registry);
+            FunctionCounter.builder("aitool.parse.lines.matched", parser, LogParser::linesMatched)
+                    .tags(tags).register(registry);
+            FunctionCounter.builder("aitool.parse.lines.folded", parser, LogParser::linesFolded)
+                    .tags(tags).register(registry);
+            FunctionCounter.builder("aitool.parse.lines.dropped", parser,
+                            p -> p.linesRead() - p.linesMatched() - p.linesFolded())
+                    .tags(tags).register(registry);
+        }
+        new ExecutorServiceMetrics(parseWorkerExecutor, "parseWorkerExecutor", Tags.empty()).bindTo(registry);
+        new ExecutorServiceMetrics(rangeParsePool, "rangeParsePool", Tags.empty()).bindTo(registry);
+    }
+
+    public Run start(FileRecord record) {
+        Run run = new Run();
+        running.put(record.getId(), run);
+        return run;
+    }
+
+    /**
+     * @return the parse in progress for {@code record}, or {@code null}
+     */
+    public Run running(FileRecord record) {
+        return running.get(record.getId());
+    }
+
+    /**
+     * Record the stage timings of a run that ended, successfully or not.
+     */
+    public void finish(FileRecord record, Run run) {
+        running.remove(record.getId(), run);
+        long elapsed = System.nanoTime() - run.started;
+        long parse = elapsed;
+        for (Stage stage : List.of(Stage.EXTRACT, Stage.WALK, Stage.PERSIST)) {
+            long nanos = run.stageNanos.getOrDefault(stage, 0L);
+            parse -= nanos;
+            if (run.stageNanos.containsKey(stage)) {
+                stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        stageTimers.get(Stage.PARSE).record(Math.max(0, parse), TimeUnit.NANOSECONDS);
+    }
+
+    @FunctionalInterface
+    public interface IoCall<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * State of one running parse. Progress is updated only by the thread that feeds the writer and may be read
+     * from any thread.
+     */
+    public final class Run {
+
+        private final long started = System.nanoTime();
+        private final Map<Stage, Long> stageNanos = new EnumMap<>(Stage.class);
+        private volatile long totalBytes;
+        /** 已处理完的输入字节数 */
+        private volatile long completedBytes;
+        /** 当前输入内已处理到的位置 */
+        private volatile long position;
+        /** 并行解析时由多个工作线程累加 */
+        private final LongAdder foldedLines = new LongAdder();
+        private final LongAdder unmatchedLines = new LongAdder();
+
+        public <T> T time(Stage stage, IoCall<T> call) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return call.call();
+            } finally {
+                addStage(stage, System.nanoTime() - start);
+            }
+        }
+
+        private synchronized void addStage(Stage stage, long nanos) {
+            stageNanos.merge(stage, nanos, Long::sum);
+        }
+
+        /**
+         * Add {@code bytes} of input that this run will read.
+         */
+        public void expect(long bytes) {
+            totalBytes += bytes;
+        }
+
+        /**
+         * The current input has been read up to {@code offset}.
+         */
+        public void advance(long offset) {
+            if (offset > position) {
+                bytes.increment(offset - position);
+                position = offset;
+            }
+        }
+
+        /**
+         * The current input of {@code size} bytes is done; later offsets refer to the next input.
+         */
+        public void inputDone(long size) {
+            advance(size);
+            completedBytes += position;
+            position = 0;
+        }
+
+        /**
+         * Add the line accounting of one parsed input; safe to call from parse workers.
+         */
+        public void lines(ParseStats stats) {
+            foldedLines.add(stats.folded());
+            unmatchedLines.add(stats.unmatched());
+        }
+
+        public long foldedLines() {
+            return foldedLines.sum();
+        }
+
+        public long unmatchedLines() {
+            return unmatchedLines.sum();
+        }
+
+        public long processedBytes() {
+            return completedBytes + position;
+        }
+
+        public long totalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return processed share of the input in percent, one decimal
+         */
+        public double percent() {
+            long total = totalBytes;
+            if (total <= 0) {
+                return 0;
+            }
+            return Math.min(100.0, Math.floor(processedBytes() * 1000.0 / total) / 10);
+        }
+
+        /**
+         * Advance to the end of the last entry of each chunk; entries carry their byte offsets in the input.
+         */
+        public Consumer<List<LogEntry>> tracking(Consumer<List<LogEntry>> sink) {
+            return chunk -> {
+                sink.accept(chunk);
+                advanceTo(chunk);
+            };
+        }
+
+        public void advanceTo(List<LogEntry> chunk) {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            LogEntry last = chunk.get(chunk.size() - 1);
+            if (last.getSourceOffset() != null && last.getSourceLength() != null) {
+                advance(last.getSourceOffset() + last.getSourceLength());
+            }
+        }
+
+        /**
+         * Count the bytes read from {@code in} as progress, for inputs consumed as one stream.
+         */
+        public InputStream counting(InputStream in) {
+            return new FilterInputStream(in) {
+                private long count;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        advance(++count);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        count += n;
+                        advance(count);
+                    }
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = super.skip(n);
+                    count += skipped;
+                    advance(count);
+                    return skipped;
+                }
+            };
+        }
+
+        /**
+         * Time everything {@code delegate} does as the persist stage and count the entries it accepts.
+         */
+        public LogEntryWriter timed(LogEntryWriter delegate) {
+            return new ForwardingLogEntryWriter(delegate) {
+                @Override
+                public void write(List<LogEntry> chunk) {
+                    long start = System.nanoTime();
+                    try {
+                        delegate.write(chunk);
+                    } finally {
+                        addStage(Stage.PERSIST, System.nanoTime() - start);
+                    }
+                    entries.increment(chunk.size());
+                }
+
+                @Override
+                public void flush() {
+                    long start = System.nanoTime();
+                    try {
+                        delegate.flush();
+                    } finally {
+                        addStage(Stage.PERSIST, System.nanoTime() - start);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    long start = System.nanoTime();
+                    try {
+                        delegate.close();
+                    } finally {
+                        addStage(Stage.PERSIST, System.nanoTime() - start);
+                    }
+                }
+            };
+        }
+    }
+}
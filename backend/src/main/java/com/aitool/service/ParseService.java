@@ -1,89 +1,448 @@
 package com.aitool.service;
 
+import com.aitool.config.ParseProperties;
 import com.aitool.model.FileRecord;
 import com.aitool.model.FileStatus;
 import com.aitool.model.LogEntry;
+import com.aitool.model.LogLevel;
+import com.aitool.model.LogSource;
 import com.aitool.repository.FileRecordRepository;
 import com.aitool.repository.LogEntryRepository;
+import com.aitool.repository.LogRollupRepository;
+import com.aitool.repository.LogSourceRepository;
 import com.aitool.parser.LogParser;
+import com.aitool.parser.ParseStats;
+import com.aitool.parser.ParserRegistry;
+import com.aitool.segment.SegmentStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.springframework.scheduling.annotation.Async;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ParseService {
 
+    private static final int QUEUED_CHUNKS_PER_FILE = 4;
+    private static final String SHA256 = "sha256:";
+    private static final List<LogEntry> END_OF_FILE = List.of();
+
     private final FileRecordRepository repository;
     private final LogEntryRepository logRepo;
-    private final List<LogParser> parsers;
+    private final LogRollupRepository rollupRepo;
+    private final LogSourceRepository sourceRepo;
+    private final ParserRegistry parserRegistry;
+    private final ParseProperties properties;
+    private final LogEntryBulkWriter bulkWriter;
+    private final SegmentStore segmentStore;
+    private final LogTailService logTailService;
+    private final LogQueryCache queryCache;
+    private final TagDictionary tagDictionary;
+    private final ParseMetrics parseMetrics;
+    private final ContentStore contentStore;
+    private final ExecutorService parseWorkerExecutor;
+    private final AsyncTaskExecutor ioExecutor;
 
-    @Async("parseExecutor")
-    public void extractAndParseAsync(String uuid) {
+    /**
+     * Parse the upload of {@code uuid} on the calling thread; the outcome is left in the record's status.
+     * Runs of the parse job scheduler, see {@link ParseJobService}.
+     *
+     * @param cancelled polled between chunks; once it turns true the parse stops. A re-parse that writes to staging or
+     *                  to a new segment leaves the previous result in place; otherwise the partial result is removed and the record
+     *                  goes back to {@link FileStatus#STORED}
+     */
+    public void parse(String uuid, BooleanSupplier cancelled) {
         Optional<FileRecord> optional = repository.findByUuid(uuid);
         if (optional.isEmpty()) {
             log.error("No file record found for uuid {}", uuid);
             return;
         }
         FileRecord record = optional.get();
+        Optional<FileRecord> parsed = parsedDuplicateOf(record);
+        if (parsed.isPresent()) {
+            reuse(record, parsed.get());
+            return;
+        }
+        ParseMetrics.Run run = parseMetrics.start(record);
+        boolean staged = false;
         try {
-            Path extractedDir = extractArchive(Path.of(record.getStoragePath()));
-            record.setExtractedPath(extractedDir.toString());
-            log.info("Available log parsers: {}", parsers.size());
-            record.setStatus(FileStatus.EXTRACTED);
+            record.setStatus(FileStatus.RUNNING);
             repository.save(record);
-
-            // 递归解压并解析
-            processDirectoryRecursively(extractedDir, record);
+            Path storagePath = Path.of(record.getStoragePath());
+            log.info("Available log parsers: {}", parserRegistry.parsers().size());
+            // 计时包含解压：流式模式下解压与解析交织在一起，无法拆开
+            long start = System.nanoTime();
+            long written;
+            // 不保存 rawLine 时需要保留源文件以便回填，因此必须解压落盘
+            boolean rawLinesFromSource = !properties.storeRawLine()
+                    && properties.writer() != ParseProperties.Writer.SEGMENT;
+            // 段文件每次整体重写，无法只替换其中的部分文件
+            boolean incremental = properties.writer() != ParseProperties.Writer.SEGMENT;
+            SourceLedger ledger = new SourceLedger(record, sourceRepo.findByFileRecord(record), incremental,
+                    logRepo.existsByFileRecord_Id(record.getId()));
+            // 重新解析时新条目先暂存，与被替换的旧条目在同一事务中交换
+            staged = incremental && ledger.replacing();
+            if (staged) {
+                bulkWriter.discardStaged(record);
+            }
+            LogEntryWriter writer = cancellable(run.timed(openWriter(record, staged, ledger.replacing())), cancelled);
+            try {
+                if (properties.keepExtracted() || rawLinesFromSource) {
+                    Path extractedDir = run.time(ParseMetrics.Stage.EXTRACT, () -> extractUpload(record));
+                    record.setExtractedPath(extractedDir.toString());
+                    record.setStatus(FileStatus.EXTRACTED);
+                    repository.save(record);
+                    // 递归解压并解析
+                    processDirectoryRecursively(extractedDir, record, ledger, writer, rawLinesFromSource, run);
+                } else {
+                    record.setStatus(FileStatus.EXTRACTED);
+                    repository.save(record);
+                    // 直接从压缩流解析，不落盘
+                    processStoredFileAsStream(storagePath, record, ledger, writer, run);
+                }
+                written = writer.written();
+            } catch (Throwable t) {
+                // 失败或取消的解析不能发布半成品：段不替换旧段，汇总不保存
+                try {
+                    writer.abort();
+                } catch (RuntimeException suppressed) {
+                    t.addSuppressed(suppressed);
+                }
+                throw t;
+            }
+            writer.close();
+            if (ledger.changed()) {
+                bulkWriter.replace(record, staged, ledger.obsoleteSourceIds(), ledger.completed());
+                queryCache.invalidate(record.getId());
+            }
+            ParseStats kept = ledger.keptStats();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            record.setEntryCount(kept.entries() + written);
+            record.setParseMillis(millis);
+            record.setInputBytes(run.processedBytes());
+            record.setFoldedLines(kept.folded() + run.foldedLines());
+            record.setUnmatchedLines(kept.unmatched() + run.unmatchedLines());
+            record.setMessage(null);
             record.setStatus(FileStatus.PARSED);
             repository.save(record);
+            // 段存储的文件在记录保存后才指向新的段
+            queryCache.invalidate(record.getId());
+            updateDuplicates(record);
+            logTailService.finished(record);
+            log.info("Parsed {} entries of {} in {} ms ({} rows/s, {} bytes/s, {} lines folded, {} unmatched, "
+                            + "{} unchanged files kept, writer {})",
+                    record.getEntryCount(), uuid, millis, record.getRowsPerSecond(), record.getBytesPerSecond(),
+                    record.getFoldedLines(), record.getUnmatchedLines(), ledger.keptFiles(), properties.writer());
         } catch (Exception e) {
-            log.error("Failed to extract/parse file {}", uuid, e);
-            record.setStatus(FileStatus.FAILED);
-            record.setMessage(e.getMessage());
-            repository.save(record);
+            if (!repository.existsById(record.getId())) {
+                // 解析期间记录被删除：不能再保存记录，否则会重新插入；清理删除之后写入的条目
+                log.info("File {} was deleted while being parsed", uuid);
+                bulkWriter.discardStaged(record);
+                discardEntries(record);
+            } else if (e instanceof CancellationException || cancelled.getAsBoolean()) {
+                log.info("Parse of {} cancelled", uuid);
+                // 暂存的重新解析或段的重写被取消时，上一次的结果仍然完整；否则清除已写入的部分结果，回到未解析状态
+                boolean segment = properties.writer() == ParseProperties.Writer.SEGMENT;
+                boolean intact = (staged || segment) && record.getEntryCount() != null;
+                if (staged) {
+                    bulkWriter.discardStaged(record);
+                } else if (!intact) {
+                    discardEntries(record);
+                    record.setEntryCount(null);
+                }
+                record.setStatus(intact ? FileStatus.PARSED : FileStatus.STORED);
+                record.setMessage(intact ? null : "解析已取消");
+                repository.save(record);
+            } else {
+                log.error("Failed to extract/parse file {}", uuid, e);
+                record.setStatus(FileStatus.FAILED);
+                record.setMessage(e.getMessage());
+                repository.save(record);
+            }
+            queryCache.invalidate(record.getId());
+            logTailService.finished(record);
+        } finally {
+            parseMetrics.finish(record, run);
+        }
+    }
+
+    /**
+     * An already parsed record with the same content, when {@code record} has no rows of its own yet.
+     */
+    private Optional<FileRecord> parsedDuplicateOf(FileRecord record) {
+        boolean ownsRows = record.getDataRecordId() == null && record.getEntryCount() != null;
+        if (record.getContentHash() == null || ownsRows) {
+            return Optional.empty();
         }
+        return repository.findFirstByContentHashAndStatusAndDataRecordIdIsNullAndIdNotOrderByIdAsc(
+                record.getContentHash(), FileStatus.PARSED, record.getId());
     }
 
+    /**
+     * Serve {@code record} from the rows, rollups and segment of {@code owner} instead of parsing it again.
+     */
+    private void reuse(FileRecord record, FileRecord owner) {
+        long start = System.nanoTime();
+        record.setDataRecordId(owner.getId());
+        record.setSegmentPath(owner.getSegmentPath());
+        record.setEntryCount(owner.getEntryCount());
+        record.setInputBytes(owner.getInputBytes());
+        record.setFoldedLines(owner.getFoldedLines());
+        record.setUnmatchedLines(owner.getUnmatchedLines());
+        record.setMessage(null);
+        record.setParseMillis((System.nanoTime() - start) / 1_000_000);
+        record.setStatus(FileStatus.PARSED);
+        repository.save(record);
+        logTailService.finished(record);
+        log.info("Reused {} entries of identical content {} for {}", owner.getEntryCount(), owner.getUuid(),
+                record.getUuid());
+    }
+
+    private void discardEntries(FileRecord record) {
+        logRepo.deleteAllByFileRecordId(record.getId());
+        rollupRepo.deleteAllByFileRecordId(record.getId());
+        sourceRepo.deleteByFileRecord(record);
+    }
+
+    /**
+     * Stop the parse with a {@link CancellationException} at the next chunk once {@code cancelled} turns true.
+     */
+    private static LogEntryWriter cancellable(LogEntryWriter delegate, BooleanSupplier cancelled) {
+        return new ForwardingLogEntryWriter(delegate) {
+            @Override
+            public void write(List<LogEntry> entries) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException("parse cancelled");
+                }
+                delegate.write(entries);
+            }
+        };
+    }
+
+    /**
+     * Keep the counts of records that share the rows of {@code owner} in line with a re-parse.
+     */
+    private void updateDuplicates(FileRecord owner) {
+        for (FileRecord duplicate : repository.findByDataRecordId(owner.getId())) {
+            duplicate.setSegmentPath(owner.getSegmentPath());
+            duplicate.setEntryCount(owner.getEntryCount());
+            duplicate.setInputBytes(owner.getInputBytes());
+            duplicate.setFoldedLines(owner.getFoldedLines());
+            duplicate.setUnmatchedLines(owner.getUnmatchedLines());
+            repository.save(duplicate);
+        }
+    }
+
+    /**
+     * @param staged    write the rows invisibly, for {@link LogEntryBulkWriter#replace} to swap them in
+     * @param replacing the record may have rows and rollups of an earlier parse
+     */
+    private LogEntryWriter openWriter(FileRecord record, boolean staged, boolean replacing) {
+        LogEntryWriter store = openStoreWriter(record, staged, replacing);
+        // 实时订阅者在条目提交后收到推送；暂存的条目在交换后、段在记录保存后才对查询可见，推送推迟到 finished()
+        boolean deferred = staged || properties.writer() == ParseProperties.Writer.SEGMENT;
+        return normalizing(logTailService.tee(staged ? store : invalidating(store, record), record, deferred));
+    }
+
+    /**
+     * Map the level every parser reports in its own notation to a {@link LogLevel} before anything stores or
+     * publishes the entries. Tags are interned by the store writers.
+     */
+    private static LogEntryWriter normalizing(LogEntryWriter delegate) {
+        return new ForwardingLogEntryWriter(delegate) {
+            @Override
+            public void write(List<LogEntry> entries) {
+                for (LogEntry e : entries) {
+                    LogLevel level = LogLevel.parse(e.getLevel());
+                    if (level != null) {
+                        e.setLevelCode(level.code());
+                        e.setLevel(level.label());
+                    }
+                }
+                delegate.write(entries);
+            }
+        };
+    }
+
+    /**
+     * Invalidate the cached query results of {@code record} whenever {@code delegate} commits entries.
+     */
+    private LogEntryWriter invalidating(LogEntryWriter delegate, FileRecord record) {
+        return new ForwardingLogEntryWriter(delegate) {
+            private long lastCommitted;
+
+            @Override
+            public void write(List<LogEntry> entries) {
+                delegate.write(entries);
+                committed();
+            }
+
+            @Override
+            public long committed() {
+                long done = delegate.committed();
+                if (done != lastCommitted) {
+                    lastCommitted = done;
+                    queryCache.invalidate(record.getId());
+                }
+                return done;
+            }
+
+            @Override
+            public void flush() {
+                delegate.flush();
+                committed();
+            }
+
+            @Override
+            public void close() {
+                delegate.close();
+                committed();
+            }
+        };
+    }
+
+    private LogEntryWriter openStoreWriter(FileRecord record, boolean staged, boolean replacing) {
+        // 暂存的统计在交换时按条目重新汇总
+        FileRecord target = staged ? LogEntryBulkWriter.staging(record) : record;
+        return switch (properties.writer()) {
+            case JDBC -> staged ? bulkWriter.openStaged(record) : bulkWriter.open(record);
+            case SEGMENT -> withRollups(segmentStore.create(record), record, replacing);
+            case JPA -> withRollups(new LogEntryWriter() {
+                private long written;
+
+                @Override
+                public void write(List<LogEntry> entries) {
+                    entries.forEach(e -> {
+                        e.setFileRecord(target);
+                        e.setTagId(tagDictionary.intern(e.getTag()));
+                    });
+                    logRepo.saveAll(entries);
+                    written += entries.size();
+                }
+
+                @Override
+                public long written() {
+                    return written;
+                }
+
+                @Override
+                public void close() {
+                }
+            }, target, false);
+        };
+    }
+
+    /**
+     * Count rollups of everything {@code delegate} writes and save them once it is closed.
+     *
+     * @param replacing drop the rollups {@code record} already has before saving the new ones
+     */
+    private LogEntryWriter withRollups(LogEntryWriter delegate, FileRecord record, boolean replacing) {
+        LogRollupCounter rollups = new LogRollupCounter();
+        return new ForwardingLogEntryWriter(delegate) {
+            @Override
+            public void write(List<LogEntry> entries) {
+                delegate.write(entries);
+                rollups.add(entries);
+            }
+
+            @Override
+            public void close() {
+                delegate.close();
+                if (replacing) {
+                    rollupRepo.deleteByFileRecord(record);
+                }
+                rollupRepo.saveAll(rollups.toRollups(record, tagDictionary::intern));
+            }
+        };
+    }
+
+    /**
+     * Extract the upload of {@code record} into a fresh directory, the one of an earlier parse if there is one,
+     * so that files of that extraction, including nested archives unpacked inside it, are not found twice.
+     */
+    private Path extractUpload(FileRecord record) throws IOException {
+        Path archivePath = Path.of(record.getStoragePath());
+        Path destDir = record.getExtractedPath() != null
+                ? Path.of(record.getExtractedPath())
+                : archivePath.getParent().resolve("extracted");
+        // 重新解压期间，保留条目的原始行暂时读不到；内容不变，解压后偏移依然有效
+        FileSystemUtils.deleteRecursively(destDir);
+        return extractArchive(archivePath, destDir);
+    }
+
+    /**
+     * Extract a nested archive next to itself, into a directory of its own: archives in the same directory are
+     * unpacked concurrently, and each one's files must be collected once.
+     */
     private Path extractArchive(Path archivePath) throws IOException {
-        String fileName = archivePath.getFileName().toString().toLowerCase();
-        Path destDir = archivePath.getParent().resolve("extracted");
+        return extractArchive(archivePath, archivePath.resolveSibling(archivePath.getFileName() + ".extracted"));
+    }
+
+    private Path extractArchive(Path archivePath, Path destDir) throws IOException {
         Files.createDirectories(destDir);
-        if (fileName.endsWith(".zip")) {
-            try (InputStream fis = Files.newInputStream(archivePath);
-                 ArchiveInputStream ais = new ZipArchiveInputStream(fis)) {
-                unpackArchiveStream(ais, destDir);
-            }
-        } else if (fileName.endsWith(".tar.gz") || fileName.endsWith(".tgz")) {
+        if (isArchive(archivePath.getFileName().toString())) {
             try (InputStream fis = Files.newInputStream(archivePath);
-                 GzipCompressorInputStream gis = new GzipCompressorInputStream(fis);
-                 ArchiveInputStream ais = new TarArchiveInputStream(gis)) {
+                 ArchiveInputStream<?> ais = openArchive(archivePath.getFileName().toString(), fis)) {
                 unpackArchiveStream(ais, destDir);
             }
         } else {
-            // not an archive, copy directly
-            Path target = destDir.resolve(archivePath.getFileName());
-            Files.copy(archivePath, target, StandardCopyOption.REPLACE_EXISTING);
+            // not an archive, link (or copy) directly
+            contentStore.linkOrCopy(archivePath, destDir.resolve(archivePath.getFileName()));
         }
         return destDir;
     }
 
-    private void unpackArchiveStream(ArchiveInputStream ais, Path destDir) throws IOException {
+    private static boolean isArchive(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".zip") || lower.endsWith(".tar.gz") || lower.endsWith(".tgz");
+    }
+
+    /**
+     * Open zip / tar.gz / tgz content; closing the returned stream closes {@code in}.
+     */
+    private static ArchiveInputStream<?> openArchive(String name, InputStream in) throws IOException {
+        if (name.toLowerCase().endsWith(".zip")) {
+            return new ZipArchiveInputStream(in);
+        }
+        return new TarArchiveInputStream(new GzipCompressorInputStream(in));
+    }
+
+    private void unpackArchiveStream(ArchiveInputStream<?> ais, Path destDir) throws IOException {
         ArchiveEntry entry;
         while ((entry = ais.getNextEntry()) != null) {
             if (!ais.canReadEntryData(entry)) {
@@ -94,44 +453,332 @@ public class ParseService {
                 Files.createDirectories(targetPath);
             } else {
                 Files.createDirectories(targetPath.getParent());
-                Files.copy(ais, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                // 与已存储的文件内容相同时改为硬链接，不重复占用磁盘
+                contentStore.deduplicate(targetPath, contentStore.copy(ais, targetPath));
             }
         }
     }
 
     /**
      * Walk through directory tree, extract any nested archive (zip / tar.gz / tgz) and parse supported log files.
+     * Files are handled in sorted path order so that row order is deterministic in both sequential and parallel mode.
      */
-    private void processDirectoryRecursively(Path dir, FileRecord record) throws IOException {
-        Files.walk(dir).filter(Files::isRegularFile).forEach(path -> {
-            String name = path.getFileName().toString().toLowerCase();
+    private void processDirectoryRecursively(Path dir, FileRecord record, SourceLedger ledger, LogEntryWriter writer,
+                                             boolean rawLinesFromSource, ParseMetrics.Run run) throws IOException {
+        List<Path> found = run.time(ParseMetrics.Stage.WALK, () -> {
+            List<Path> paths = new ArrayList<>();
+            collectLogFiles(dir, paths);
+            return paths;
+        });
+        parseFiles(record, ledger, found, writer, rawLinesFromSource, run);
+    }
+
+    /**
+     * Parse those of {@code paths} whose entries from an earlier parse are missing or outdated.
+     */
+    private void parseFiles(FileRecord record, SourceLedger ledger, List<Path> paths, LogEntryWriter writer,
+                            boolean rawLinesFromSource, ParseMetrics.Run run) throws IOException {
+        List<SourceFile> files = run.time(ParseMetrics.Stage.WALK, () -> registerSources(record, ledger, paths));
+        files.forEach(file -> run.expect(sizeOf(file.path())));
+        if (properties.parallelFiles() <= 1 || files.size() <= 1) {
+            for (SourceFile file : files) {
+                parseFile(file, run.tracking(forSource(file.source(), rawLinesFromSource, writer::write)), run);
+                run.inputDone(sizeOf(file.path()));
+            }
+        } else {
+            parseFilesInParallel(files, rawLinesFromSource, writer, run);
+        }
+    }
+
+    /**
+     * A file to parse, the parser its head was matched to and the source its entries point at.
+     */
+    private record SourceFile(Path path, LogParser parser, LogSource source) {
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Sniff the parser of each file, skip those the ledger keeps and register a source for the rest. Files no parser
+     * accepts are left out.
+     */
+    private List<SourceFile> registerSources(FileRecord record, SourceLedger ledger, List<Path> paths) {
+        List<Path> todo = new ArrayList<>();
+        List<LogParser> parsers = new ArrayList<>();
+        List<LogSource> sources = new ArrayList<>();
+        for (Path path : paths) {
             try {
-                if (name.endsWith(".zip") || name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
-                    Path subDir = extractArchive(path);
-                    // 继续处理子目录
+                Optional<LogParser> parser = parserRegistry.detect(path);
+                if (parser.isEmpty()) {
+                    continue;
+                }
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                long modified = attrs.lastModifiedTime().toMillis();
+                if (ledger.keep(path.toString(), attrs.size(), modified,
+                        () -> SHA256 + contentStore.hash(path), parser.get())) {
+                    continue;
+                }
+                // 刚解压的文件在写入时已计算哈希；其余文件不为登记而读取，下次按大小和修改时间比较
+                String known = contentStore.knownHash(path);
+                LogSource source = SourceLedger.source(record, path.toString(),
+                        known != null ? SHA256 + known : null, parser.get());
+                source.setSize(attrs.size());
+                source.setLastModified(modified);
+                todo.add(path);
+                parsers.add(parser.get());
+                sources.add(source);
+            } catch (IOException e) {
+                log.error("Error processing file {}", path, e);
+            }
+        }
+        // 在第一次写入之前登记源文件：写事务打开后再用其他连接写库会 SQLITE_BUSY
+        List<LogSource> saved = sourceRepo.saveAll(sources);
+        List<SourceFile> files = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            ledger.started(saved.get(i));
+            files.add(new SourceFile(todo.get(i), parsers.get(i), saved.get(i)));
+        }
+        return files;
+    }
+
+    /**
+     * Point the entries of a file at its source; with {@code rawLinesFromSource} their text is read back from the
+     * source by offset instead of being stored.
+     */
+    private static Consumer<List<LogEntry>> forSource(LogSource source, boolean rawLinesFromSource,
+                                                      Consumer<List<LogEntry>> sink) {
+        Long sourceId = source.getId();
+        return chunk -> {
+            for (LogEntry e : chunk) {
+                e.setSourceId(sourceId);
+                if (rawLinesFromSource) {
+                    e.setRawLine(null);
+                }
+            }
+            sink.accept(chunk);
+        };
+    }
+
+    private void collectLogFiles(Path dir, List<Path> out) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.filter(Files::isRegularFile).sorted().toList();
+        }
+        // 嵌套的压缩包在 ioExecutor 上同时解压，文件仍按路径顺序收集
+        Map<Path, Future<Path>> nested = new HashMap<>();
+        for (Path path : paths) {
+            if (isArchive(path.getFileName().toString())) {
+                nested.put(path, ioExecutor.submit(() -> extractArchive(path)));
+            }
+        }
+        for (Path path : paths) {
+            Future<Path> extraction = nested.get(path);
+            if (extraction == null) {
+                out.add(path);
+                continue;
+            }
+            // 继续处理子目录
+            try {
+                collectLogFiles(extraction.get(), out);
+            } catch (ExecutionException e) {
+                log.error("Failed to recurse into {}", path, e.getCause());
+            } catch (IOException e) {
+                log.error("Failed to recurse into {}", path, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while extracting " + path);
+            }
+        }
+    }
+
+    /**
+     * Parse one file with the parser chosen by sniffing its head. The source is only marked finished when the whole
+     * file was read, so that a file that failed is parsed again next time.
+     */
+    private void parseFile(SourceFile file, Consumer<List<LogEntry>> sink, ParseMetrics.Run run) {
+        try {
+            // 按块持久化，峰值内存只取决于 chunkSize 而非文件大小
+            ParseStats stats = file.parser().parse(file.path(), properties.chunkSize(), sink);
+            run.lines(stats);
+            SourceLedger.finished(file.source(), stats);
+        } catch (DataAccessException | CancellationException e) {
+            // 入库失败意味着整个批次已回滚，不能继续当作单文件错误忽略
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            log.error("Error processing file {}", file.path(), e);
+        }
+    }
+
+    /**
+     * Direct-from-stream mode: archive entries, including nested archives, are fed to the parsers while the
+     * archive is being decompressed, so nothing is written to disk. A plain log file is parsed in place.
+     * Entries are handled in archive order, one at a time, because the archive can only be read front to back;
+     * {@code parallel-files} therefore only applies to extracted files. An entry large enough for range splitting
+     * is the exception: it is spooled to a temporary file and parsed in ranges like an extracted file.
+     */
+    private void processStoredFileAsStream(Path storagePath, FileRecord record, SourceLedger ledger,
+                                           LogEntryWriter writer, ParseMetrics.Run run) throws IOException {
+        String name = storagePath.getFileName().toString();
+        if (!isArchive(name)) {
+            parseFiles(record, ledger, List.of(storagePath), writer, false, run);
+            return;
+        }
+        run.expect(Files.size(storagePath));
+        // 进度按读取的压缩字节计算
+        try (InputStream in = new BufferedInputStream(run.counting(Files.newInputStream(storagePath)))) {
+            processArchiveEntries(name, in, new StreamTarget(record, ledger, writer, run,
+                    storagePath.resolveSibling("spool")));
+        }
+    }
+
+    /**
+     * Where the entries of an archive read as a stream go; {@code spoolDir} holds entries parsed in ranges.
+     */
+    private record StreamTarget(FileRecord record, SourceLedger ledger, LogEntryWriter writer, ParseMetrics.Run run,
+                                Path spoolDir) {
+    }
+
+    private void processArchiveEntries(String archiveName, InputStream in, StreamTarget target) throws IOException {
+        // 嵌套压缩包共享外层流，关闭内层时不能关闭外层
+        try (ArchiveInputStream<?> ais = openArchive(archiveName, CloseShieldInputStream.wrap(in))) {
+            ArchiveEntry entry;
+            while ((entry = ais.getNextEntry()) != null) {
+                if (entry.isDirectory() || !ais.canReadEntryData(entry)) {
+                    continue;
+                }
+                if (isArchive(entry.getName())) {
                     try {
-                        processDirectoryRecursively(subDir, record);
+                        processArchiveEntries(entry.getName(), ais, target);
                     } catch (IOException e) {
-                        log.error("Failed to recurse into {}", subDir, e);
+                        log.error("Failed to recurse into {} of {}", entry.getName(), archiveName, e);
                     }
                 } else {
-                    for (LogParser parser : parsers) {
-                        if (!parser.supports(path)) continue;
-                        try {
-                            List<LogEntry> entries = parser.parse(path);
-                            if (!entries.isEmpty()) {
-                                entries.forEach(e -> e.setFileRecord(record));
-                                logRepo.saveAll(entries);
-                                break; // 已成功解析，停止尝试其他解析器
+                    parseStream(archiveName + "!/" + entry.getName(), entry.getSize(), fingerprint(entry), ais,
+                            target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fingerprint of an archive entry taken from its header, so that it is known before the data is read;
+     * {@code null} when the header does not state the size.
+     */
+    private static String fingerprint(ArchiveEntry entry) {
+        if (entry.getSize() < 0) {
+            return null;
+        }
+        long crc = entry instanceof ZipArchiveEntry zip ? zip.getCrc() : -1;
+        Date modified = entry.getLastModifiedDate();
+        return "entry:" + entry.getSize() + ":" + (modified != null ? modified.getTime() : -1) + ":" + crc;
+    }
+
+    /**
+     * Stream counterpart of {@link #parseFile}: the head is sniffed through mark/reset, then the same stream is parsed.
+     * An entry the ledger keeps is not read any further.
+     *
+     * @param size size stated by the entry header, negative when unknown
+     */
+    private void parseStream(String name, long size, String fingerprint, InputStream in, StreamTarget target) {
+        try {
+            int sniffBytes = parserRegistry.sniffBytes();
+            BufferedInputStream buffered = new BufferedInputStream(in, Math.max(8192, sniffBytes));
+            buffered.mark(sniffBytes);
+            byte[] head = buffered.readNBytes(sniffBytes);
+            buffered.reset();
+            Optional<LogParser> parser = parserRegistry.detect(Path.of(name).getFileName(), head, head.length);
+            if (parser.isEmpty() || target.ledger().keep(name, fingerprint, parser.get())) {
+                return;
+            }
+            // 登记源文件前先提交已写入的条目，否则写事务仍持有数据库
+            target.writer().flush();
+            LogSource source = sourceRepo.save(SourceLedger.source(target.record(), name, fingerprint, parser.get()));
+            target.ledger().started(source);
+            Consumer<List<LogEntry>> sink = forSource(source, false, target.writer()::write);
+            ParseStats stats = size >= 0 && parserRegistry.splits(size)
+                    ? parseSpooled(buffered, target.spoolDir(), parser.get(), sink)
+                    : parser.get().parse(buffered, name, properties.chunkSize(), sink);
+            target.run().lines(stats);
+            SourceLedger.finished(source, stats);
+        } catch (DataAccessException | CancellationException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            log.error("Error processing entry {}", name, e);
+        }
+    }
+
+    /**
+     * Copy an entry to a temporary file so that the parser can split it into ranges; the file is removed afterwards.
+     */
+    private ParseStats parseSpooled(InputStream in, Path spoolDir, LogParser parser, Consumer<List<LogEntry>> sink)
+            throws IOException {
+        Path spool = Files.createTempFile(Files.createDirectories(spoolDir), "entry-", ".log");
+        try {
+            Files.copy(in, spool, StandardCopyOption.REPLACE_EXISTING);
+            return parser.parse(spool, properties.chunkSize(), sink);
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     * Fan files out over {@code parseWorkerExecutor} while the calling thread stays the only writer.
+     * Each file gets a small bounded queue; the writer drains the queues strictly in file order, so the
+     * rows land exactly as in sequential mode and a fast worker can run at most {@link #QUEUED_CHUNKS_PER_FILE}
+     * chunks ahead of the writer.
+     */
+    private void parseFilesInParallel(List<SourceFile> files, boolean rawLinesFromSource, LogEntryWriter writer,
+                                      ParseMetrics.Run run) {
+        List<BlockingQueue<List<LogEntry>>> queues = new ArrayList<>(files.size());
+        List<Future<?>> futures = new ArrayList<>(files.size());
+        try {
+            for (SourceFile file : files) {
+                BlockingQueue<List<LogEntry>> queue = new ArrayBlockingQueue<>(QUEUED_CHUNKS_PER_FILE);
+                queues.add(queue);
+                futures.add(parseWorkerExecutor.submit(() -> {
+                    try {
+                        parseFile(file, forSource(file.source(), rawLinesFromSource, chunk -> {
+                            try {
+                                queue.put(chunk);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new CancellationException("parse of " + file.path() + " cancelled");
                             }
-                        } catch (IOException e) {
-                            log.error("parser failed for file {} by {}", path, parser.getClass().getSimpleName(), e);
-                        }
+                        }), run);
+                    } finally {
+                        // 写线程以空块作为该文件结束标记；队列满时等待写线程腾出空间
+                        putQuietly(queue, END_OF_FILE);
                     }
+                }));
+            }
+            for (int i = 0; i < queues.size(); i++) {
+                BlockingQueue<List<LogEntry>> queue = queues.get(i);
+                List<LogEntry> chunk;
+                while ((chunk = queue.take()) != END_OF_FILE) {
+                    writer.write(chunk);
+                    run.advanceTo(chunk);
                 }
-            } catch (Exception e) {
-                log.error("Error processing file {}", path, e);
+                run.inputDone(sizeOf(files.get(i).path()));
             }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("parallel parse interrupted");
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private static void putQuietly(BlockingQueue<List<LogEntry>> queue, List<LogEntry> chunk) {
+        try {
+            queue.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
-} 
\ No newline at end of file
+}
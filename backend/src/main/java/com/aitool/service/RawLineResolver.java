@@ -0,0 +1,112 @@
+package com.aitool.service;
+
+import com.aitool.model.LogEntry;
+import com.aitool.model.LogSource;
+import com.aitool.repository.LogSourceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Restores {@code rawLine} of entries stored by offset only (see {@code aitool.parse.store-raw-line}).
+ * <p>
+ * One call handles a whole response page: entries are grouped by source file, each file is opened once, and
+ * entries that sit close together are served by a single positioned read of the span that covers them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RawLineResolver {
+
+    /** 相距不超过该字节数的条目合并为一次读取 */
+    private static final int MAX_GAP = 64 * 1024;
+    /** 单次读取的最大跨度 */
+    private static final int MAX_SPAN = 1024 * 1024;
+
+    private final LogSourceRepository sourceRepo;
+
+    public void fill(List<LogEntry> entries) {
+        Map<Long, List<LogEntry>> bySource = entries.stream()
+                .filter(e -> e.getRawLine() == null && e.getSourceId() != null
+                        && e.getSourceOffset() != null && e.getSourceLength() != null)
+                .collect(Collectors.groupingBy(LogEntry::getSourceId));
+        if (bySource.isEmpty()) {
+            return;
+        }
+        Map<Long, String> paths = sourceRepo.findAllById(bySource.keySet()).stream()
+                .collect(Collectors.toMap(LogSource::getId, LogSource::getPath));
+        bySource.forEach((sourceId, group) -> {
+            String path = paths.get(sourceId);
+            if (path == null) {
+                log.warn("Log source {} no longer exists, {} raw lines unavailable", sourceId, group.size());
+                return;
+            }
+            try {
+                fill(Path.of(path), group);
+            } catch (IOException e) {
+                log.warn("Failed to read raw lines from {}", path, e);
+            }
+        });
+    }
+
+    private static void fill(Path path, List<LogEntry> group) throws IOException {
+        group.sort(Comparator.comparingLong(LogEntry::getSourceOffset));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int i = 0;
+            while (i < group.size()) {
+                long start = group.get(i).getSourceOffset();
+                long end = start + group.get(i).getSourceLength();
+                int j = i + 1;
+                while (j < group.size()) {
+                    LogEntry e = group.get(j);
+                    long nextEnd = Math.max(end, e.getSourceOffset() + e.getSourceLength());
+                    if (e.getSourceOffset() - end > MAX_GAP || nextEnd - start > MAX_SPAN) {
+                        break;
+                    }
+                    end = nextEnd;
+                    j++;
+                }
+                byte[] span = read(channel, start, Math.toIntExact(end - start));
+                for (int k = i; k < j; k++) {
+                    LogEntry e = group.get(k);
+                    int from = (int) (e.getSourceOffset() - start);
+                    int length = Math.min(e.getSourceLength(), span.length - from);
+                    if (length >= 0) {
+                        e.setRawLine(joinLines(new String(span, from, length, StandardCharsets.UTF_8)));
+                    }
+                }
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * A folded entry spans several source lines; parsers join them with {@code '\n'} whatever the file used.
+     */
+    private static String joinLines(String text) {
+        return text.indexOf('\r') < 0 ? text : text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                // 源文件被截断，返回已读部分
+                break;
+            }
+        }
+        return buf.hasRemaining() ? Arrays.copyOf(buf.array(), buf.position()) : buf.array();
+    }
+}
@@ -0,0 +1,740 @@
+package com.aitool.service;
+
+import com.aitool.config.RemoteProperties;
+import com.aitool.config.StorageProperties;
+import com.aitool.model.FileRecord;
+import com.aitool.model.RemoteFetch;
+import com.aitool.model.RemoteFetchState;
+import com.aitool.repository.RemoteFetchRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Batch remote ingest: many URLs are downloaded concurrently, and every file is queued for parsing as soon as it
+ * is stored instead of when the whole batch is done.
+ * <p>
+ * Each URL is a {@link RemoteFetch} row. Up to {@code aitool.remote.concurrency} files download at once on
+ * {@code ioExecutor}, across all batches and in priority order. A probe for the first byte tells whether the server
+ * serves ranges. If it does, the file is preallocated and its segments are fetched over up to
+ * {@code segments-per-file} connections, each written at its offset through a {@link FileChannel}. A broken
+ * segment is requested again from its last written byte, and the bitmap of finished segments is persisted, so an
+ * interrupted download, also one interrupted by a restart, only fetches what is missing. {@code If-Range} makes
+ * sure resumed bytes belong to the same content. Without ranges the file is a single stream that starts over.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RemoteIngestService {
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+    /** 单次 transferFrom 的上限，进度按此粒度更新 */
+    private static final long BLOCK_BYTES = 1024 * 1024;
+    private static final int MAX_MESSAGE_LENGTH = 255;
+
+    private final RemoteProperties properties;
+    private final StorageProperties storageProperties;
+    private final RemoteFetchRepository repository;
+    private final StorageService storageService;
+    private final ContentStore contentStore;
+    private final ParseJobService jobService;
+    private final AsyncTaskExecutor ioExecutor;
+    /** 本实例正在下载的文件 */
+    private final Map<Long, Transfer> running = new ConcurrentHashMap<>();
+
+    /**
+     * @param receivedBytes bytes on disk so far; for a running download including unfinished segments
+     * @param fileId        id of the stored file, once the download is complete
+     */
+    public record Item(Long id, String url, String filename, RemoteFetchState state, Long size, long receivedBytes,
+                       String fileId, String message) {
+    }
+
+    public record Batch(String batchId, Map<RemoteFetchState, Long> states, List<Item> items) {
+    }
+
+    /**
+     * Queue downloads of {@code urls}. Each stored file is queued for parsing with {@code priority} on behalf of
+     * {@code tenant}.
+     */
+    public Batch submit(List<String> urls, int priority, String tenant) throws IOException {
+        if (urls == null || urls.isEmpty()) {
+            throw new IllegalArgumentException("下载URL不能为空");
+        }
+        List<URL> parsed = new ArrayList<>();
+        for (String url : urls) {
+            parsed.add(parse(url));
+        }
+        String batchId = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        for (URL url : parsed) {
+            String uuid = UUID.randomUUID().toString();
+            String filename = filename(url);
+            Path dir = storageService.prepareDir(uuid);
+            repository.save(RemoteFetch.builder()
+                    .batchId(batchId)
+                    .uuid(uuid)
+                    .url(url.toString())
+                    .filename(filename)
+                    .tenant(tenant != null && !tenant.isBlank() ? tenant : ParseJobService.DEFAULT_TENANT)
+                    .priority(priority)
+                    .state(RemoteFetchState.QUEUED)
+                    .partPath(dir.resolve(filename + ".part").toString())
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .build());
+        }
+        log.info("批量远程下载已排队: {} 个 URL (批次: {})", parsed.size(), batchId);
+        dispatch();
+        return status(batchId);
+    }
+
+    public Batch status(String batchId) {
+        List<RemoteFetch> fetches = repository.findByBatchIdOrderById(batchId);
+        if (fetches.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "批次不存在: " + batchId);
+        }
+        List<Item> items = fetches.stream().map(this::item).toList();
+        Map<RemoteFetchState, Long> states = items.stream().collect(Collectors.groupingBy(Item::state,
+                () -> new EnumMap<>(RemoteFetchState.class), Collectors.counting()));
+        return new Batch(batchId, states, items);
+    }
+
+    /**
+     * Queue the failed downloads of a batch again; ranged downloads continue with their missing segments.
+     */
+    public Batch resume(String batchId) {
+        for (RemoteFetch fetch : repository.findByBatchIdOrderById(batchId)) {
+            if (fetch.getState() == RemoteFetchState.FAILED) {
+                fetch.setState(RemoteFetchState.QUEUED);
+                fetch.setMessage(null);
+                fetch.setUpdatedAt(LocalDateTime.now());
+                repository.save(fetch);
+            }
+        }
+        dispatch();
+        return status(batchId);
+    }
+
+    /**
+     * Continue the downloads interrupted by the last shutdown.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        for (RemoteFetch fetch : repository.findByState(RemoteFetchState.DOWNLOADING)) {
+            log.info("继续中断的远程下载: {} (UUID: {})", fetch.getUrl(), fetch.getUuid());
+            fetch.setState(RemoteFetchState.QUEUED);
+            repository.save(fetch);
+        }
+        dispatch();
+    }
+
+    /**
+     * Fill free slots, e.g. after the executor rejected a download.
+     */
+    @Scheduled(fixedDelay = 30, timeUnit = TimeUnit.SECONDS)
+    public void maintain() {
+        try {
+            dispatch();
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("远程下载调度失败，稍后重试: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Forget finished downloads, and the partial data of failed ones, after {@code aitool.storage.upload-expiry}.
+     */
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.HOURS)
+    public void expire() {
+        LocalDateTime threshold = LocalDateTime.now().minus(storageProperties.uploadExpiry());
+        for (RemoteFetch fetch : repository.findByStateInAndUpdatedAtBefore(
+                List.of(RemoteFetchState.STORED, RemoteFetchState.FAILED), threshold)) {
+            if (fetch.getState() == RemoteFetchState.FAILED) {
+                log.info("清理失败的远程下载: {} (UUID: {})", fetch.getUrl(), fetch.getUuid());
+                FileUtils.deleteQuietly(Path.of(fetch.getPartPath()).getParent().toFile());
+            }
+            repository.delete(fetch);
+        }
+    }
+
+    /**
+     * Start queued downloads while there are free slots.
+     */
+    public synchronized void dispatch() {
+        while (running.size() < Math.max(1, properties.concurrency())) {
+            Optional<RemoteFetch> next = repository.findFirstByStateOrderByPriorityDescIdAsc(RemoteFetchState.QUEUED);
+            if (next.isEmpty()) {
+                return;
+            }
+            RemoteFetch fetch = next.get();
+            fetch.setState(RemoteFetchState.DOWNLOADING);
+            fetch.setUpdatedAt(LocalDateTime.now());
+            repository.save(fetch);
+            Transfer transfer = new Transfer(fetch);
+            running.put(fetch.getId(), transfer);
+            try {
+                ioExecutor.execute(() -> run(transfer));
+            } catch (TaskRejectedException e) {
+                running.remove(fetch.getId());
+                fetch.setState(RemoteFetchState.QUEUED);
+                repository.save(fetch);
+                return;
+            }
+        }
+    }
+
+    private void run(Transfer transfer) {
+        RemoteFetch fetch = transfer.fetch;
+        try {
+            download(transfer, true);
+            store(transfer);
+        } catch (Exception e) {
+            if (interrupted(e)) {
+                // 关闭时执行器中断下载线程：记录保持 DOWNLOADING，已完成的段已落盘，由 recover() 在启动时续传
+                log.info("远程下载被中断，启动后继续: {} (UUID: {})", fetch.getUrl(), fetch.getUuid());
+                Thread.currentThread().interrupt();
+                return;
+            }
+            log.error("远程文件下载失败: {} (UUID: {})", fetch.getUrl(), fetch.getUuid(), e);
+            fetch.setState(RemoteFetchState.FAILED);
+            fetch.setMessage(truncate("远程文件下载失败: " + e.getMessage()));
+            transfer.save();
+        } finally {
+            running.remove(fetch.getId());
+            if (!Thread.currentThread().isInterrupted()) {
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Whether {@code e} ended the download because its thread, or a helper's, was interrupted: an interrupted
+     * {@code transferFrom} closes the channel, an interrupted wait or backoff throws.
+     */
+    private static boolean interrupted(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof InterruptedException || t instanceof ClosedByInterruptException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param restartOnChange whether to start over once when the content changes while segments are fetched
+     */
+    private void download(Transfer transfer, boolean restartOnChange) throws IOException, InterruptedException {
+        RemoteFetch fetch = transfer.fetch;
+        Probe probe = probe(fetch);
+        if (probe.stream() != null) {
+            fetch.setRanged(false);
+            fetch.setTotalBytes(probe.size() >= 0 ? probe.size() : null);
+            fetch.setValidator(null);
+            transfer.reset();
+            transfer.save();
+            stream(transfer, probe.stream());
+            return;
+        }
+        Path part = Path.of(fetch.getPartPath());
+        boolean resumable = fetch.isRanged() && Objects.equals(fetch.getTotalBytes(), probe.size())
+                && Objects.equals(fetch.getValidator(), probe.validator())
+                && Files.exists(part) && Files.size(part) == probe.size();
+        if (resumable) {
+            log.info("续传远程文件: {} (已完成 {}/{} 段)", fetch.getUrl(), transfer.segments(), fetch.segmentCount());
+        } else {
+            if (transfer.segments() > 0) {
+                log.info("远程内容已变化，重新下载: {}", fetch.getUrl());
+            }
+            Files.createDirectories(part.getParent());
+            if (Files.getFileStore(part.getParent()).getUsableSpace() < probe.size()) {
+                throw new IOException("磁盘空间不足");
+            }
+            // 预分配整个文件，各段按偏移直接写入
+            try (RandomAccessFile file = new RandomAccessFile(part.toFile(), "rw")) {
+                file.setLength(probe.size());
+            }
+            fetch.setRanged(true);
+            fetch.setTotalBytes(probe.size());
+            fetch.setSegmentSize(properties.segmentSize().toBytes());
+            fetch.setValidator(probe.validator());
+            transfer.reset();
+            transfer.save();
+        }
+        try {
+            new Segments(transfer).fetch();
+        } catch (ContentChangedException e) {
+            if (!restartOnChange) {
+                throw e;
+            }
+            // 下载过程中远程内容被替换：已写入的段作废，从头再来一次
+            log.info("远程内容在下载期间发生变化，重新下载: {}", fetch.getUrl());
+            fetch.setRanged(false);
+            transfer.reset();
+            transfer.save();
+            download(transfer, false);
+        }
+    }
+
+    /**
+     * Move the completed part file into place, register it and queue its parse.
+     */
+    private void store(Transfer transfer) throws IOException {
+        RemoteFetch fetch = transfer.fetch;
+        Path part = Path.of(fetch.getPartPath());
+        Path target = part.resolveSibling(fetch.getFilename());
+        Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // 各段乱序写入，只能在完成后顺序读一遍计算内容哈希
+        FileRecord record = storageService.register(fetch.getUuid(), fetch.getFilename(), target,
+                contentStore.hash(target));
+        fetch.setState(RemoteFetchState.STORED);
+        fetch.setTotalBytes(Files.size(target));
+        transfer.save();
+        log.info("远程文件下载完成: {} -> {} ({} 字节, UUID: {})", fetch.getUrl(), fetch.getFilename(),
+                fetch.getTotalBytes(), fetch.getUuid());
+        try {
+            jobService.submit(record, fetch.getPriority(), fetch.getTenant());
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("提交解析任务失败: {} (UUID: {})", fetch.getFilename(), fetch.getUuid(), e);
+            fetch.setMessage(truncate("已保存，提交解析任务失败: " + e.getMessage()));
+            transfer.save();
+        }
+    }
+
+    /**
+     * Ask for the first byte. A {@code 206} reveals the size and a validator; a server that ignores ranges answers
+     * {@code 200}, and that response is kept open as the stream to download.
+     */
+    private Probe probe(RemoteFetch fetch) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                HttpURLConnection connection = open(fetch.getUrl());
+                connection.setRequestProperty("Range", "bytes=0-0");
+                int code = connection.getResponseCode();
+                if (code == HttpURLConnection.HTTP_PARTIAL) {
+                    Matcher range = contentRange(connection);
+                    try (InputStream in = connection.getInputStream()) {
+                        in.readAllBytes();
+                    }
+                    if (range != null && !"*".equals(range.group(3))) {
+                        return new Probe(Long.parseLong(range.group(3)), validator(connection), null);
+                    }
+                    // 总大小未知，无法分段
+                    return new Probe(-1, null, get(fetch.getUrl()));
+                }
+                if (code == HttpURLConnection.HTTP_OK) {
+                    return new Probe(connection.getContentLengthLong(), null, connection);
+                }
+                connection.disconnect();
+                if (code == 416) {
+                    // 空文件没有可满足的范围
+                    return new Probe(-1, null, get(fetch.getUrl()));
+                }
+                throw new HttpStatusException(code);
+            } catch (IOException e) {
+                backoff(attempt, "探测 " + fetch.getUrl(), e);
+            }
+        }
+    }
+
+    /**
+     * Download without ranges; every attempt starts over.
+     */
+    private void stream(Transfer transfer, HttpURLConnection first) throws IOException, InterruptedException {
+        RemoteFetch fetch = transfer.fetch;
+        Path part = Path.of(fetch.getPartPath());
+        HttpURLConnection connection = first;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (connection == null) {
+                    connection = get(fetch.getUrl());
+                }
+                transfer.bytes.set(0);
+                AtomicLong written = new AtomicLong();
+                try (InputStream in = connection.getInputStream();
+                     FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    copy(in, channel, 0, Long.MAX_VALUE, written, transfer);
+                    long expected = connection.getContentLengthLong();
+                    if (expected >= 0 && written.get() != expected) {
+                        throw new EOFException("数据不完整: " + written.get() + "/" + expected);
+                    }
+                    channel.force(false);
+                }
+                return;
+            } catch (IOException e) {
+                connection = null;
+                backoff(attempt, "下载 " + fetch.getUrl(), e);
+            }
+        }
+    }
+
+    /**
+     * Fetch segment {@code index}, resuming from the last written byte after a broken connection.
+     */
+    private void segment(Transfer transfer, int index) throws IOException, InterruptedException {
+        RemoteFetch fetch = transfer.fetch;
+        long start = index * fetch.getSegmentSize();
+        long length = Math.min(fetch.getSegmentSize(), fetch.getTotalBytes() - start);
+        AtomicLong written = new AtomicLong();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                long from = start + written.get();
+                HttpURLConnection connection = open(fetch.getUrl());
+                connection.setRequestProperty("Range", "bytes=" + from + "-" + (start + length - 1));
+                if (fetch.getValidator() != null) {
+                    connection.setRequestProperty("If-Range", fetch.getValidator());
+                }
+                int code = connection.getResponseCode();
+                if (code == HttpURLConnection.HTTP_OK) {
+                    // If-Range 不匹配时服务器返回整个新内容
+                    connection.disconnect();
+                    throw new ContentChangedException();
+                }
+                if (code != HttpURLConnection.HTTP_PARTIAL) {
+                    connection.disconnect();
+                    throw new HttpStatusException(code);
+                }
+                Matcher range = contentRange(connection);
+                if (range == null || Long.parseLong(range.group(1)) != from) {
+                    connection.disconnect();
+                    throw new IOException("Content-Range 与请求不符: " + connection.getHeaderField("Content-Range"));
+                }
+                try (InputStream in = connection.getInputStream();
+                     FileChannel channel = FileChannel.open(Path.of(fetch.getPartPath()), StandardOpenOption.WRITE)) {
+                    copy(in, channel, start, length, written, transfer);
+                    if (written.get() < length) {
+                        throw new EOFException("第 " + index + " 段数据不完整: " + written.get() + "/" + length);
+                    }
+                    // 落盘后才记为已完成，崩溃后续传不会漏掉未写完的段
+                    channel.force(false);
+                }
+                transfer.received(index);
+                return;
+            } catch (IOException e) {
+                backoff(attempt, "下载 " + fetch.getUrl() + " 第 " + index + " 段", e);
+            }
+        }
+    }
+
+    /**
+     * Copy {@code in} to {@code channel} at {@code position + written} until {@code limit} bytes are written or the
+     * stream ends; {@code written} keeps the progress when the copy breaks off.
+     */
+    private static void copy(InputStream in, FileChannel channel, long position, long limit, AtomicLong written,
+                             Transfer transfer) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        while (written.get() < limit) {
+            long n = channel.transferFrom(source, position + written.get(), Math.min(BLOCK_BYTES, limit - written.get()));
+            if (n <= 0) {
+                return;
+            }
+            written.addAndGet(n);
+            transfer.bytes.addAndGet(n);
+        }
+    }
+
+    /**
+     * Wait before another attempt, or give up.
+     */
+    private void backoff(int attempt, String what, IOException e) throws IOException, InterruptedException {
+        boolean permanent = e instanceof HttpStatusException status && status.code >= 400 && status.code < 500
+                && status.code != 408 && status.code != 429;
+        if (permanent || e instanceof ContentChangedException || attempt >= properties.maxAttempts()) {
+            throw e;
+        }
+        long seconds = Math.min(30, 1L << (attempt - 1));
+        log.warn("{} 失败 ({}/{})，{} 秒后重试: {}", what, attempt, properties.maxAttempts(), seconds, e.getMessage());
+        TimeUnit.SECONDS.sleep(seconds);
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        connection.setConnectTimeout((int) properties.connectTimeout().toMillis());
+        connection.setReadTimeout((int) properties.readTimeout().toMillis());
+        return connection;
+    }
+
+    private HttpURLConnection get(String url) throws IOException {
+        HttpURLConnection connection = open(url);
+        int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new HttpStatusException(code);
+        }
+        return connection;
+    }
+
+    private static Matcher contentRange(HttpURLConnection connection) {
+        String header = connection.getHeaderField("Content-Range");
+        if (header == null) {
+            return null;
+        }
+        Matcher matcher = CONTENT_RANGE.matcher(header.trim());
+        return matcher.matches() ? matcher : null;
+    }
+
+    /**
+     * @return a strong ETag, else Last-Modified; weak ETags are not allowed in {@code If-Range}
+     */
+    private static String validator(HttpURLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    private static URL parse(String url) {
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("下载URL不能为空");
+        }
+        URL parsed;
+        try {
+            parsed = URI.create(url.trim()).toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的下载URL: " + url, e);
+        }
+        if (!"http".equalsIgnoreCase(parsed.getProtocol()) && !"https".equalsIgnoreCase(parsed.getProtocol())) {
+            throw new IllegalArgumentException("仅支持 http/https 下载: " + url);
+        }
+        return parsed;
+    }
+
+    private static String filename(URL url) {
+        String name = StringUtils.getFilename(url.getPath());
+        if (name != null) {
+            name = StringUtils.getFilename(StringUtils.cleanPath(UriUtils.decode(name, StandardCharsets.UTF_8)));
+        }
+        if (name == null || name.isBlank() || name.equals("..")) {
+            name = "remote_file_" + System.currentTimeMillis();
+        }
+        return name;
+    }
+
+    private Item item(RemoteFetch fetch) {
+        Transfer transfer = running.get(fetch.getId());
+        long received = transfer != null ? transfer.bytes.get()
+                : fetch.getState() == RemoteFetchState.STORED ? fetch.getTotalBytes()
+                : new Transfer(fetch).bytes.get();
+        return new Item(fetch.getId(), fetch.getUrl(), fetch.getFilename(), fetch.getState(), fetch.getTotalBytes(),
+                received, fetch.getState() == RemoteFetchState.STORED ? fetch.getUuid() : null, fetch.getMessage());
+    }
+
+    private static String truncate(String message) {
+        return message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+    }
+
+    private record Probe(long size, String validator, HttpURLConnection stream) {
+    }
+
+    private static final class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int code;
+
+        HttpStatusException(int code) {
+            super("HTTP " + code);
+            this.code = code;
+        }
+    }
+
+    private static final class ContentChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ContentChangedException() {
+            super("远程内容已变化");
+        }
+    }
+
+    /**
+     * A download running on this instance.
+     */
+    private final class Transfer {
+
+        private final RemoteFetch fetch;
+        private final BitSet received;
+        /** 已写入磁盘的字节数 */
+        private final AtomicLong bytes = new AtomicLong();
+
+        Transfer(RemoteFetch fetch) {
+            this.fetch = fetch;
+            this.received = BitSet.valueOf(fetch.getReceivedSegments() != null ? fetch.getReceivedSegments() : new byte[0]);
+            if (fetch.isRanged() && fetch.getTotalBytes() != null) {
+                received.stream().forEach(i -> bytes.addAndGet(segmentLength(i)));
+            }
+        }
+
+        private long segmentLength(int index) {
+            return Math.min(fetch.getSegmentSize(), fetch.getTotalBytes() - index * fetch.getSegmentSize());
+        }
+
+        synchronized int segments() {
+            return received.cardinality();
+        }
+
+        synchronized List<Integer> missing() {
+            List<Integer> missing = new ArrayList<>();
+            for (int i = received.nextClearBit(0); i < fetch.segmentCount(); i = received.nextClearBit(i + 1)) {
+                missing.add(i);
+            }
+            return missing;
+        }
+
+        synchronized void received(int index) {
+            received.set(index);
+            // 持有锁写库，同一下载的位图按顺序更新，不会被较旧的位图覆盖
+            repository.updateReceived(fetch.getId(), received.toByteArray(), LocalDateTime.now());
+        }
+
+        synchronized void reset() {
+            received.clear();
+            bytes.set(0);
+        }
+
+        synchronized void save() {
+            fetch.setReceivedSegments(received.toByteArray());
+            fetch.setUpdatedAt(LocalDateTime.now());
+            repository.save(fetch);
+        }
+    }
+
+    /**
+     * The missing segments of one ranged download, shared out between the calling thread and up to
+     * {@code segments-per-file - 1} helpers on {@code ioExecutor}.
+     * <p>
+     * The caller downloads segments itself and afterwards waits only for helpers that already started; helpers
+     * still queued on the executor find the work closed and return. Downloads therefore finish even when the
+     * executor has no thread to spare.
+     */
+    private final class Segments {
+
+        private final Transfer transfer;
+        private final Queue<Integer> pending;
+        private int active;
+        private boolean closed;
+        private Exception failure;
+
+        Segments(Transfer transfer) {
+            this.transfer = transfer;
+            this.pending = new ConcurrentLinkedQueue<>(transfer.missing());
+        }
+
+        void fetch() throws IOException, InterruptedException {
+            int helpers = Math.min(Math.max(1, properties.segmentsPerFile()), pending.size()) - 1;
+            for (int i = 0; i < helpers; i++) {
+                try {
+                    ioExecutor.execute(this::help);
+                } catch (TaskRejectedException e) {
+                    // 余下的段由当前线程下载
+                    break;
+                }
+            }
+            work();
+            Exception error;
+            synchronized (this) {
+                closed = true;
+                while (active > 0) {
+                    wait();
+                }
+                error = failure;
+            }
+            if (error instanceof IOException e) {
+                throw e;
+            }
+            if (error instanceof InterruptedException e) {
+                throw e;
+            }
+            if (error != null) {
+                throw new IOException(error.getMessage(), error);
+            }
+        }
+
+        private void help() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                active++;
+            }
+            try {
+                work();
+            } finally {
+                synchronized (this) {
+                    active--;
+                    notifyAll();
+                }
+            }
+        }
+
+        private void work() {
+            Integer index;
+            while (!failed() && (index = pending.poll()) != null) {
+                try {
+                    segment(transfer, index);
+                } catch (Exception e) {
+                    fail(e);
+                }
+            }
+        }
+
+        private synchronized boolean failed() {
+            return failure != null;
+        }
+
+        private synchronized void fail(Exception e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.aitool.service;
+
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogSource;
+import com.aitool.parser.LogParser;
+import com.aitool.parser.ParseStats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which files of a {@link FileRecord} one parse keeps, parses again or drops.
+ * <p>
+ * Every parsed file is a {@link LogSource} that remembers the fingerprint of its content and the
+ * {@linkplain LogParser#id() parser} that read it. A re-parse keeps the entries of a file when both are unchanged
+ * and parses it into a new source otherwise. Files on disk are compared by size and modification time first; their
+ * content is hashed only when the size matches an earlier source but the modification time does not. Sources of
+ * replaced or vanished files, and sources whose parse never completed, are obsolete;
+ * {@link LogEntryBulkWriter#replace} drops them together with their entries.
+ * <p>
+ * Decisions are made by the thread that feeds the writer. Parse workers report completion on the source itself,
+ * before they hand the end of the file to that thread.
+ */
+final class SourceLedger {
+
+    private final Map<String, LogSource> previous = new HashMap<>();
+    private final List<Long> obsolete = new ArrayList<>();
+    private final boolean replacing;
+    private final Set<String> kept = new HashSet<>();
+    private final List<LogSource> started = new ArrayList<>();
+
+    /**
+     * @param existing    sources of earlier parses of {@code record}
+     * @param incremental whether unchanged files may keep their entries; otherwise every file is parsed again
+     * @param hasRows     whether {@code log_entry} holds rows of {@code record}
+     */
+    SourceLedger(FileRecord record, List<LogSource> existing, boolean incremental, boolean hasRows) {
+        for (LogSource source : existing) {
+            boolean reusable = incremental && source.getEntryCount() != null
+                    && (source.getFingerprint() != null || source.getLastModified() != null);
+            if (!reusable || previous.putIfAbsent(source.getPath(), source) != null) {
+                obsolete.add(source.getId());
+            }
+        }
+        // 旧版本写入的条目没有登记源文件，同样需要替换
+        this.replacing = !existing.isEmpty() || record.getEntryCount() != null || hasRows;
+    }
+
+    /**
+     * @return whether the record may already have entries that this parse replaces
+     */
+    boolean replacing() {
+        return replacing;
+    }
+
+    /**
+     * @param fingerprint content fingerprint of the file, {@code null} when unknown
+     * @return whether the entries of {@code key} from an earlier parse stay as they are
+     */
+    boolean keep(String key, String fingerprint, LogParser parser) {
+        LogSource old = previous.get(key);
+        return old != null && fingerprint != null && fingerprint.equals(old.getFingerprint())
+                && parser.id().equals(old.getParser()) && kept.add(key);
+    }
+
+    /**
+     * Content fingerprint of a file on disk, computed only when the ledger needs it.
+     */
+    @FunctionalInterface
+    interface Fingerprint {
+        String get() throws IOException;
+    }
+
+    /**
+     * @return whether the entries of the file at {@code key} from an earlier parse stay as they are: its size and
+     * modification time are unchanged, or its size is and so is {@code fingerprint}
+     */
+    boolean keep(String key, long size, long lastModified, Fingerprint fingerprint, LogParser parser)
+            throws IOException {
+        LogSource old = previous.get(key);
+        if (old == null || !parser.id().equals(old.getParser())) {
+            return false;
+        }
+        if (old.getSize() != null && old.getSize() != size) {
+            return false;
+        }
+        if (old.getLastModified() != null && old.getLastModified() == lastModified) {
+            return kept.add(key);
+        }
+        // 大小相同但修改时间不同（例如重新解压）或旧版本未记录：比较内容
+        return old.getFingerprint() != null && old.getFingerprint().equals(fingerprint.get()) && kept.add(key);
+    }
+
+    /**
+     * @return a new, unsaved source for {@code key}; register it with {@link #started} once it has an id
+     */
+    static LogSource source(FileRecord record, String key, String fingerprint, LogParser parser) {
+        return LogSource.builder().fileRecord(record).path(key).fingerprint(fingerprint).parser(parser.id()).build();
+    }
+
+    void started(LogSource source) {
+        started.add(source);
+    }
+
+    /**
+     * The file of {@code source} has been parsed completely; its counts are stored by
+     * {@link LogEntryBulkWriter#replace}.
+     */
+    static void finished(LogSource source, ParseStats stats) {
+        source.setFoldedLines(stats.folded());
+        source.setUnmatchedLines(stats.unmatched());
+        source.setEntryCount(stats.entries());
+    }
+
+    /**
+     * @return whether this parse changes anything compared to the previous one
+     */
+    boolean changed() {
+        return !started.isEmpty() || !obsoleteSourceIds().isEmpty();
+    }
+
+    List<Long> obsoleteSourceIds() {
+        List<Long> ids = new ArrayList<>(obsolete);
+        previous.forEach((key, source) -> {
+            if (!kept.contains(key)) {
+                ids.add(source.getId());
+            }
+        });
+        return ids;
+    }
+
+    List<LogSource> completed() {
+        return started.stream().filter(s -> s.getEntryCount() != null).toList();
+    }
+
+    int keptFiles() {
+        return kept.size();
+    }
+
+    /**
+     * @return entry, folded and unmatched counts of the kept files, as one total
+     */
+    ParseStats keptStats() {
+        long entries = 0;
+        long folded = 0;
+        long unmatched = 0;
+        for (String key : kept) {
+            LogSource source = previous.get(key);
+            entries += source.getEntryCount();
+            folded += source.getFoldedLines() != null ? source.getFoldedLines() : 0;
+            unmatched += source.getUnmatchedLines() != null ? source.getUnmatchedLines() : 0;
+        }
+        return new ParseStats(entries, 0, folded, unmatched);
+    }
+}
@@ -4,23 +4,36 @@ import com.aitool.config.StorageProperties;
 import com.aitool.model.FileRecord;
 import com.aitool.model.FileStatus;
 import com.aitool.repository.FileRecordRepository;
-import com.aitool.service.ParseService;
+import com.aitool.repository.LogEntryRepository;
+import com.aitool.repository.LogRollupRepository;
+import com.aitool.repository.LogSourceRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -29,7 +42,12 @@ public class StorageService {
 
     private final StorageProperties properties;
     private final FileRecordRepository repository;
-    private final ParseService parseService;
+    private final LogEntryRepository logRepo;
+    private final LogRollupRepository rollupRepo;
+    private final LogSourceRepository sourceRepo;
+    private final ContentStore contentStore;
+    private final ParseJobService jobService;
+    private final LogQueryCache queryCache;
 
     /**
      * Save uploaded multipart file to local storage.
@@ -50,21 +68,16 @@ public class StorageService {
         String cleanName = StringUtils.cleanPath(filename);
         Path target = dir.resolve(cleanName);
         
+        String hash;
         try (var inputStream = file.getInputStream()) {
-            Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+            // 写盘的同时计算内容哈希
+            hash = contentStore.copy(inputStream, target);
             log.info("文件保存成功: {} (UUID: {})", cleanName, uuid);
         } catch (IOException e) {
             log.error("文件保存失败: {}", cleanName, e);
             throw new IOException("文件保存失败: " + e.getMessage(), e);
         }
-        repository.save(FileRecord.builder()
-                .uuid(uuid)
-                .filename(cleanName)
-                .storagePath(target.toString())
-                .status(FileStatus.STORED)
-                .createdAt(LocalDateTime.now())
-                .build());
-        log.warn("文件已保存 ({}), 状态 STORED, 需手动点击解析按钮", uuid);
+        register(uuid, cleanName, target, hash);
         return uuid;
     }
 
@@ -82,6 +95,7 @@ public class StorageService {
         
         String fileName;
         Path target;
+        String hash;
         try {
             URL url = new URL(urlStr);
             fileName = Path.of(url.getPath()).getFileName().toString();
@@ -92,24 +106,163 @@ public class StorageService {
             target = dir.resolve(fileName);
             
             // 设置超时，连接10秒，读取5分钟
-            FileUtils.copyURLToFile(url, target.toFile(), 10000, 300000);
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(300000);
+            try (InputStream in = connection.getInputStream()) {
+                hash = contentStore.copy(in, target);
+            }
             log.info("远程文件下载成功: {} -> {} (UUID: {})", urlStr, fileName, uuid);
         } catch (IOException e) {
             log.error("远程文件下载失败: {}", urlStr, e);
             throw new IOException("远程文件下载失败: " + e.getMessage(), e);
         }
-        repository.save(FileRecord.builder()
+        register(uuid, fileName, target, hash);
+        return uuid;
+    }
+
+    /**
+     * Record a file that is completely stored under {@code target}. Its bytes are shared with an already stored
+     * file of the same content when there is one.
+     */
+    FileRecord register(String uuid, String filename, Path target, String contentHash) throws IOException {
+        if (contentStore.deduplicate(target, contentHash)) {
+            log.info("内容与已存储的文件相同，复用已有数据: {} (UUID: {})", filename, uuid);
+        }
+        FileRecord record = repository.save(FileRecord.builder()
                 .uuid(uuid)
-                .filename(fileName)
+                .filename(filename)
                 .storagePath(target.toString())
+                .contentHash(contentHash)
                 .status(FileStatus.STORED)
                 .createdAt(LocalDateTime.now())
                 .build());
         log.warn("文件已保存 ({}), 状态 STORED, 需手动点击解析按钮", uuid);
-        return uuid;
+        return record;
+    }
+
+    /**
+     * Delete records with their rows and directories.
+     * <p>
+     * Rows shared by duplicates ({@link FileRecord#getDataRecordId()}) outlive the record that parsed them: that
+     * record takes over the identity of one surviving duplicate, which keeps the rows, the segment and the
+     * extracted sources where they are instead of moving them.
+     *
+     * @return number of deleted records
+     */
+    @Transactional
+    public int delete(Collection<FileRecord> records) {
+        Set<Long> doomed = records.stream().map(FileRecord::getId).collect(Collectors.toSet());
+        List<Path> paths = new ArrayList<>();
+        List<Long> deletedRows = new ArrayList<>();
+        // 先删除引用者，剩下的所属记录才能判断是否还有人在用
+        List<FileRecord> ordered = records.stream()
+                .sorted(Comparator.comparing(r -> r.getDataRecordId() == null))
+                .toList();
+        for (FileRecord rec : ordered) {
+            if (rec.getDataRecordId() != null) {
+                paths.add(parentOf(rec.getStoragePath()));
+                jobService.discard(rec);
+                repository.delete(rec);
+                continue;
+            }
+            List<FileRecord> heirs = repository.findByDataRecordId(rec.getId()).stream()
+                    .filter(r -> !doomed.contains(r.getId()))
+                    .toList();
+            if (heirs.isEmpty()) {
+                // 删除日志条目及统计
+                logRepo.deleteByFileRecord(rec);
+                rollupRepo.deleteByFileRecord(rec);
+                sourceRepo.deleteByFileRecord(rec);
+                // 中断的重新解析留下的暂存条目
+                long staged = LogEntryBulkWriter.staging(rec).getId();
+                logRepo.deleteAllByFileRecordId(staged);
+                rollupRepo.deleteAllByFileRecordId(staged);
+                paths.addAll(dataDirs(rec));
+                deletedRows.add(rec.getId());
+                // 停止并删除解析任务
+                jobService.discard(rec);
+                repository.delete(rec);
+            } else {
+                paths.add(inherit(rec, heirs.get(0)));
+            }
+        }
+        repository.flush();
+        // 提交后再删除磁盘文件，回滚时文件仍在
+        List<Path> doomedPaths = paths.stream().filter(Objects::nonNull).distinct().toList();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // 提交前失效的话，并发查询仍可能把旧结果放回缓存
+                deletedRows.forEach(queryCache::invalidate);
+                doomedPaths.forEach(StorageService::deleteTree);
+            }
+        });
+        return records.size();
+    }
+
+    /**
+     * Let {@code owner}'s row continue as {@code heir}: the heir's own row goes away and the owner takes its uuid,
+     * name and stored file, keeping the rows and data directories it owns.
+     *
+     * @return what is left of the owner's own upload to delete: its directory, or only the uploaded file when the
+     *         directory still holds the segment or extracted sources
+     */
+    private Path inherit(FileRecord owner, FileRecord heir) {
+        Path ownStorage = owner.getStoragePath() != null ? Path.of(owner.getStoragePath()) : null;
+        jobService.discard(heir);
+        repository.delete(heir);
+        // uuid 唯一，必须先删除继承者的行
+        repository.flush();
+        owner.setUuid(heir.getUuid());
+        owner.setFilename(heir.getFilename());
+        owner.setStoragePath(heir.getStoragePath());
+        owner.setCreatedAt(heir.getCreatedAt());
+        owner.setMessage(heir.getMessage());
+        repository.save(owner);
+        log.info("记录 {} 的解析结果由内容相同的 {} 继续使用", owner.getId(), heir.getUuid());
+        if (ownStorage == null || ownStorage.toString().equals(heir.getStoragePath())) {
+            return null;
+        }
+        return dataDirs(owner).contains(ownStorage.getParent()) ? ownStorage : ownStorage.getParent();
+    }
+
+    /**
+     * Directories holding a record's own files: its upload and, after an {@link #inherit}, the directory of the
+     * record whose segment and extracted sources it kept.
+     */
+    private static Set<Path> dataDirs(FileRecord rec) {
+        Set<Path> dirs = new LinkedHashSet<>();
+        dirs.add(parentOf(rec.getStoragePath()));
+        dirs.add(parentOf(rec.getSegmentPath()));
+        if (rec.getExtractedPath() != null) {
+            dirs.add(parentOf(rec.getExtractedPath()));
+        }
+        return dirs;
+    }
+
+    private static Path parentOf(String path) {
+        return path != null ? Path.of(path).getParent() : null;
+    }
+
+    private static void deleteTree(Path root) {
+        try {
+            if (Files.exists(root)) {
+                try (Stream<Path> walk = Files.walk(root)) {
+                    // delete children first
+                    walk.sorted(Comparator.reverseOrder()).forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException ignored) {
+                        }
+                    });
+                }
+            }
+        } catch (IOException ignored) {
+        }
     }
 
-    private Path prepareDir(String uuid) throws IOException {
+    Path prepareDir(String uuid) throws IOException {
         Path root = Path.of(properties.rootDir());
         if (!Files.exists(root)) {
             Files.createDirectories(root);
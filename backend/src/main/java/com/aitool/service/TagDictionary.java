@@ -0,0 +1,189 @@
+package com.aitool.service;
+
+import com.aitool.model.LogLevel;
+import com.aitool.repository.LogTagRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Interns tag names into {@code log_tag}, so that rows, rollups and their indexes hold a small integer instead.
+ * <p>
+ * Committed ids are cached for the lifetime of the process. A {@link LogEntryBulkWriter} session holds the SQLite
+ * write transaction, so it cannot insert a new name through another connection; its {@link Interner} inserts on the
+ * session's connection and publishes the new ids only once that transaction commits.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TagDictionary {
+
+    private static final String INSERT = "INSERT OR IGNORE INTO log_tag (name) VALUES (?)";
+    private static final String SELECT = "SELECT id FROM log_tag WHERE name = ?";
+
+    private final LogTagRepository repo;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        normalizeTextColumns("log_entry");
+        normalizeTextColumns("log_rollup");
+        dropUnscopedIndexes();
+        repo.findAll().forEach(tag -> ids.put(tag.getName(), tag.getId()));
+    }
+
+    /**
+     * Tables written before levels and tags were normalized store both as text. Hibernate has added the code
+     * columns by now; fill them from the text, then drop the text columns and their indexes, once and in one
+     * transaction.
+     */
+    private void normalizeTextColumns(String table) {
+        List<String> columns = jdbc.queryForList("SELECT name FROM pragma_table_info(?)", String.class, table);
+        List<String> legacy = Stream.of("level", "tag").filter(columns::contains).toList();
+        if (legacy.isEmpty()) {
+            return;
+        }
+        List<String> indexes = jdbc.queryForList("""
+                SELECT DISTINCT il.name FROM pragma_index_list(?) il, pragma_index_info(il.name) ii
+                WHERE ii.name IN ('level', 'tag')""", String.class, table);
+        log.info("Converting {} of {} to dictionary codes, existing rows are rewritten once", legacy, table);
+        long started = System.currentTimeMillis();
+        Integer rows = tx.execute(status -> {
+            List<String> sets = new ArrayList<>();
+            if (legacy.contains("level")) {
+                sets.add("level_code = " + levelCodeCase("level"));
+            }
+            if (legacy.contains("tag")) {
+                jdbc.update("INSERT OR IGNORE INTO log_tag (name) SELECT DISTINCT tag FROM " + table
+                        + " WHERE tag IS NOT NULL");
+                sets.add("tag_id = (SELECT t.id FROM log_tag t WHERE t.name = " + table + ".tag)");
+            }
+            int updated = jdbc.update("UPDATE " + table + " SET " + String.join(", ", sets));
+            indexes.forEach(index -> jdbc.execute("DROP INDEX \"" + index + "\""));
+            legacy.forEach(column -> jdbc.execute("ALTER TABLE " + table + " DROP COLUMN " + column));
+            return updated;
+        });
+        log.info("Converted {} rows of {} in {} ms", rows, table, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Earlier versions indexed {@code log_entry} by {@code timestamp} and by {@code tag_id} across all files. Every
+     * query is scoped to a file, so the per-file indexes replace them; Hibernate adds indexes but never drops one.
+     */
+    private void dropUnscopedIndexes() {
+        List<String> indexes = jdbc.queryForList("""
+                SELECT il.name FROM pragma_index_list('log_entry') il
+                WHERE il.origin = 'c' AND (il.name = 'idx_log_entry_tag'
+                    OR (SELECT group_concat(ii.name) FROM pragma_index_info(il.name) ii) = 'timestamp')""",
+                String.class);
+        for (String index : indexes) {
+            log.info("Dropping index {} of log_entry, its queries use the per-file indexes", index);
+            jdbc.execute("DROP INDEX \"" + index + "\"");
+        }
+    }
+
+    private static String levelCodeCase(String column) {
+        StringBuilder sb = new StringBuilder("CASE lower(").append(column).append(')');
+        for (LogLevel level : LogLevel.values()) {
+            for (String name : level.names()) {
+                sb.append(" WHEN '").append(name.toLowerCase(Locale.ROOT)).append("' THEN ").append(level.code());
+            }
+        }
+        return sb.append(" END").toString();
+    }
+
+    /**
+     * Id of {@code name}, added to the dictionary in its own statement if needed. Must not be called by a thread
+     * holding the write transaction of another connection; use an {@link Interner} there.
+     */
+    public Integer intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        jdbc.update(INSERT, name);
+        id = jdbc.queryForObject(SELECT, Integer.class, name);
+        ids.put(name, id);
+        return id;
+    }
+
+    Interner interner(Connection connection) {
+        return new Interner(connection);
+    }
+
+    /**
+     * Interns on the connection of one writer. Ids it added are private to that transaction until
+     * {@link #publish}; after a rollback they are {@link #discard discarded}.
+     */
+    final class Interner {
+
+        private final Connection connection;
+        private final Map<String, Integer> fresh = new HashMap<>();
+
+        private Interner(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Id of {@code name} if it is committed already, without touching the connection; {@code null} otherwise.
+         */
+        Integer committed(String name) {
+            return name != null ? ids.get(name) : null;
+        }
+
+        Integer id(String name) throws SQLException {
+            if (name == null) {
+                return null;
+            }
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = fresh.get(name);
+            }
+            if (id != null) {
+                return id;
+            }
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                insert.setString(1, name);
+                insert.executeUpdate();
+            }
+            try (PreparedStatement select = connection.prepareStatement(SELECT)) {
+                select.setString(1, name);
+                try (ResultSet rs = select.executeQuery()) {
+                    rs.next();
+                    id = rs.getInt(1);
+                }
+            }
+            fresh.put(name, id);
+            return id;
+        }
+
+        void publish() {
+            ids.putAll(fresh);
+            fresh.clear();
+        }
+
+        void discard() {
+            fresh.clear();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.aitool.service;
+
+import com.aitool.dto.LogCursor;
+import com.aitool.dto.LogQuery;
+import com.aitool.dto.LogWindow;
+import com.aitool.dto.TimelineCursor;
+import com.aitool.dto.TimelineEntry;
+import com.aitool.dto.TimelinePage;
+import com.aitool.model.FileRecord;
+import com.aitool.model.LogEntry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Globally time-ordered view over several files.
+ * <p>
+ * Every file is read with its own keyset seek ({@link LogQueryService#seek}, i.e. the
+ * {@code (file_record_id, timestamp)} index or the file's segment), and a heap keyed on each file's next entry
+ * merges them. A page of {@code size} entries therefore costs {@code O(size · log N)} heap work plus a few
+ * index seeks per file, instead of sorting every matching row of every file.
+ */
+@Service
+@RequiredArgsConstructor
+public class TimelineService {
+
+    private static final int MIN_BATCH = 16;
+
+    /** NULL 时间戳排在最前，与单文件游标分页一致 */
+    static final Comparator<TimelineEntry> ORDER = Comparator
+            .comparing((TimelineEntry t) -> t.entry().getTimestamp(), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparingLong(t -> t.record().getId())
+            .thenComparingLong(t -> t.entry().getId());
+
+    private final LogQueryService logQueryService;
+
+    public TimelinePage merge(List<FileRecord> records, LogQuery q, TimelineCursor after, int size, boolean withTotal) {
+        // 先按平均份额取，命中多的文件逐批翻倍，最多取到一整页
+        int batch = Math.max(MIN_BATCH, size / Math.max(1, records.size()) + 1);
+        PriorityQueue<Source> heap = new PriorityQueue<>(Math.max(1, records.size()),
+                Comparator.comparing(Source::head, ORDER));
+        long total = 0;
+        for (FileRecord record : records) {
+            Source source = new Source(record, q, after != null ? after.forFile(record.getId()) : null,
+                    batch, size + 1);
+            Long fileTotal = source.fetch(withTotal);
+            if (fileTotal != null) {
+                total += fileTotal;
+            }
+            if (source.head() != null) {
+                heap.add(source);
+            }
+        }
+        List<TimelineEntry> page = new ArrayList<>(size);
+        while (page.size() < size && !heap.isEmpty()) {
+            Source source = heap.poll();
+            page.add(source.head());
+            if (source.advance()) {
+                heap.add(source);
+            }
+        }
+        TimelineCursor next = !heap.isEmpty() && !page.isEmpty() ? TimelineCursor.of(page.get(page.size() - 1)) : null;
+        return new TimelinePage(page, next, withTotal ? total : null);
+    }
+
+    /**
+     * Lazily paged entries of one file.
+     */
+    private final class Source {
+
+        private final FileRecord record;
+        private final LogQuery q;
+        private final int maxBatch;
+        private LogCursor cursor;
+        private int batch;
+        private List<LogEntry> buffer = List.of();
+        private int pos;
+        private TimelineEntry head;
+
+        Source(FileRecord record, LogQuery q, LogCursor after, int batch, int maxBatch) {
+            this.record = record;
+            this.q = q;
+            this.cursor = after;
+            this.batch = Math.min(batch, maxBatch);
+            this.maxBatch = maxBatch;
+        }
+
+        TimelineEntry head() {
+            return head;
+        }
+
+        /**
+         * @return this file's total when requested
+         */
+        Long fetch(boolean withTotal) {
+            LogWindow window = logQueryService.seek(List.of(record), q, cursor, batch, withTotal);
+            buffer = window.entries();
+            pos = 0;
+            cursor = window.next();
+            batch = Math.min(batch * 2, maxBatch);
+            head = buffer.isEmpty() ? null : new TimelineEntry(record, buffer.get(0));
+            return window.total();
+        }
+
+        /**
+         * @return whether another entry is available
+         */
+        boolean advance() {
+            pos++;
+            if (pos >= buffer.size()) {
+                if (cursor == null) {
+                    head = null;
+                    return false;
+                }
+                fetch(false);
+                return head != null;
+            }
+            head = new TimelineEntry(record, buffer.get(pos));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.aitool.controller;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent {@code POST /api/uploads/remote} calls against a slow source, with only a few Tomcat workers.
+ * Downloads run on {@code ioExecutor}, so they all proceed in one wave and the workers stay free for other requests.
+ * Timings are taken at the source: registering the stored files afterwards is serialized by SQLite.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.threads.max=4",
+        "server.tomcat.threads.min-spare=1"
+})
+class RemoteFetchLoadTest {
+
+    /** 慢速源每次下载的耗时 */
+    static final Duration DELAY = Duration.ofSeconds(3);
+
+    @TempDir
+    static Path storage;
+
+    static HttpServer slowSource;
+    static final AtomicInteger inFlight = new AtomicInteger();
+    static final AtomicInteger peak = new AtomicInteger();
+    static final AtomicLong lastServed = new AtomicLong();
+
+    @LocalServerPort
+    int port;
+
+    private final HttpClient client = HttpClient.newBuilder().executor(Executors.newCachedThreadPool()).build();
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + storage.resolve("aitool.db"));
+        registry.add("aitool.storage.root-dir", () -> storage.toString());
+    }
+
+    @BeforeAll
+    static void startSlowSource() throws IOException {
+        slowSource = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        slowSource.createContext("/", exchange -> {
+            try (exchange) {
+                peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(DELAY.toMillis());
+                byte[] body = "01-01 00:00:00.000  100  100 I Tag: slow source\n".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+                lastServed.set(System.nanoTime());
+            }
+        });
+        slowSource.setExecutor(Executors.newCachedThreadPool());
+        slowSource.start();
+    }
+
+    @AfterAll
+    static void stopSlowSource() {
+        slowSource.stop(0);
+    }
+
+    /**
+     * @return number of concurrent downloads; more than the Tomcat workers
+     */
+    int fetches() {
+        return 8;
+    }
+
+    @Test
+    void slowDownloadsRunInOneWaveAndLeaveWorkersFree() throws Exception {
+        // 首个请求初始化 DispatcherServlet，不计入耗时
+        client.send(HttpRequest.newBuilder(uri("/hello")).build(), HttpResponse.BodyHandlers.discarding());
+        peak.set(0);
+        long start = System.nanoTime();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < fetches(); i++) {
+            String source = "http://127.0.0.1:" + slowSource.getAddress().getPort() + "/app-" + i + ".log";
+            HttpRequest request = HttpRequest.newBuilder(uri("/api/uploads/remote?url="
+                            + URLEncoder.encode(source, StandardCharsets.UTF_8)))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        // 下载进行中，其余请求不必排在下载之后
+        Thread.sleep(DELAY.toMillis() / 3);
+        long helloStart = System.nanoTime();
+        HttpResponse<String> hello = client.send(HttpRequest.newBuilder(uri("/hello")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Duration helloLatency = Duration.ofNanos(System.nanoTime() - helloStart);
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertThat(response.get().statusCode()).isEqualTo(201);
+        }
+        Duration wall = Duration.ofNanos(lastServed.get() - start);
+
+        assertThat(hello.statusCode()).isEqualTo(200);
+        assertThat(helloLatency).isLessThan(DELAY.dividedBy(2));
+        assertThat(peak.get()).isEqualTo(fetches());
+        // 分批执行至少需要两倍的下载耗时
+        assertThat(wall).isLessThan(DELAY.multipliedBy(2));
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + port + path);
+    }
+}
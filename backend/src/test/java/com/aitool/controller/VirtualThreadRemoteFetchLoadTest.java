@@ -0,0 +1,19 @@
+package com.aitool.controller;
+
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * {@link RemoteFetchLoadTest} in virtual-thread mode, with more downloads than the 16 threads of the platform
+ * {@code ioExecutor}: on virtual threads they still run in one wave. Needs a Java 21 runtime, e.g. {@code mvn -Pjava21}.
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+@TestPropertySource(properties = "spring.threads.virtual.enabled=true")
+class VirtualThreadRemoteFetchLoadTest extends RemoteFetchLoadTest {
+
+    @Override
+    int fetches() {
+        return 32;
+    }
+}
@@ -0,0 +1,93 @@
+package com.aitool.parser;
+
+import com.aitool.model.LogEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The positional scanner of {@link AndroidLogParser} must turn every line into the same entry as the two regexes,
+ * including the edge cases it hands back to them or settles itself.
+ */
+class AndroidLogParserTest {
+
+    private final AndroidLogParser parser = new AndroidLogParser();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "[I]|2025-06-30 15:08:56.004|ActivityManager|Start proc 1234",
+            "I|2025-06-30 15:08:56.004||0|M:Module|T:TAG|Q:queue|D:actual message",
+            // V1：时间之后没有单词字符，或 tag 之后没有 '|'
+            "[I]|2025-06-30 15:08:56.004|--- |",
+            "[I]|2025-06-30 15:08:56.004|-- |msg",
+            "[W]|2025-06-30 15:08:56.004|Tag message without bar",
+            "[E]|2025-06-30 15:08:56.004|  <Tag-x>|msg|with|bars",
+            "[D]|2025-06-30 15:08:56.004||",
+            // V2：空的 T: 字段、后面还有 T:、缺少 D:
+            "I|2025-06-30 15:08:56.004||0|M:Module|T:|Q:queue|D:message",
+            "I|2025-06-30 15:08:56.004||0|T:|Q:queue|T:Real|D:message",
+            "I|2025-06-30 15:08:56.004||0|M:Module|T:TAG|Q:queue|message",
+            "I|2025-06-30 15:08:56.004||0|M:Module|T:TAG",
+            "I|2025-06-30 15:08:56.004|T:TAG|D:no leading field",
+            "I|2025-06-30 15:08:56.004||0|M:D:x|T:TAG|Q:D:q|D:msg",
+            // 行内的行终止符：正则的 '.' 不匹配，'$' 可以匹配在末尾的终止符之前
+            "[I]|2025-06-30 15:08:56.004|Tag|para\u2028graph",
+            "[I]|2025-06-30 15:08:56.004|Tag|trailing\u2028",
+            "[I]|2025-06-30 15:08:56.004|Ta\u2028g|msg",
+            "I|2025-06-30 15:08:56.004||0|M:Module|T:TAG|Q:queue|D:car\rriage",
+            "I|2025-06-30 15:08:56.004||0|M:Module|T:TAG|Q:queue|D:trailing\r",
+            "I|2025-06-30 15:08:56.004||0|M:Module|T:TAG|Q:queue|D:next\u0085line\u2029",
+            // 格式化器会调整或拒绝的时间
+            "[I]|2023-02-29 10:00:00.000|Tag|not a leap year",
+            "[I]|2024-02-29 10:00:00.000|Tag|leap year",
+            "[I]|1900-02-29 10:00:00.000|Tag|century",
+            "[I]|2025-04-31 10:00:00.000|Tag|day 31 of April",
+            "[I]|0000-01-01 00:00:00.000|Tag|year 0000",
+            "I|0000-06-30 15:08:56.004||0|M:Module|T:TAG|Q:queue|D:year 0000",
+            "[I]|2025-06-30 24:00:00.000|Tag|hour 24",
+            "[I]|2025-12-31 24:00:00.000|Tag|hour 24 on new year's eve",
+            "I|2025-06-30 24:30:00.000||0|M:Module|T:TAG|Q:queue|D:hour 24 and a half",
+            "[I]|2025-13-01 10:00:00.000|Tag|month 13",
+            "[I]|2025-00-10 10:00:00.000|Tag|month 0",
+            "[I]|2025-06-00 10:00:00.000|Tag|day 0",
+            "[I]|2025-06-30 23:60:00.000|Tag|minute 60",
+            "[I]|2025-06-30 23:59:60.000|Tag|leap second",
+            // 前缀或时间字段不符
+            "[i]|2025-06-30 15:08:56.004|Tag|lowercase level",
+            "i|2025-06-30 15:08:56.004||0|M:Module|T:TAG|Q:queue|D:lowercase level",
+            "[I]|2025-06-30 15:08:56|Tag|no millis",
+            "[I]|2025-06-30T15:08:56.004|Tag|ISO separator",
+            "[I]2025-06-30 15:08:56.004|Tag|no bar",
+            "[I]|2025-06-30 15:08:56.004",
+            "I|2025-06-30 15:08:56.004|",
+            ""
+    })
+    void scannerAgreesWithRegex(String line) {
+        LogEntry scanned = parser.parseLine(line);
+        LogEntry matched = parser.parseWithRegex(line);
+
+        if (matched == null) {
+            assertThat(scanned).isNull();
+            return;
+        }
+        assertThat(scanned).isNotNull();
+        assertThat(scanned.getTimestamp()).isEqualTo(matched.getTimestamp());
+        assertThat(scanned.getLevel()).isEqualTo(matched.getLevel());
+        assertThat(scanned.getTag()).isEqualTo(matched.getTag());
+        assertThat(scanned.getMessage()).isEqualTo(matched.getMessage());
+        assertThat(scanned.getRawLine()).isEqualTo(matched.getRawLine());
+    }
+
+    @Test
+    void adjustedTimesFollowTheFormatter() {
+        assertThat(parser.parseLine("[I]|2023-02-29 10:00:00.000|Tag|m").getTimestamp())
+                .isEqualTo(LocalDateTime.of(2023, 2, 28, 10, 0));
+        assertThat(parser.parseLine("[I]|2025-06-30 24:00:00.000|Tag|m").getTimestamp())
+                .isEqualTo(LocalDateTime.of(2025, 7, 1, 0, 0));
+        assertThat(parser.parseLine("[I]|0000-01-01 00:00:00.000|Tag|m").getTimestamp()).isNull();
+    }
+}
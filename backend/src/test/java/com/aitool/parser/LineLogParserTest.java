@@ -0,0 +1,112 @@
+package com.aitool.parser;
+
+import com.aitool.model.LogEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Parsing a file in mapped byte ranges must yield the entries, offsets and counts of reading it line by line.
+ */
+class LineLogParserTest {
+
+    private static final int RANGE = 4096;
+    private static final String[] TERMINATORS = {"\n", "\r\n", "\r"};
+
+    @TempDir
+    Path dir;
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private final AndroidLogParser sequential = new AndroidLogParser(null, 512);
+    private final AndroidLogParser ranged = new AndroidLogParser(new LineLogParser.Splitting(0, RANGE, pool), 512);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void rangesYieldTheEntriesOfTheSequentialRead() throws Exception {
+        Path file = dir.resolve("mixed.log");
+        Files.write(file, mixedLog(3000, 11));
+
+        List<LogEntry> expected = new ArrayList<>();
+        ParseStats expectedStats = sequential.parse(file, 100, expected::addAll);
+        List<LogEntry> actual = new ArrayList<>();
+        ParseStats actualStats = ranged.parse(file, 100, actual::addAll);
+
+        assertThat(Files.size(file)).isGreaterThan(8L * RANGE);
+        assertThat(actualStats).isEqualTo(expectedStats);
+        assertThat(expectedStats.folded()).isPositive();
+        assertThat(expectedStats.unmatched()).isPositive();
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            LogEntry e = expected.get(i);
+            LogEntry a = actual.get(i);
+            assertThat(a.getTimestamp()).isEqualTo(e.getTimestamp());
+            assertThat(a.getTag()).isEqualTo(e.getTag());
+            assertThat(a.getMessage()).isEqualTo(e.getMessage());
+            assertThat(a.getRawLine()).isEqualTo(e.getRawLine());
+            assertThat(a.getSourceOffset()).isEqualTo(e.getSourceOffset());
+            assertThat(a.getSourceLength()).isEqualTo(e.getSourceLength());
+        }
+    }
+
+    @Test
+    void malformedUtf8FailsInRangesAsInTheSequentialRead() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(mixedLog(1000, 12));
+        out.writeBytes("[E]|2025-06-30 15:08:56.004|Tag|bad ".getBytes(StandardCharsets.UTF_8));
+        out.write(0xC3);
+        out.write('\n');
+        out.writeBytes(mixedLog(1000, 13));
+        Path file = dir.resolve("malformed.log");
+        Files.write(file, out.toByteArray());
+
+        assertThatThrownBy(() -> sequential.parse(file, 100, entries -> { }))
+                .isInstanceOf(CharacterCodingException.class);
+        assertThatThrownBy(() -> ranged.parse(file, 100, entries -> { }))
+                .isInstanceOf(CharacterCodingException.class);
+    }
+
+    /**
+     * Header lines with multi-byte text, stack-trace continuation lines, the odd unmatched line and every terminator.
+     */
+    private static byte[] mixedLog(int entries, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < entries; i++) {
+            String time = String.format("2025-06-30 15:%02d:%02d.%03d", i / 60 % 60, i % 60, i % 1000);
+            if (i % 2 == 0) {
+                sb.append("[I]|").append(time).append("|Tag").append(i % 7).append("|消息 ").append(i);
+            } else {
+                sb.append("W|").append(time).append("||0|M:Module|T:标签").append(i % 5).append("|Q:q|D:msg ")
+                        .append("é".repeat(random.nextInt(40)));
+            }
+            sb.append(TERMINATORS[random.nextInt(TERMINATORS.length)]);
+            int continuation = random.nextInt(10) == 0 ? random.nextInt(4) : 0;
+            for (int j = 0; j < continuation; j++) {
+                sb.append("    at com.example.Frame").append(j).append("(Frame.java:").append(i).append(')')
+                        .append(TERMINATORS[random.nextInt(TERMINATORS.length)]);
+            }
+            if (i == 0 || random.nextInt(200) == 0) {
+                // 文件开头或超出条目上限的续行计为未匹配
+                sb.append("x".repeat(i == 0 ? 10 : 600)).append('\n');
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
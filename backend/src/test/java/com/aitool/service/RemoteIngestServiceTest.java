@@ -0,0 +1,347 @@
+package com.aitool.service;
+
+import com.aitool.config.RemoteProperties;
+import com.aitool.config.StorageProperties;
+import com.aitool.model.FileRecord;
+import com.aitool.model.RemoteFetch;
+import com.aitool.model.RemoteFetchState;
+import com.aitool.repository.RemoteFetchRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Downloads against an in-process HTTP server that serves ranges, ignores them, breaks off responses, changes the
+ * content mid-download or does not know the file.
+ */
+class RemoteIngestServiceTest {
+
+    private static final int SEGMENT = 32 * 1024;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    @TempDir
+    Path storage;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+    /** 服务器收到的 Range 请求头，无 Range 的请求记为 "-" */
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final Map<Long, RemoteFetch> rows = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private ParseJobService jobService;
+    private RemoteIngestService service;
+
+    /**
+     * A file on the server. The first {@code cuts} ranged responses break off halfway; once {@code changeAfter} ranged
+     * responses are served the file is replaced by {@code next}.
+     */
+    private static final class Resource {
+        volatile byte[] content;
+        volatile String etag;
+        final boolean ranges;
+        final AtomicInteger cuts = new AtomicInteger();
+        final AtomicInteger served = new AtomicInteger();
+        volatile int changeAfter = -1;
+        volatile byte[] next;
+
+        Resource(byte[] content, String etag, boolean ranges) {
+            this.content = content;
+            this.etag = etag;
+            this.ranges = ranges;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        executor = Executors.newCachedThreadPool();
+
+        RemoteFetchRepository repository = mock(RemoteFetchRepository.class);
+        when(repository.save(any(RemoteFetch.class))).thenAnswer(inv -> {
+            RemoteFetch fetch = inv.getArgument(0);
+            if (fetch.getId() == null) {
+                fetch.setId(ids.incrementAndGet());
+            }
+            rows.put(fetch.getId(), fetch);
+            return fetch;
+        });
+        when(repository.findFirstByStateOrderByPriorityDescIdAsc(any())).thenAnswer(inv -> rows.values().stream()
+                .filter(f -> f.getState() == inv.getArgument(0))
+                .min(Comparator.comparing(RemoteFetch::getPriority).reversed().thenComparing(RemoteFetch::getId)));
+        when(repository.findByBatchIdOrderById(anyString())).thenAnswer(inv -> rows.values().stream()
+                .filter(f -> f.getBatchId().equals(inv.getArgument(0)))
+                .sorted(Comparator.comparing(RemoteFetch::getId))
+                .toList());
+        when(repository.findByState(any())).thenAnswer(inv -> rows.values().stream()
+                .filter(f -> f.getState() == inv.getArgument(0))
+                .toList());
+        when(repository.updateReceived(any(), any(), any())).thenAnswer(inv -> {
+            rows.get(inv.<Long>getArgument(0)).setReceivedSegments(inv.getArgument(1));
+            return 1;
+        });
+
+        StorageService storageService = mock(StorageService.class);
+        when(storageService.prepareDir(anyString())).thenAnswer(inv ->
+                Files.createDirectories(storage.resolve(inv.<String>getArgument(0))));
+        when(storageService.register(anyString(), anyString(), any(), anyString())).thenAnswer(inv ->
+                FileRecord.builder().uuid(inv.getArgument(0)).storagePath(inv.getArgument(2).toString()).build());
+        ContentStore contentStore = mock(ContentStore.class);
+        when(contentStore.hash(any())).thenReturn("hash");
+        jobService = mock(ParseJobService.class);
+
+        RemoteProperties properties = new RemoteProperties(2, 3, DataSize.ofBytes(SEGMENT), 3,
+                Duration.ofSeconds(5), Duration.ofSeconds(5));
+        StorageProperties storageProperties = new StorageProperties(storage.toString(), DataSize.ofMegabytes(8),
+                DataSize.ofMegabytes(64), Duration.ofHours(24));
+        service = new RemoteIngestService(properties, storageProperties, repository, storageService, contentStore,
+                jobService, new TaskExecutorAdapter(executor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        server.stop(0);
+    }
+
+    @Test
+    void rangedDownloadFetchesSegmentsInParallel() throws Exception {
+        byte[] content = content(200_000, 1);
+        resources.put("/ranged.log", new Resource(content, "\"v1\"", true));
+
+        RemoteFetch fetch = download("/ranged.log");
+
+        assertThat(fetch.getState()).isEqualTo(RemoteFetchState.STORED);
+        assertThat(fetch.isRanged()).isTrue();
+        assertThat(stored(fetch)).isEqualTo(content);
+        // 探测请求加每段一次请求
+        assertThat(requests).hasSize(1 + fetch.segmentCount());
+        assertThat(BitSet.valueOf(fetch.getReceivedSegments()).cardinality()).isEqualTo(fetch.segmentCount());
+        verify(jobService).submit(any(), anyInt(), anyString());
+    }
+
+    @Test
+    void serverWithoutRangesIsStreamedFromTheProbe() throws Exception {
+        byte[] content = content(100_000, 2);
+        resources.put("/plain.log", new Resource(content, null, false));
+
+        RemoteFetch fetch = download("/plain.log");
+
+        assertThat(fetch.getState()).isEqualTo(RemoteFetchState.STORED);
+        assertThat(fetch.isRanged()).isFalse();
+        assertThat(stored(fetch)).isEqualTo(content);
+        // 忽略 Range 的 200 响应直接作为下载流
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    void brokenSegmentResumesFromItsLastWrittenByte() throws Exception {
+        byte[] content = content(100_000, 3);
+        Resource resource = new Resource(content, "\"v1\"", true);
+        resource.cuts.set(1);
+        resources.put("/cut.log", resource);
+
+        RemoteFetch fetch = download("/cut.log");
+
+        assertThat(fetch.getState()).isEqualTo(RemoteFetchState.STORED);
+        assertThat(stored(fetch)).isEqualTo(content);
+        // 续传请求从段中间开始，而不是从段首
+        assertThat(requests.stream().skip(1).map(RemoteIngestServiceTest::rangeStart))
+                .anyMatch(start -> start % SEGMENT != 0);
+    }
+
+    @Test
+    void contentChangedDuringDownloadStartsOverWithTheNewContent() throws Exception {
+        byte[] first = content(150_000, 4);
+        byte[] second = content(120_000, 5);
+        Resource resource = new Resource(first, "\"v1\"", true);
+        resource.changeAfter = 2;
+        resource.next = second;
+        resources.put("/changing.log", resource);
+
+        RemoteFetch fetch = download("/changing.log");
+
+        assertThat(fetch.getState()).isEqualTo(RemoteFetchState.STORED);
+        assertThat(fetch.getValidator()).isEqualTo("\"v2\"");
+        assertThat(fetch.getTotalBytes()).isEqualTo(second.length);
+        assertThat(stored(fetch)).isEqualTo(second);
+    }
+
+    @Test
+    void missingFileFailsWithoutRetrying() throws Exception {
+        RemoteFetch fetch = download("/missing.log");
+
+        assertThat(fetch.getState()).isEqualTo(RemoteFetchState.FAILED);
+        assertThat(fetch.getMessage()).contains("HTTP 404");
+        assertThat(requests).hasSize(1);
+        verify(jobService, never()).submit(any(), anyInt(), anyString());
+    }
+
+    @Test
+    void emptyFileIsDownloadedAfterUnsatisfiableProbe() throws Exception {
+        resources.put("/empty.log", new Resource(new byte[0], "\"v1\"", true));
+
+        RemoteFetch fetch = download("/empty.log");
+
+        assertThat(fetch.getState()).isEqualTo(RemoteFetchState.STORED);
+        assertThat(stored(fetch)).isEmpty();
+    }
+
+    @Test
+    void interruptedDownloadOnlyFetchesMissingSegmentsAfterRestart() throws Exception {
+        byte[] content = content(5 * SEGMENT, 6);
+        resources.put("/resumed.log", new Resource(content, "\"v1\"", true));
+        // 上次运行已完成第 0、1 段并持久化位图
+        String uuid = "resumed";
+        Path part = Files.createDirectories(storage.resolve(uuid)).resolve("resumed.log.part");
+        byte[] partial = new byte[content.length];
+        System.arraycopy(content, 0, partial, 0, 2 * SEGMENT);
+        Files.write(part, partial);
+        BitSet done = new BitSet();
+        done.set(0, 2);
+        RemoteFetch fetch = RemoteFetch.builder()
+                .batchId("batch").uuid(uuid).url(url("/resumed.log")).filename("resumed.log")
+                .tenant(ParseJobService.DEFAULT_TENANT).state(RemoteFetchState.DOWNLOADING)
+                .totalBytes((long) content.length).ranged(true).segmentSize((long) SEGMENT).validator("\"v1\"")
+                .partPath(part.toString()).receivedSegments(done.toByteArray())
+                .createdAt(LocalDateTime.now()).updatedAt(LocalDateTime.now())
+                .build();
+        fetch.setId(ids.incrementAndGet());
+        rows.put(fetch.getId(), fetch);
+
+        service.recover();
+        fetch = await(fetch.getId());
+
+        assertThat(fetch.getState()).isEqualTo(RemoteFetchState.STORED);
+        assertThat(stored(fetch)).isEqualTo(content);
+        assertThat(requests.stream().skip(1).map(RemoteIngestServiceTest::rangeStart))
+                .containsExactlyInAnyOrder(2L * SEGMENT, 3L * SEGMENT, 4L * SEGMENT);
+    }
+
+    private RemoteFetch download(String path) throws Exception {
+        RemoteIngestService.Batch batch = service.submit(List.of(url(path)), 0, null);
+        return await(batch.items().get(0).id());
+    }
+
+    private RemoteFetch await(long id) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            RemoteFetch fetch = rows.get(id);
+            if (fetch.getState() == RemoteFetchState.STORED || fetch.getState() == RemoteFetchState.FAILED) {
+                return fetch;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("download did not finish: " + rows.get(id).getState());
+    }
+
+    private static byte[] stored(RemoteFetch fetch) throws IOException {
+        return Files.readAllBytes(Path.of(fetch.getPartPath()).resolveSibling(fetch.getFilename()));
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static long rangeStart(String header) {
+        Matcher m = RANGE.matcher(header);
+        return m.matches() ? Long.parseLong(m.group(1)) : -1;
+    }
+
+    private static byte[] content(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            requests.add(range != null ? range : "-");
+            Resource resource = resources.get(exchange.getRequestURI().getPath());
+            if (resource == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] content = resource.content;
+            if (resource.etag != null) {
+                exchange.getResponseHeaders().set("ETag", resource.etag);
+            }
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            Matcher m = range != null ? RANGE.matcher(range) : null;
+            if (!resource.ranges || m == null || !m.matches() || (ifRange != null && !ifRange.equals(resource.etag))) {
+                send(exchange, 200, content, 0, content.length);
+                return;
+            }
+            long from = Long.parseLong(m.group(1));
+            if (from >= content.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            int to = (int) Math.min(Long.parseLong(m.group(2)), content.length - 1);
+            int length = to - (int) from + 1;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+            if (length > 1 && resource.cuts.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                // 声明完整长度，只发送一半后断开
+                exchange.sendResponseHeaders(206, length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(content, (int) from, length / 2);
+                out.flush();
+                throw new IOException("cut");
+            }
+            // 在响应发出前替换，之后的请求一定看到新内容
+            if (length > 1 && resource.served.incrementAndGet() == resource.changeAfter) {
+                resource.content = resource.next;
+                resource.etag = "\"v2\"";
+            }
+            send(exchange, 206, content, (int) from, length);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int code, byte[] content, int from, int length)
+            throws IOException {
+        exchange.sendResponseHeaders(code, length == 0 ? -1 : length);
+        if (length > 0) {
+            exchange.getResponseBody().write(content, from, length);
+        }
+    }
+}
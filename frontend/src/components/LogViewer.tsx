@@ -203,6 +203,7 @@ export default function LogViewer({ uuids, height = 600 }: Props) {
     { value: "Warn", label: "Warn (W)" },
     { value: "Info", label: "Info (I)" },
     { value: "Debug", label: "Debug (D)" },
+    { value: "Warn+", label: "Warn 及以上" },
   ];
 
   const columns = [
@@ -212,7 +213,7 @@ export default function LogViewer({ uuids, height = 600 }: Props) {
       dataIndex: "level",
       width: 100,
       render: (level: string) => (
-        <Tag color={level === "E" || level === "Error" ? "red" : "blue"}>
+        <Tag color={level === "E" || level === "Error" || level === "Fatal" ? "red" : "blue"}>
           {level}
         </Tag>
       ),